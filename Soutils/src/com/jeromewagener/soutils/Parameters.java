@@ -33,9 +33,119 @@ public final class Parameters {
 	/** The default time in milliseconds between trying to read newly received messages from the buffer */
 	public static final int COMMUNICATION_DURATION_BETWEEN_READ_ATTEMPTS_IN_MS = 500;
 	
+	/** The default time in milliseconds a sender blocked by a full outbound queue waits between two write attempts */
+	public static final int COMMUNICATION_MILLISECONDS_BETWEEN_WRITE_ATTEMPTS = 10;
+	
+	/** The default number of queued outbound bytes above which the overflow policy of a communication is applied */
+	public static final int COMMUNICATION_OUTBOUND_QUEUE_HIGH_WATERMARK_IN_BYTES = 1024 * 1024;
+	
+	/** The default number of queued outbound bytes at which a communication accepts new messages again */
+	public static final int COMMUNICATION_OUTBOUND_QUEUE_LOW_WATERMARK_IN_BYTES = 256 * 1024;
+	
+	/** The maximum number of queued frames written by a single gathering write */
+	public static final int COMMUNICATION_MAXIMUM_FRAMES_PER_WRITE = 64;
+	
+	/** The number of bytes a stream may send before the receiver has to acknowledge them (the flow control window) */
+	public static final int COMMUNICATION_STREAM_WINDOW_IN_BYTES = 256 * 1024;
+	
+	/** The maximum number of bytes of a stream sent within a single frame, so that streams are interleaved finely */
+	public static final int COMMUNICATION_STREAM_MAXIMUM_CHUNK_SIZE_IN_BYTES = 16 * 1024;
+	
+	/** The maximum number of open streams the remote device may have opened over a single communication */
+	public static final int COMMUNICATION_MAXIMUM_REMOTE_STREAMS_PER_COMMUNICATION = 256;
+	
+	/** The size of the memory-mapped segment files of a message spool. Larger messages get a segment of their own. */
+	public static final int COMMUNICATION_SPOOL_SEGMENT_SIZE_IN_BYTES = 1024 * 1024;
+	
+	/** The time for which the acknowledgement of received reliable messages is delayed, so that it can either be
+	 * sent along with a reliable message or acknowledge several messages at once */
+	public static final int COMMUNICATION_ACKNOWLEDGEMENT_DELAY_IN_MILLISECONDS = 20;
+	
+	/** The maximum number of reliable messages of a session which have not yet been acknowledged */
+	public static final int COMMUNICATION_MAXIMUM_UNACKNOWLEDGED_MESSAGES = 64 * 1024;
+	
+	/** The time after which a CommunicationManager forgets a reliable session whose client has not reconnected */
+	public static final long COMMUNICATION_RELIABLE_SESSION_TIMEOUT_IN_MILLISECONDS = 10 * 60 * 1000;
+	
+	/** The maximum number of reliable sessions a CommunicationManager keeps for the same client IP address. Once
+	 * a client holds that many sessions, the session it has not used for the longest time is forgotten. */
+	public static final int COMMUNICATION_MAXIMUM_RELIABLE_SESSIONS_PER_PEER = 16;
+	
+	/** The maximum number of bytes which are written into a loopback communication but not yet read, as with the 
+	 * send buffer of a socket */
+	public static final int COMMUNICATION_LOOPBACK_BUFFER_SIZE_IN_BYTES = 256 * 1024;
+	
+	/** The capacity of each of the two ring buffers of a shared memory communication */
+	public static final int SHARED_MEMORY_RING_CAPACITY_IN_BYTES = 4 * 1024 * 1024;
+	
+	/** The number of times a thread of a shared memory communication checks for new messages (or free space) before 
+	 * it starts yielding, and the number of times it yields before it starts parking */
+	public static final int SHARED_MEMORY_NUMBER_OF_IDLE_SPINS = 20000;
+	public static final int SHARED_MEMORY_NUMBER_OF_IDLE_YIELDS = 100;
+	
+	/** The time for which an idle thread of a shared memory communication is parked between two checks */
+	public static final int SHARED_MEMORY_IDLE_PARK_DURATION_IN_MICROSECONDS = 100;
+	
+	/** The maximum number of topic patterns a single communication may subscribe to */
+	public static final int COMMUNICATION_MAXIMUM_SUBSCRIPTIONS_PER_COMMUNICATION = 1024;
+	
+	/** The number of high, normal and low priority frames written per scheduling round of an outbound queue */
+	public static final int COMMUNICATION_HIGH_PRIORITY_WEIGHT = 16;
+	public static final int COMMUNICATION_NORMAL_PRIORITY_WEIGHT = 4;
+	public static final int COMMUNICATION_LOW_PRIORITY_WEIGHT = 1;
+	
+	/** The default time during which sent messages are collected before being written together (0 disables lingering) */
+	public static final int COMMUNICATION_LINGER_IN_MILLISECONDS = 0;
+	
+	/** The default number of lingering bytes at which the collected messages are written without further delay */
+	public static final int COMMUNICATION_LINGER_BUDGET_IN_BYTES = 16 * 1024;
+	
+	/** The number of shared threads answering the requests received by reactors and channel groups, and the time 
+	 * after which idle threads terminate */
+	public static final int COMMUNICATION_NUMBER_OF_REQUEST_THREADS = 4;
+	public static final long COMMUNICATION_REQUEST_THREAD_KEEP_ALIVE_IN_MILLISECONDS = 1000;
+	
+	/** The default time after which a request fails if no response has been received */
+	public static final long COMMUNICATION_REQUEST_TIMEOUT_IN_MILLISECONDS = 30 * 1000;
+	
+	/** The default time between two heartbeats of a communication (0 disables heartbeats) */
+	public static final long COMMUNICATION_HEARTBEAT_INTERVAL_IN_MILLISECONDS = 0;
+	
+	/** The default time without received data after which a communication is closed (0 disables the idle timeout) */
+	public static final long COMMUNICATION_IDLE_TIMEOUT_IN_MILLISECONDS = 0;
+	
+	/** The time by which the wheel of the shared timer advances per tick, which is also its resolution */
+	public static final int TIMER_TICK_DURATION_IN_MILLISECONDS = 10;
+	
+	/** The number of buckets of the wheel of the shared timer (must be a power of two) */
+	public static final int TIMER_NUMBER_OF_WHEEL_BUCKETS = 512;
+	
+	/** The maximum number of worker threads, which do the work of timer tasks for asynchronous and blocking 
+	 * communications */
+	public static final int TIMER_NUMBER_OF_WORKER_THREADS = 8;
+	
+	/** The time after which idle worker threads, which do the work of timer tasks for asynchronous and blocking 
+	 * communications, terminate */
+	public static final long TIMER_WORKER_KEEP_ALIVE_IN_MILLISECONDS = 1000;
+	
+	/** The default time after which an attempt to connect to a CommunicationManager is aborted */
+	public static final int COMMUNICATION_CONNECT_TIMEOUT_IN_MILLISECONDS = 5 * 1000;
+	
+	/** The default delay before a failed or dropped connection is re-established for the first time */
+	public static final long COMMUNICATION_INITIAL_RECONNECT_DELAY_IN_MILLISECONDS = 500;
+	
+	/** The default maximum delay between two attempts to re-establish a connection */
+	public static final long COMMUNICATION_MAXIMUM_RECONNECT_DELAY_IN_MILLISECONDS = 30 * 1000;
+	
 	/** The default time between TCP connection accepts for communication servers */
 	public static final int COMMUNICATION_MILLISECONDS_UNTIL_NEXT_CONNECTION_ACCEPT = 500;
 	
+	/** The default number of reactor threads used by event driven communication servers (one per available core) */
+	public static final int COMMUNICATION_NUMBER_OF_REACTORS = Runtime.getRuntime().availableProcessors();
+	
+	/** The default number of threads completing the I/O operations of asynchronous communication servers */
+	public static final int COMMUNICATION_NUMBER_OF_ASYNCHRONOUS_THREADS = Runtime.getRuntime().availableProcessors();
+	
 	/** A splitter string which allows to split received multi message strings into SoutilsMessages.
 	 * E.g. Using the default message splitter ({@code<soutils>}), the following string: 
 	 * <pre>{@code<soutils>my message 1</soutils><soutils>my message 2</soutils>}</pre> 
@@ -45,6 +155,18 @@ public final class Parameters {
 	 * <pre>{@code<soutils>my message 2</soutils>}</pre> */
 	public static String messageSplitter = "<soutils>";
 	
+	/** The maximum size of a single length prefixed frame in bytes. Larger frames are considered invalid. */
+	public static final int COMMUNICATION_MAXIMUM_FRAME_SIZE_IN_BYTES = 16 * 1024 * 1024;
+	
+	/** The capacity of the smallest direct buffers kept by the default buffer pool */
+	public static final int BUFFER_POOL_SMALLEST_BUFFER_SIZE_IN_BYTES = 512;
+	
+	/** The number of buffer size classes of the default buffer pool. Each size class is four times larger than the previous one. */
+	public static final int BUFFER_POOL_NUMBER_OF_SIZE_CLASSES = 5;
+	
+	/** The maximum number of free buffers the default buffer pool keeps per size class */
+	public static final int BUFFER_POOL_MAXIMUM_BUFFERS_PER_SIZE_CLASS = 64;
+	
 	/** ------------------------------------------------------------------ 
 	 * Default parameter constants for beaconing to be used by all framework beacon implementations 
 	 * ------------------------------------------------------------------  */
@@ -0,0 +1,152 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** The common part of the futures returned by communications. A future is completed exactly once, either with
+ * a value or with the cause of its failure, and informs its listeners as soon as it completes. 
+ * @param <V> the type of the value
+ * @param <L> the type of the listeners */
+abstract class AbstractFuture<V, L> implements Future<V> {
+	private boolean done = false;
+	private V value = null;
+	private Throwable cause = null;
+	private List<L> listeners = null;
+
+	/** Adds a listener which is informed as soon as the future completes. If the future has already completed, 
+	 * the listener is informed immediately by the calling thread. */
+	void addListener(L listener) {
+		synchronized (this) {
+			if (!done) {
+				if (listeners == null) {
+					listeners = new ArrayList<L>(1);
+				}
+
+				listeners.add(listener);
+				return;
+			}
+		}
+
+		informListener(listener);
+	}
+
+	/** Informs a single listener about the completion of this future */
+	abstract void informListener(L listener);
+
+	/** Futures of communications cannot be cancelled, as sent messages cannot be taken back.
+	 * @return always false */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	/** Returns true if the future has completed successfully */
+	public synchronized boolean isSuccess() {
+		return done && cause == null;
+	}
+
+	/** Returns the cause of the failure, or null if the future has not failed */
+	public synchronized Throwable getCause() {
+		return cause;
+	}
+
+	@Override
+	public synchronized V get() throws InterruptedException, ExecutionException {
+		while (!done) {
+			wait();
+		}
+
+		return result();
+	}
+
+	@Override
+	public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		while (!done) {
+			long remainingNanoseconds = deadline - System.nanoTime();
+			if (remainingNanoseconds <= 0) {
+				throw new TimeoutException();
+			}
+
+			TimeUnit.NANOSECONDS.timedWait(this, remainingNanoseconds);
+		}
+
+		return result();
+	}
+
+	private V result() throws ExecutionException {
+		if (cause != null) {
+			throw new ExecutionException(cause);
+		}
+
+		return value;
+	}
+
+	void succeed(V value) {
+		complete(value, null);
+	}
+
+	void fail(Throwable cause) {
+		complete(null, cause);
+	}
+
+	/** Completes the future unless it has already been completed, and informs all listeners */
+	private void complete(V value, Throwable cause) {
+		List<L> completedListeners;
+
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+
+			this.done = true;
+			this.value = value;
+			this.cause = cause;
+			completedListeners = listeners;
+			listeners = null;
+			notifyAll();
+		}
+
+		if (completedListeners != null) {
+			for (L listener : completedListeners) {
+				informListener(listener);
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.ThreadFactory;
+
+import com.jeromewagener.soutils.messaging.MessageType;
+import com.jeromewagener.soutils.messaging.SoutilsMessage;
+
+/** Accepts the connections of a CommunicationManager in asynchronous mode. As the AsynchronousTransport of the
+ * accepted communications, the acceptor is kept apart from the CommunicationManager class, so that managers in 
+ * all other modes do not load the asynchronous channel classes of Java 7.
+ * @see CommunicationMode#ASYNCHRONOUS */
+final class AsynchronousAcceptor {
+	private final CommunicationManager communicationManager;
+	private final AsynchronousChannelGroup channelGroup;
+	private AsynchronousServerSocketChannel asynchronousServer = null;
+	private final CompletionHandler<AsynchronousSocketChannel, Void> acceptHandler = new CompletionHandler<AsynchronousSocketChannel, Void>() {
+		@Override
+		public void completed(AsynchronousSocketChannel asynchronousSocketChannel, Void attachment) {
+			if (communicationManager.isDone()) {
+				try {
+					asynchronousSocketChannel.close();
+				} catch (IOException ioException) {
+					communicationManager.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+				}
+
+				return;
+			}
+
+			asynchronousServer.accept(null, this);
+			communicationManager.manageAsynchronously(new Communication(asynchronousSocketChannel));
+		}
+
+		@Override
+		public void failed(Throwable throwable, Void attachment) {
+			if (!communicationManager.isDone()) {
+				communicationManager.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, throwable));
+				asynchronousServer.accept(null, this);
+			}
+		}
+	};
+
+	/** Creates the channel group whose threads complete all reads and writes of the accepted communications */
+	AsynchronousAcceptor(CommunicationManager communicationManager, int numberOfThreads, ThreadFactory threadFactory) throws IOException {
+		this.communicationManager = communicationManager;
+		this.channelGroup = AsynchronousChannelGroup.withFixedThreadPool(numberOfThreads, threadFactory);
+	}
+
+	/** Binds the server channel to the given port and starts accepting connections */
+	void accept(int port) throws IOException {
+		asynchronousServer = AsynchronousServerSocketChannel.open(channelGroup);
+		asynchronousServer.bind(new InetSocketAddress(port));
+		asynchronousServer.accept(null, acceptHandler);
+	}
+
+	/** Stops accepting connections */
+	void close() throws IOException {
+		if (asynchronousServer != null) {
+			asynchronousServer.close();
+		}
+	}
+
+	/** Terminates the threads of the channel group once all pending reads and writes have been completed */
+	void shutdown() {
+		channelGroup.shutdown();
+	}
+}
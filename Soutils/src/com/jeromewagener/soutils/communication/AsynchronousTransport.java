@@ -0,0 +1,86 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
+
+/** The reads and writes of a communication using asynchronous I/O. They are kept apart from the Communication
+ * class, so that only asynchronous communications load the asynchronous channel classes of Java 7, which are 
+ * not available on all platforms. (E.g. Android before API level 26) The completions are forwarded to the 
+ * communication, which is called by the threads of the channel group of the channel.
+ * @see CommunicationMode#ASYNCHRONOUS */
+final class AsynchronousTransport {
+	private final Communication communication;
+	private final AsynchronousSocketChannel asynchronousSocketChannel;
+	private final CompletionHandler<Integer, Void> readHandler = new CompletionHandler<Integer, Void>() {
+		@Override
+		public void completed(Integer numberOfBytesRead, Void attachment) {
+			communication.completeAsynchronousRead(numberOfBytesRead);
+		}
+
+		@Override
+		public void failed(Throwable throwable, Void attachment) {
+			communication.failAsynchronousRead(throwable);
+		}
+	};
+	private final CompletionHandler<Long, Void> writeHandler = new CompletionHandler<Long, Void>() {
+		@Override
+		public void completed(Long numberOfBytesWritten, Void attachment) {
+			communication.completeAsynchronousWrite(numberOfBytesWritten);
+		}
+
+		@Override
+		public void failed(Throwable throwable, Void attachment) {
+			communication.failAsynchronousWrite(throwable);
+		}
+	};
+
+	AsynchronousTransport(Communication communication, AsynchronousSocketChannel asynchronousSocketChannel) {
+		this.communication = communication;
+		this.asynchronousSocketChannel = asynchronousSocketChannel;
+	}
+
+	InetSocketAddress getRemoteSocketAddress() throws IOException {
+		return (InetSocketAddress) asynchronousSocketChannel.getRemoteAddress();
+	}
+
+	/** Starts reading into the given buffer. The buffer must not be used until the read has completed. */
+	void read(ByteBuffer buffer) {
+		asynchronousSocketChannel.read(buffer, null, readHandler);
+	}
+
+	/** Starts writing the given frames. The frames must not be used until the write has completed. */
+	void write(ByteBuffer[] frames, int numberOfFrames) {
+		asynchronousSocketChannel.write(frames, 0, numberOfFrames, 0, TimeUnit.MILLISECONDS, null, writeHandler);
+	}
+
+	/** Closes the channel, which completes the pending read and write */
+	void close() throws IOException {
+		asynchronousSocketChannel.close();
+	}
+}
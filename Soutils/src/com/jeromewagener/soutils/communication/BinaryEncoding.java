@@ -0,0 +1,153 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** Compact binary representations of numbers, strings and byte arrays, which are used by the built-in serializers
+ * and can be used by custom serializers as well. Integers are written as variable length quantities of 7 bits 
+ * per byte, so that small values (E.g. lengths and ids) only require a single byte. Signed integers are zigzag 
+ * encoded beforehand, so that small negative values are small as well.
+ * @see Serializer */
+public final class BinaryEncoding {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private BinaryEncoding() {
+	}
+
+	/** Writes a signed integer using one to five bytes */
+	public static void writeVarInt(DataOutput output, int value) throws IOException {
+		writeUnsignedVarLong(output, ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+	}
+
+	/** Reads a signed integer written by {@link #writeVarInt(DataOutput, int)} */
+	public static int readVarInt(DataInput input) throws IOException {
+		long value = readUnsignedVarLong(input);
+
+		if (value > 0xFFFFFFFFL) {
+			throw new IOException("Malformed variable length integer!");
+		}
+
+		int zigzag = (int) value;
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	/** Writes a signed long integer using one to ten bytes */
+	public static void writeVarLong(DataOutput output, long value) throws IOException {
+		writeUnsignedVarLong(output, (value << 1) ^ (value >> 63));
+	}
+
+	/** Reads a signed long integer written by {@link #writeVarLong(DataOutput, long)} */
+	public static long readVarLong(DataInput input) throws IOException {
+		long zigzag = readUnsignedVarLong(input);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	/** Writes a string as its UTF-8 encoded bytes preceded by their number. Unlike 
+	 * {@link DataOutput#writeUTF(String)}, the length of the string is not limited. */
+	public static void writeString(DataOutput output, String string) throws IOException {
+		writeByteArray(output, string.getBytes(UTF_8));
+	}
+
+	/** Reads a string written by {@link #writeString(DataOutput, String)} */
+	public static String readString(DataInput input) throws IOException {
+		return new String(readByteArray(input), UTF_8);
+	}
+
+	/** Writes a byte array preceded by its length */
+	public static void writeByteArray(DataOutput output, byte[] bytes) throws IOException {
+		writeUnsignedVarLong(output, bytes.length);
+		output.write(bytes);
+	}
+
+	/** Reads a byte array written by {@link #writeByteArray(DataOutput, byte[])} */
+	public static byte[] readByteArray(DataInput input) throws IOException {
+		long length = readUnsignedVarLong(input);
+
+		if (length > Parameters.COMMUNICATION_MAXIMUM_FRAME_SIZE_IN_BYTES) {
+			throw new IOException("The length " + length + " exceeds the maximum frame size!");
+		}
+
+		byte[] bytes = new byte[(int) length];
+		input.readFully(bytes);
+
+		return bytes;
+	}
+
+	/** Writes an unsigned long integer using one to ten bytes directly into a buffer, which must have at least
+	 * ten bytes remaining */
+	static void writeUnsignedVarLong(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		buffer.put((byte) value);
+	}
+
+	/** Reads an unsigned long integer written by {@link #writeUnsignedVarLong(ByteBuffer, long)}
+	 * @throws CommunicationException if the buffer does not contain a valid integer */
+	static long readUnsignedVarLong(ByteBuffer buffer) throws CommunicationException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64 && buffer.hasRemaining(); shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new CommunicationException("Malformed variable length integer!");
+	}
+
+	private static void writeUnsignedVarLong(DataOutput output, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			output.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		output.writeByte((int) value);
+	}
+
+	private static long readUnsignedVarLong(DataInput input) throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = input.readByte();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed variable length integer!");
+	}
+}
@@ -0,0 +1,157 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** A DataInput reading directly from a received payload, so that objects are deserialized without copying the
+ * payload. A single instance is reused for all objects received by a communication. */
+final class BufferDataInput implements DataInput {
+	private ByteBuffer buffer = null;
+
+	/** Reads from the given bytes until the next call */
+	void reset(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/** Returns the number of bytes which have not yet been read */
+	int remaining() {
+		return buffer.remaining();
+	}
+
+	private void require(int length) throws EOFException {
+		if (buffer.remaining() < length) {
+			throw new EOFException("The serialized object ends unexpectedly!");
+		}
+	}
+
+	@Override
+	public void readFully(byte[] bytes) throws IOException {
+		readFully(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public void readFully(byte[] bytes, int offset, int length) throws IOException {
+		require(length);
+		buffer.get(bytes, offset, length);
+	}
+
+	@Override
+	public int skipBytes(int length) {
+		int skippedLength = Math.max(0, Math.min(length, buffer.remaining()));
+		buffer.position(buffer.position() + skippedLength);
+
+		return skippedLength;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		require(1);
+		return buffer.get();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		require(2);
+		return buffer.getShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		require(2);
+		return buffer.getChar();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		require(4);
+		return buffer.getInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		require(8);
+		return buffer.getLong();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		require(4);
+		return buffer.getFloat();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		require(8);
+		return buffer.getDouble();
+	}
+
+	@Override
+	public String readLine() {
+		if (!buffer.hasRemaining()) {
+			return null;
+		}
+
+		StringBuilder line = new StringBuilder();
+		while (buffer.hasRemaining()) {
+			char c = (char) (buffer.get() & 0xFF);
+
+			if (c == '\n') {
+				break;
+			} else if (c == '\r') {
+				if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+					buffer.get();
+				}
+
+				break;
+			}
+
+			line.append(c);
+		}
+
+		return line.toString();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+}
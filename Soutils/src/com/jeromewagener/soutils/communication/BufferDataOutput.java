@@ -0,0 +1,182 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** A DataOutput writing into a pooled buffer which grows as required. Used to serialize objects directly into
+ * the frame which is queued afterwards, without an intermediate byte array. */
+final class BufferDataOutput implements DataOutput {
+	private ByteBuffer buffer;
+
+	/** @param reservedLength the number of bytes reserved in front of the written bytes (E.g. for the frame header) */
+	BufferDataOutput(int reservedLength) {
+		buffer = BufferPool.getDefault().acquire(Math.max(reservedLength * 2, Parameters.COMMUNICATION_BUFFER_SIZE_IN_BYTES));
+		buffer.position(reservedLength);
+	}
+
+	/** Returns the buffer containing the reserved bytes followed by the written bytes, starting at index 0. The 
+	 * caller becomes responsible for releasing the buffer. */
+	ByteBuffer finish() {
+		ByteBuffer finishedBuffer = buffer;
+		buffer = null;
+		finishedBuffer.flip();
+
+		return finishedBuffer;
+	}
+
+	/** Releases the buffer if it has not been finished */
+	void discard() {
+		if (buffer != null) {
+			BufferPool.getDefault().release(buffer);
+			buffer = null;
+		}
+	}
+
+	private void ensureRemaining(int length) {
+		if (buffer.remaining() >= length) {
+			return;
+		}
+
+		ByteBuffer largerBuffer = BufferPool.getDefault().acquire(Math.max(buffer.capacity() * 2, buffer.position() + length));
+		buffer.flip();
+		largerBuffer.put(buffer);
+		BufferPool.getDefault().release(buffer);
+		buffer = largerBuffer;
+	}
+
+	@Override
+	public void write(int b) {
+		ensureRemaining(1);
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] bytes) {
+		write(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		ensureRemaining(length);
+		buffer.put(bytes, offset, length);
+	}
+
+	@Override
+	public void writeBoolean(boolean value) {
+		write(value ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int value) {
+		write(value);
+	}
+
+	@Override
+	public void writeShort(int value) {
+		ensureRemaining(2);
+		buffer.putShort((short) value);
+	}
+
+	@Override
+	public void writeChar(int value) {
+		ensureRemaining(2);
+		buffer.putChar((char) value);
+	}
+
+	@Override
+	public void writeInt(int value) {
+		ensureRemaining(4);
+		buffer.putInt(value);
+	}
+
+	@Override
+	public void writeLong(long value) {
+		ensureRemaining(8);
+		buffer.putLong(value);
+	}
+
+	@Override
+	public void writeFloat(float value) {
+		ensureRemaining(4);
+		buffer.putFloat(value);
+	}
+
+	@Override
+	public void writeDouble(double value) {
+		ensureRemaining(8);
+		buffer.putDouble(value);
+	}
+
+	@Override
+	public void writeBytes(String string) {
+		ensureRemaining(string.length());
+		for (int i=0; i<string.length(); i++) {
+			buffer.put((byte) string.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeChars(String string) {
+		ensureRemaining(string.length() * 2);
+		for (int i=0; i<string.length(); i++) {
+			buffer.putChar(string.charAt(i));
+		}
+	}
+
+	/** Writes the string in the modified UTF-8 format specified by {@link DataOutput#writeUTF(String)} */
+	@Override
+	public void writeUTF(String string) throws IOException {
+		int length = 0;
+		for (int i=0; i<string.length(); i++) {
+			char c = string.charAt(i);
+			length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+		}
+
+		if (length > 0xFFFF) {
+			throw new UTFDataFormatException("The encoded string is too long: " + length + " bytes");
+		}
+
+		ensureRemaining(2 + length);
+		buffer.putShort((short) length);
+
+		for (int i=0; i<string.length(); i++) {
+			char c = string.charAt(i);
+
+			if (c >= 0x0001 && c <= 0x007F) {
+				buffer.put((byte) c);
+			} else if (c > 0x07FF) {
+				buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			} else {
+				buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+}
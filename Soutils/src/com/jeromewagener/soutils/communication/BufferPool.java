@@ -0,0 +1,207 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** A pool of reusable direct (off-heap) byte buffers. Buffers are organized in size classes, each size class 
+ * being four times larger than the previous one. A buffer which has been acquired must be released once it is 
+ * no longer used, so that it can be reused by the next acquisition. Releasing a buffer twice is always rejected, 
+ * as it would otherwise be handed out to two owners. Requests exceeding the largest size class are served by 
+ * ordinary heap buffers which are not pooled.
+ * 
+ * In order to find buffers which are never released, the leak detection can be enabled. The pool then 
+ * remembers where each buffer that has not yet been released was acquired. */
+public class BufferPool {
+	private static final BufferPool DEFAULT_BUFFER_POOL = new BufferPool(
+			Parameters.BUFFER_POOL_SMALLEST_BUFFER_SIZE_IN_BYTES, 
+			Parameters.BUFFER_POOL_NUMBER_OF_SIZE_CLASSES,
+			Parameters.BUFFER_POOL_MAXIMUM_BUFFERS_PER_SIZE_CLASS);
+
+	private final int[] sizeClasses;
+	/** The free buffers of every size class, used as stacks */
+	private final ByteBuffer[][] freeBuffers;
+	private final int[] numberOfFreeBuffers;
+	/** The buffers of every size class which have been acquired but not yet released, guarded by the free buffers */
+	private final List<Set<ByteBuffer>> acquiredBuffers;
+	private final AtomicInteger numberOfAcquiredBuffers = new AtomicInteger();
+
+	private volatile boolean leakDetectionEnabled = false;
+	private final Map<ByteBuffer, Throwable> acquisitionTraces = new IdentityHashMap<ByteBuffer, Throwable>();
+
+	/** Creates a new buffer pool
+	 * @param smallestBufferSize the capacity of the buffers within the smallest size class in bytes
+	 * @param numberOfSizeClasses the number of size classes
+	 * @param maximumBuffersPerSizeClass the maximum number of free buffers kept per size class */
+	public BufferPool(int smallestBufferSize, int numberOfSizeClasses, int maximumBuffersPerSizeClass) {
+		sizeClasses = new int[numberOfSizeClasses];
+		freeBuffers = new ByteBuffer[numberOfSizeClasses][maximumBuffersPerSizeClass];
+		numberOfFreeBuffers = new int[numberOfSizeClasses];
+		acquiredBuffers = new ArrayList<Set<ByteBuffer>>(numberOfSizeClasses);
+
+		for (int i=0; i<numberOfSizeClasses; i++) {
+			sizeClasses[i] = smallestBufferSize << (2 * i);
+			acquiredBuffers.add(Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>()));
+		}
+	}
+
+	/** Returns the buffer pool shared by all communications */
+	public static BufferPool getDefault() {
+		return DEFAULT_BUFFER_POOL;
+	}
+
+	/** Returns a cleared buffer with at least the requested capacity. The buffer must be released using 
+	 * {@link #release(ByteBuffer)} as soon as it is no longer needed.
+	 * @param minimumCapacity the minimum capacity of the buffer in bytes
+	 * @return a direct buffer of the smallest fitting size class, or a heap buffer if the requested capacity 
+	 * exceeds the largest size class */
+	public ByteBuffer acquire(int minimumCapacity) {
+		int sizeClass = sizeClassOf(minimumCapacity);
+		if (sizeClass < 0) {
+			return ByteBuffer.allocate(minimumCapacity);
+		}
+
+		ByteBuffer buffer = null;
+		synchronized (freeBuffers[sizeClass]) {
+			if (numberOfFreeBuffers[sizeClass] > 0) {
+				buffer = freeBuffers[sizeClass][--numberOfFreeBuffers[sizeClass]];
+				freeBuffers[sizeClass][numberOfFreeBuffers[sizeClass]] = null;
+			}
+		}
+
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(sizeClasses[sizeClass]);
+		}
+
+		synchronized (freeBuffers[sizeClass]) {
+			acquiredBuffers.get(sizeClass).add(buffer);
+		}
+
+		numberOfAcquiredBuffers.incrementAndGet();
+
+		if (leakDetectionEnabled) {
+			synchronized (acquisitionTraces) {
+				acquisitionTraces.put(buffer, new Throwable("Buffer acquired but never released"));
+			}
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+	/** Returns a buffer to the pool. The buffer must not be used anymore after it has been released. Buffers
+	 * which have not been acquired from this pool are ignored.
+	 * @param buffer the buffer to be released
+	 * @throws IllegalArgumentException if the buffer has already been released */
+	public void release(ByteBuffer buffer) {
+		if (!buffer.isDirect()) {
+			return;
+		}
+
+		int sizeClass = sizeClassOf(buffer.capacity());
+		if (sizeClass < 0 || sizeClasses[sizeClass] != buffer.capacity()) {
+			return;
+		}
+
+		synchronized (freeBuffers[sizeClass]) {
+			if (!acquiredBuffers.get(sizeClass).remove(buffer)) {
+				if (isFree(sizeClass, buffer)) {
+					throw new IllegalArgumentException("The buffer has already been released!");
+				}
+
+				// The buffer has not been acquired from this pool, or has not been kept after its release
+				return;
+			}
+
+			if (numberOfFreeBuffers[sizeClass] < freeBuffers[sizeClass].length) {
+				freeBuffers[sizeClass][numberOfFreeBuffers[sizeClass]++] = buffer;
+			}
+		}
+
+		numberOfAcquiredBuffers.decrementAndGet();
+
+		if (leakDetectionEnabled) {
+			synchronized (acquisitionTraces) {
+				acquisitionTraces.remove(buffer);
+			}
+		}
+	}
+
+	/** Returns true if the given buffer is one of the free buffers of the size class. Must be called while 
+	 * holding the lock of the free buffers. */
+	private boolean isFree(int sizeClass, ByteBuffer buffer) {
+		for (int i=0; i<numberOfFreeBuffers[sizeClass]; i++) {
+			if (freeBuffers[sizeClass][i] == buffer) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/** Returns the number of pooled buffers which have been acquired but not yet released */
+	public int getNumberOfAcquiredBuffers() {
+		return numberOfAcquiredBuffers.get();
+	}
+
+	/** Enables or disables the leak detection. Enabling the leak detection is expensive, as the stack trace of 
+	 * every acquisition is recorded. It should therefore only be enabled while searching for leaks.
+	 * @param leakDetectionEnabled true to record where buffers are acquired, false otherwise */
+	public void setLeakDetectionEnabled(boolean leakDetectionEnabled) {
+		this.leakDetectionEnabled = leakDetectionEnabled;
+
+		if (!leakDetectionEnabled) {
+			synchronized (acquisitionTraces) {
+				acquisitionTraces.clear();
+			}
+		}
+	}
+
+	/** Returns the acquisition stack traces of all buffers acquired since the leak detection has been enabled, 
+	 * which have not yet been released.
+	 * @return a list of throwables whose stack traces point to the code that acquired the unreleased buffers */
+	public List<Throwable> getUnreleasedBufferTraces() {
+		synchronized (acquisitionTraces) {
+			return new ArrayList<Throwable>(acquisitionTraces.values());
+		}
+	}
+
+	/** Returns the index of the smallest size class with at least the given capacity, or -1 if there is none */
+	private int sizeClassOf(int capacity) {
+		for (int i=0; i<sizeClasses.length; i++) {
+			if (sizeClasses[i] >= capacity) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
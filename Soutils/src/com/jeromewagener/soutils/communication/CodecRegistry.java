@@ -0,0 +1,245 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** The serializers used to send and receive typed objects. Every serializer is registered together with a type id,
+ * which is written in front of every object it serializes and must therefore be the same on all devices. Objects 
+ * are serialized by the serializer registered for their class, or otherwise by the serializer registered for the
+ * nearest of their superclasses. If none of these has been registered, the interfaces are looked up in the order 
+ * in which they are declared, starting with the ones of the class itself, followed by the ones of its superclasses.
+ * The interfaces extended by these interfaces are looked up afterwards. Once found, the serializer used for a class 
+ * is cached, so that the lookup is only done for the first object of every class.
+ * 
+ * Serializers for byte arrays, strings, booleans, integers, longs and doubles are built-in, and use negative
+ * type ids. Custom serializers use type ids from 0 on. Type ids are written as variable length integers, so that
+ * the ids from -64 to 63 only require a single byte.
+ * @see Serializer
+ * @see Communication#sendObject(Object) */
+public class CodecRegistry {
+	private static final CodecRegistry DEFAULT_CODEC_REGISTRY = new CodecRegistry();
+
+	private final ConcurrentMap<Integer, Registration<?>> registrationsById = new ConcurrentHashMap<Integer, Registration<?>>();
+	private final ConcurrentMap<Class<?>, Registration<?>> registrationsByType = new ConcurrentHashMap<Class<?>, Registration<?>>();
+	/** The registrations found for subclasses of registered types, which is cleared whenever a serializer is registered.
+	 * Entries are only added while holding the lock of the registry, so that they always match the registered types. */
+	private final ConcurrentMap<Class<?>, Registration<?>> inheritedRegistrations = new ConcurrentHashMap<Class<?>, Registration<?>>();
+
+	/** Creates a new registry containing only the built-in serializers */
+	public CodecRegistry() {
+		add(new Registration<byte[]>(-1, byte[].class, new Serializer<byte[]>() {
+			@Override
+			public void serialize(byte[] bytes, DataOutput output) throws IOException {
+				BinaryEncoding.writeByteArray(output, bytes);
+			}
+
+			@Override
+			public byte[] deserialize(DataInput input) throws IOException {
+				return BinaryEncoding.readByteArray(input);
+			}
+		}));
+		add(new Registration<String>(-2, String.class, new Serializer<String>() {
+			@Override
+			public void serialize(String string, DataOutput output) throws IOException {
+				BinaryEncoding.writeString(output, string);
+			}
+
+			@Override
+			public String deserialize(DataInput input) throws IOException {
+				return BinaryEncoding.readString(input);
+			}
+		}));
+		add(new Registration<Boolean>(-3, Boolean.class, new Serializer<Boolean>() {
+			@Override
+			public void serialize(Boolean value, DataOutput output) throws IOException {
+				output.writeBoolean(value);
+			}
+
+			@Override
+			public Boolean deserialize(DataInput input) throws IOException {
+				return input.readBoolean();
+			}
+		}));
+		add(new Registration<Integer>(-4, Integer.class, new Serializer<Integer>() {
+			@Override
+			public void serialize(Integer value, DataOutput output) throws IOException {
+				BinaryEncoding.writeVarInt(output, value);
+			}
+
+			@Override
+			public Integer deserialize(DataInput input) throws IOException {
+				return BinaryEncoding.readVarInt(input);
+			}
+		}));
+		add(new Registration<Long>(-5, Long.class, new Serializer<Long>() {
+			@Override
+			public void serialize(Long value, DataOutput output) throws IOException {
+				BinaryEncoding.writeVarLong(output, value);
+			}
+
+			@Override
+			public Long deserialize(DataInput input) throws IOException {
+				return BinaryEncoding.readVarLong(input);
+			}
+		}));
+		add(new Registration<Double>(-6, Double.class, new Serializer<Double>() {
+			@Override
+			public void serialize(Double value, DataOutput output) throws IOException {
+				output.writeDouble(value);
+			}
+
+			@Override
+			public Double deserialize(DataInput input) throws IOException {
+				return input.readDouble();
+			}
+		}));
+	}
+
+	/** Returns the registry used by all communications unless another registry has been set */
+	public static CodecRegistry getDefault() {
+		return DEFAULT_CODEC_REGISTRY;
+	}
+
+	/** Registers a serializer. Serializers should be registered before the first object is sent or received.
+	 * @param typeId the id identifying the type on all devices (at least 0)
+	 * @param type the class of the objects serialized by the serializer
+	 * @param serializer the serializer
+	 * @throws IllegalArgumentException if the type id is negative, or if the id or the type has already been registered */
+	public <T> void register(int typeId, Class<T> type, Serializer<T> serializer) {
+		if (typeId < 0) {
+			throw new IllegalArgumentException("Negative type ids are reserved for the built-in serializers!");
+		}
+
+		add(new Registration<T>(typeId, type, serializer));
+	}
+
+	private synchronized void add(Registration<?> registration) {
+		if (registrationsById.containsKey(registration.typeId) || registrationsByType.containsKey(registration.type)) {
+			throw new IllegalArgumentException("The type id " + registration.typeId + " or the type " 
+					+ registration.type.getName() + " has already been registered!");
+		}
+
+		registrationsById.put(registration.typeId, registration);
+		registrationsByType.put(registration.type, registration);
+		inheritedRegistrations.clear();
+	}
+
+	/** Writes the type id of the given object followed by the serialized object
+	 * @throws CommunicationException if no serializer has been registered for the class of the object */
+	void encode(Object object, DataOutput output) throws IOException {
+		Registration<?> registration = findRegistration(object.getClass());
+
+		BinaryEncoding.writeVarInt(output, registration.typeId);
+		registration.serialize(object, output);
+	}
+
+	/** Reads a type id and the object following it
+	 * @throws IOException if the type id is unknown or the object cannot be deserialized */
+	Object decode(DataInput input) throws IOException {
+		int typeId = BinaryEncoding.readVarInt(input);
+		Registration<?> registration = registrationsById.get(typeId);
+
+		if (registration == null) {
+			throw new IOException("No serializer has been registered for the type id " + typeId + "!");
+		}
+
+		return registration.serializer.deserialize(input);
+	}
+
+	private Registration<?> findRegistration(Class<?> type) {
+		Registration<?> registration = registrationsByType.get(type);
+		if (registration != null) {
+			return registration;
+		}
+
+		registration = inheritedRegistrations.get(type);
+		if (registration != null) {
+			return registration;
+		}
+
+		return findInheritedRegistration(type);
+	}
+
+	/** Looks up the registration of the nearest superclass, or otherwise of the first interface, and caches it */
+	private synchronized Registration<?> findInheritedRegistration(Class<?> type) {
+		Registration<?> registration = null;
+		Class<?> superclass = type.getSuperclass();
+
+		while (registration == null && superclass != null) {
+			registration = registrationsByType.get(superclass);
+			superclass = superclass.getSuperclass();
+		}
+
+		if (registration == null) {
+			Queue<Class<?>> interfaces = new ArrayDeque<Class<?>>();
+			Set<Class<?>> visitedInterfaces = new HashSet<Class<?>>();
+
+			for (Class<?> currentType = type; currentType != null; currentType = currentType.getSuperclass()) {
+				Collections.addAll(interfaces, currentType.getInterfaces());
+			}
+
+			while (registration == null && !interfaces.isEmpty()) {
+				Class<?> currentInterface = interfaces.poll();
+
+				if (visitedInterfaces.add(currentInterface)) {
+					registration = registrationsByType.get(currentInterface);
+					Collections.addAll(interfaces, currentInterface.getInterfaces());
+				}
+			}
+		}
+
+		if (registration == null) {
+			throw new CommunicationException("No serializer has been registered for " + type.getName() + "!");
+		}
+
+		inheritedRegistrations.put(type, registration);
+
+		return registration;
+	}
+
+	/** A serializer along with its type id and the class of the objects it serializes */
+	private static final class Registration<T> {
+		private final int typeId;
+		private final Class<T> type;
+		private final Serializer<T> serializer;
+
+		private Registration(int typeId, Class<T> type, Serializer<T> serializer) {
+			this.typeId = typeId;
+			this.type = type;
+			this.serializer = serializer;
+		}
+
+		private void serialize(Object object, DataOutput output) throws IOException {
+			serializer.serialize(type.cast(object), output);
+		}
+	}
+}
@@ -26,34 +26,306 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.jeromewagener.soutils.Parameters;
 import com.jeromewagener.soutils.messaging.MessageType;
 import com.jeromewagener.soutils.messaging.SoutilsMessage;
 import com.jeromewagener.soutils.messaging.SoutilsObservable;
 import com.jeromewagener.soutils.messaging.SoutilsObserver;
-import com.jeromewagener.soutils.utilities.Soutilities;
 
 /** A SoutilsObservable thread which wraps the client part of a socket communication. Such a client communication is 
  * able to connect and exchange messages with a server which is represented by a CommunicationManager. If a message
  * is received from the server, all registered SoutilsObservers are informed about the newly received message.
+ * Instead of starting the communication thread, a communication can also be handed over to a CommunicationReactor
+ * which then serves the communication together with many others using a single thread.
  * @see CommunicationManager
+ * @see CommunicationReactor
  * @see SoutilsObservable */
 public class Communication extends SoutilsObservable {	
-	private SocketChannel socketChannel = null;
+	/** The maximum number of bytes of an unsigned long integer written by BinaryEncoding */
+	private static final int MAXIMUM_VARIABLE_LENGTH_INTEGER_LENGTH = 10;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	/** The transport of a communication which does not use asynchronous I/O, or null */
+	private Transport transport = null;
 	private String clientAddress = null;
-	private boolean done = false;
+	private InetSocketAddress remoteSocketAddress = null;
+	private volatile boolean done = false;
+	private boolean closed = false;
+	/** True if the communication thread blocks while waiting for new messages */
+	private volatile boolean blocking = false;
+	/** Received bytes which have not yet been decoded are kept between the position 0 and the position of the buffer.
+	 * The buffer is acquired from the buffer pool as soon as the first bytes are read. */
+	private ByteBuffer buffer = null;
+	private MessageFraming messageFraming = MessageFraming.DELIMITED;
+	private FrameCodec frameCodec = messageFraming.createFrameCodec();
+	private final FrameHandler frameHandler = new FrameHandler() {
+		@Override
+		public void handleFrame(byte frameType, ByteBuffer payload) {
+			if (!admitInboundFrame(frameType)) {
+				return;
+			}
+
+			if (frameType == FrameType.OBJECT) {
+				deliverObject(payload);
+				return;
+			}
+
+			if (frameType == FrameType.PUBLISH) {
+				deliverPublication(payload);
+				return;
+			}
+
+			if (frameType == FrameType.SUBSCRIBE || frameType == FrameType.UNSUBSCRIBE) {
+				updateSubscription(frameType == FrameType.SUBSCRIBE, Utf8Coders.decode(payload));
+				return;
+			}
+
+			if (frameType == FrameType.STREAM_DATA || frameType == FrameType.STREAM_WINDOW_UPDATE || frameType == FrameType.STREAM_CLOSE) {
+				handleStreamFrame(frameType, payload);
+				return;
+			}
+
+			if (frameType == FrameType.MESSAGE) {
+				deliverMessage(payload, null);
+				return;
+			}
+
+			if (frameType == FrameType.RESUME || frameType == FrameType.RELIABLE_MESSAGE || frameType == FrameType.ACKNOWLEDGEMENT
+					|| frameType == FrameType.SESSION_UNKNOWN) {
+				handleReliableFrame(frameType, payload);
+				return;
+			}
+
+			if (!FrameType.isIdentified(frameType) || payload.remaining() < FrameType.IDENTIFIER_LENGTH) {
+				throw new CommunicationException("Invalid frame of type " + frameType + " received!");
+			}
+
+			long identifier = payload.getLong();
+
+			if (frameType == FrameType.REQUEST) {
+				receiveRequest(identifier, Utf8Coders.decode(payload));
+			} else if (frameType == FrameType.PING) {
+				answerPing(identifier);
+			} else if (frameType == FrameType.PONG) {
+				updateRoundTripTime(identifier);
+			} else {
+				completeRequest(identifier, frameType, payload);
+			}
+		}
+	};
+	/** The observers receiving the undecoded messages. The array is replaced whenever an observer is added or removed. */
+	private volatile PayloadObserver[] payloadObservers = new PayloadObserver[0];
+	private final MessagePayload messagePayload = new MessagePayload(this);
+	/** The serializers of the sent and received objects */
+	private volatile CodecRegistry codecRegistry = CodecRegistry.getDefault();
+	/** The input from which received objects are deserialized, which is reused for all objects */
+	private final BufferDataInput objectInput = new BufferDataInput();
+	/** The handler answering received requests, or null if requests are rejected */
+	private volatile RequestHandler requestHandler = null;
+	/** The executor answering the requests received by a reactor or channel group, or null for the shared request threads */
+	private volatile Executor requestExecutor = null;
+	/** The requests waiting to be answered by the request executor, one after the other */
+	private final Queue<Runnable> receivedRequests = new ConcurrentLinkedQueue<Runnable>();
+	private final AtomicBoolean answeringReceivedRequests = new AtomicBoolean();
+	private final Runnable answerReceivedRequests = new Runnable() {
+		@Override
+		public void run() {
+			do {
+				Runnable receivedRequest;
+				while ((receivedRequest = receivedRequests.poll()) != null) {
+					receivedRequest.run();
+				}
+
+				answeringReceivedRequests.set(false);
+				// A request may have been added after the queue has been found empty
+			} while (!receivedRequests.isEmpty() && answeringReceivedRequests.compareAndSet(false, true));
+		}
+	};
+	private final PendingRequests pendingRequests = new PendingRequests();
+	private long nextRequestId = 0;
+	/** The streams which have not yet been closed by both sides, by id */
+	private final Map<Integer, Stream> streams = new HashMap<Integer, Stream>();
+	/** The id of the next stream opened by this side, or 0 if no stream has been opened yet. Communications accepted
+	 * by a CommunicationManager use even ids, all others odd ids, so that both sides never choose the same id. */
+	private int nextStreamId = 0;
+	/** The number of streams opened by the remote device which have not yet been closed by both sides */
+	private int numberOfRemoteStreams = 0;
+	/** The handler informed about the streams opened by the remote device and their received bytes, or null */
+	private volatile StreamHandler streamHandler = null;
+	/** The session whose messages are delivered at least once, or null */
+	private volatile ReliableSession reliableSession = null;
+	/** The sequence numbers of the last reliable messages acknowledged to and by the remote device over this connection */
+	private long lastAcknowledgementSent = 0;
+	private long lastAcknowledgementReceived = 0;
+	/** True while an acknowledgement is scheduled on the shared timer */
+	private boolean acknowledgementScheduled = false;
+	private final Runnable acknowledgement = new Runnable() {
+		@Override
+		public void run() {
+			sendAcknowledgement();
+			completeSendFutures();
+		}
+	};
+	private volatile long heartbeatInterval = Parameters.COMMUNICATION_HEARTBEAT_INTERVAL_IN_MILLISECONDS;
+	private volatile long idleTimeout = Parameters.COMMUNICATION_IDLE_TIMEOUT_IN_MILLISECONDS;
+	/** True while a heartbeat is scheduled or running */
+	private final AtomicBoolean heartbeatScheduled = new AtomicBoolean();
+	private volatile SharedTimer.Timeout heartbeatTimeout = null;
+	private final Runnable heartbeat = new Runnable() {
+		@Override
+		public void run() {
+			if (blocking) {
+				// The thread of a blocking communication waits for new messages, whereas its heartbeat never locks
+				beatHeart();
+			} else {
+				executeTimerTask(heartbeatTask);
+			}
+		}
+	};
+	private final Runnable heartbeatTask = new Runnable() {
+		@Override
+		public void run() {
+			beatHeart();
+		}
+	};
+	/** Work of the shared timer which has been handed over to the thread serving this communication */
+	private final Queue<Runnable> timerTasks = new ConcurrentLinkedQueue<Runnable>();
+	/** The thread running the polling loop of this communication, which does the work of the shared timer after 
+	 * every read attempt, or null if the communication is not served by a polling thread */
+	private volatile Thread pollingThread = null;
+	private final Runnable runTimerTasks = new Runnable() {
+		@Override
+		public void run() {
+			runTimerTasks();
+		}
+	};
+	/** The time at which bytes have last been received, as returned by System.nanoTime() */
+	private volatile long lastReceiveTime = System.nanoTime();
+	/** The smoothed round trip time in microseconds, or -1 if no PONG frame has been received yet */
+	private volatile long roundTripTime = -1;
+	/** The rate limiters which must all grant a permit for every received message or request */
+	private volatile RateLimiter[] inboundRateLimiters = new RateLimiter[0];
+	private volatile RateLimitPolicy inboundRateLimitPolicy = RateLimitPolicy.DELAY;
+	/** The rate limiters which must all grant a permit for every sent message, except for high priority messages */
+	private RateLimiter[] outboundRateLimiters = new RateLimiter[0];
+	private RateLimitPolicy outboundRateLimitPolicy = RateLimitPolicy.DELAY;
+	/** The time (as returned by System.nanoTime()) until which reading is paused due to the inbound rate limit */
+	private volatile long readPausedUntil = System.nanoTime();
+	/** True while the reactor does not report readability, as reading is paused */
+	private boolean readInterestSuspended = false;
+	private final Runnable resumeReading = new Runnable() {
+		@Override
+		public void run() {
+			if (asynchronousTransport != null) {
+				readAsynchronously();
+				return;
+			}
+
+			synchronized (Communication.this) {
+				readInterestSuspended = false;
+
+				if (!closed) {
+					updateInterestOps();
+				}
+			}
+		}
+	};
+	private volatile long numberOfDiscardedMessages = 0;
+
+	/** The reactor serving this communication, or null if the communication runs in its own thread */
+	private volatile CommunicationReactor reactor = null;
+	/** Messages which could not yet be written completely because the socket send buffer was full */
+	private final OutboundQueue outboundQueue = new OutboundQueue();
+	private boolean writeInterest = false;
+	private int lowWatermark = Parameters.COMMUNICATION_OUTBOUND_QUEUE_LOW_WATERMARK_IN_BYTES;
+	private int highWatermark = Parameters.COMMUNICATION_OUTBOUND_QUEUE_HIGH_WATERMARK_IN_BYTES;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	/** False while the outbound queue exceeds the high watermark and has not yet been drained below the low watermark */
+	private boolean writable = true;
+	private long numberOfDroppedMessages = 0;
+	private int lingerInMilliseconds = Parameters.COMMUNICATION_LINGER_IN_MILLISECONDS;
+	private int lingerBudget = Parameters.COMMUNICATION_LINGER_BUDGET_IN_BYTES;
+	/** True while a linger flush is scheduled on the shared timer */
+	private boolean lingerFlushScheduled = false;
+	private final Runnable lingerFlush = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (Communication.this) {
+				lingerFlushScheduled = false;
+
+				if (closed) {
+					return;
+				}
+
+				try {
+					flushPendingWrites();
+				} catch (IOException ioException) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+					done();
+				}
+			}
+
+			completeSendFutures();
+		}
+	};
+	/** The manager which accepted this communication, or null for client communications */
+	private CommunicationManager communicationManager = null;
+	/** The connector which established this communication, or null */
+	private CommunicationConnector communicationConnector = null;
+	/** The transport of a communication using asynchronous I/O, or null */
+	private AsynchronousTransport asynchronousTransport = null;
+	/** True while an asynchronous read is pending, during which the buffer must not be released */
+	private boolean readInProgress = false;
+	/** True while an asynchronous write is pending, during which the queued frames must not be released */
+	private boolean writeInProgress = false;
+	/** The channel group thread currently forwarding received messages, which must never wait for writability */
+	private volatile Thread readingThread = null;
 
 	/** Call this method to stop the thread from receiving and and forwarding future messages. Once the thread
 	 * has been stopped, it cannot be started again. You must instead instantiate a new Communication.
 	 * @see #start() */
 	public void done() {
 		done = true;
+
+		if (blocking) {
+			// Closing the transport wakes up the communication thread waiting for new messages
+			try {
+				transport.close();
+			} catch (IOException ioException) {
+				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			}
+		} else if (reactor != null) {
+			reactor.execute(new Runnable() {
+				@Override
+				public void run() {
+					close();
+				}
+			});
+		} else if (asynchronousTransport != null) {
+			// Closing the channel completes the pending read, which must not release the buffer before
+			close();
+		}
 	}
 
 	/** Sets up a new client communication thread with a host device. The constructor initializes a new Communication (client) 
@@ -61,24 +333,47 @@ public class Communication extends SoutilsObservable {
 	 * Received messages are forwarded to the given SoutilsObserver whereas addition SoutilsObservers can be registered
 	 * using the corresponding register method. As for any Java thread this thread needs to be
 	 * started using the {@link #start()} method. If the communication is terminated, the thread needs to be stopped.
+	 * If the connection cannot be established within {@link Parameters#COMMUNICATION_CONNECT_TIMEOUT_IN_MILLISECONDS},
+	 * the observer is informed about the error and the communication is closed right away. In order to connect to 
+	 * many devices without blocking, use a CommunicationConnector instead.
 	 * @param ipAddress the IP address of the host (the device that runs the CommunicationManager)
 	 * @param port the TCP port over which you want to exchange messages
 	 * @param soutilsObserver the observer to which all received messages should be forwarded to
 	 * @see CommunicationManager
+	 * @see CommunicationConnector
 	 * @see #start()
 	 * @see SoutilsObservable
 	 * @see #registerSoutilsObserver(SoutilsObserver) */
 	public Communication(String ipAddress, int port, SoutilsObserver soutilsObserver) {		
+		this.registerSoutilsObserver(soutilsObserver);
+
+		SocketChannel socketChannel = null;
+
 		try {
 			SocketAddress address = new InetSocketAddress(ipAddress, port);
-			this.socketChannel = SocketChannel.open(address);
-			this.socketChannel.configureBlocking(false);
-			this.registerSoutilsObserver(soutilsObserver);
+			socketChannel = SocketChannel.open();
+			socketChannel.socket().connect(address, Parameters.COMMUNICATION_CONNECT_TIMEOUT_IN_MILLISECONDS);
+			socketChannel.configureBlocking(false);
 		} catch (IOException ioException) {
 			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+
+			if (socketChannel != null) {
+				try {
+					socketChannel.close();
+				} catch (IOException closeException) {
+					// The channel is not used anymore in any case
+				}
+			}
+
+			this.done = true;
+			this.closed = true;
+
+			return;
 		}
 
-		this.clientAddress = this.socketChannel.socket().getInetAddress().getHostAddress();
+		this.transport = new SocketTransport(socketChannel);
+		this.remoteSocketAddress = transport.getRemoteSocketAddress();
+		this.clientAddress = remoteSocketAddress.getAddress().getHostAddress();
 	}
 
 	/** Creates a new client communication thread with a host device. As for any Java thread this thread needs to be
@@ -87,15 +382,37 @@ public class Communication extends SoutilsObservable {
 	 * @param socketChannel the socketChannel to be used for the communication
 	 * @see #start() */
 	public Communication(SocketChannel socketChannel) {
-		this.socketChannel = socketChannel;
+		this(new SocketTransport(socketChannel));
 
 		try {
-			this.socketChannel.configureBlocking(false);
+			transport.configureBlocking(false);
 		} catch (IOException ioException) {
 			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
 		}
+	}
+
+	/** Creates a new communication exchanging bytes over the given transport, such as one end of a loopback pair
+	 * @see CommunicationManager#connectLoopback(SoutilsObserver) */
+	Communication(Transport transport) {
+		this.transport = transport;
+		this.remoteSocketAddress = transport.getRemoteSocketAddress();
+		this.clientAddress = remoteSocketAddress.getAddress().getHostAddress();
+	}
 
-		this.clientAddress = this.socketChannel.socket().getInetAddress().getHostAddress();
+	/** Creates a new communication using asynchronous I/O on the given connected channel. Instead of a thread
+	 * polling or waiting for new messages, reads and writes are completed by the threads of the channel group of
+	 * the given channel. Calling {@link #start()} merely starts the first read, after which the thread ends.
+	 * @param asynchronousSocketChannel the connected channel to be used for the communication
+	 * @see CommunicationMode#ASYNCHRONOUS */
+	public Communication(AsynchronousSocketChannel asynchronousSocketChannel) {
+		this.asynchronousTransport = new AsynchronousTransport(this, asynchronousSocketChannel);
+
+		try {
+			this.remoteSocketAddress = asynchronousTransport.getRemoteSocketAddress();
+			this.clientAddress = remoteSocketAddress.getAddress().getHostAddress();
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+		}
 	}
 
 	/** Start listening for incoming messages. As soon as a message has been received, 
@@ -103,40 +420,71 @@ public class Communication extends SoutilsObservable {
 	 * @see #done() */
 	@Override
 	public void run() {		
-		ByteBuffer buffer = ByteBuffer.allocate(Parameters.COMMUNICATION_BUFFER_SIZE_IN_BYTES);
+		if (asynchronousTransport != null) {
+			readAsynchronously();
+			return;
+		}
+
+		if (!blocking) {
+			pollingThread = Thread.currentThread();
+		}
+
+		try {
+			writeQueuedFrames();
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			stopPolling();
+			return;
+		}
 
 		while(!done) {		
 			try{
-				// This loop clears the buffer
-				for (int i=0; i<Parameters.COMMUNICATION_BUFFER_SIZE_IN_BYTES; i++) {
-					buffer.put(i, Byte.valueOf("0", 16));
+				long readPause = getReadPauseInMilliseconds();
+				if (readPause > 0) {
+					// The remote device is slowed down by TCP flow control while nothing is read
+					Thread.sleep(readPause);
 				}
 
-				// Rewind the buffer
-				buffer.rewind();
-
-				// Read (if possible)
-				if(socketChannel.read(buffer) > 0) {		
-					String bufferContent = new String(buffer.array(), "UTF-8").trim();
-
-					if (!bufferContent.equals("")) {
-						List<String> messages = Soutilities.splitMultiMessageString(bufferContent, Parameters.messageSplitter);
+				if (readMessages() < 0) {
+					break;
+				}
 
-						for (String message : messages) {
-							notifyAllObservers(new SoutilsMessage(MessageType.COMMUNICATION, clientAddress, message));
-						}
-					}			
+				if (!blocking) {
+					runTimerTasks();
+					flushPendingWrites();
+				} else if (reliableSession != null) {
+					// Blocking communications never lock from the shared timer, and acknowledge once per read instead
+					sendAcknowledgement();
 				}
+
+				completeSendFutures();
 			} 
+			catch (ClosedChannelException closedChannelException) {
+				if (!done) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, closedChannelException));
+				}
+
+				break;
+			}
 			catch (SocketException socketException) {
 				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, socketException));
 				
 				break;
 			}
+			catch (CommunicationException communicationException) {
+				// The received bytes cannot be decoded, so all following messages would be corrupted as well
+				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+				
+				break;
+			}
 			catch (Exception exception) {
 				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, exception));
 			}
 
+			if (blocking) {
+				continue;
+			}
+
 			try {
 				Thread.sleep(Parameters.COMMUNICATION_DURATION_BETWEEN_READ_ATTEMPTS_IN_MS);
 			} catch (InterruptedException interruptedException) {
@@ -146,38 +494,2160 @@ public class Communication extends SoutilsObservable {
 			}
 		}
 
+		stopPolling();
+	}
+
+	/** Closes the communication once its thread has stopped reading. The work of the shared timer which has been
+	 * handed over to a polling thread in the meantime is done by a worker of the shared timer instead. */
+	private void stopPolling() {
+		close();
+
+		if (pollingThread != null) {
+			pollingThread = null;
+
+			if (!timerTasks.isEmpty()) {
+				SharedTimer.execute(runTimerTasks);
+			}
+		}
+	}
+
+	/** Starts the communication in blocking mode using a thread created by the given factory. Instead of polling
+	 * for new messages, the thread blocks until messages arrive and all messages are written by the sending 
+	 * threads. This allows to run the communication on a virtual thread (Java 21 and later) by passing 
+	 * {@code Thread.ofVirtual().factory()}. Use either this method or {@link #start()}, but not both.
+	 * @param threadFactory the factory creating the communication thread
+	 * @see CommunicationMode#BLOCKING */
+	public void start(ThreadFactory threadFactory) {
+		if (transport == null) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, new CommunicationException("Communication not connected!")));
+			return;
+		}
+
+		try {
+			transport.configureBlocking(true);
+			blocking = true;
+			threadFactory.newThread(this).start();
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+		}
+	}
+
+	/** Reads all currently available bytes from the transport and forwards the contained messages to all
+	 * registered observers. Only the newly received bytes are decoded. Bytes of incomplete frames are kept 
+	 * within the buffer and decoded as soon as the rest of the frame has been received.
+	 * @return the number of bytes read, or -1 if the remote peer has closed the connection */
+	int readMessages() throws IOException, CommunicationException {
+		if (reactor != null && getReadPauseInMilliseconds() > 0) {
+			// The channel has been selected before the reactor stopped reporting its readability
+			return 0;
+		}
+
+		prepareBuffer();
+
+		int numberOfBytesRead = transport.read(buffer);
+		if(numberOfBytesRead > 0) {		
+			decodeReceivedBytes();
+		}
+
+		long readPause = getReadPauseInMilliseconds();
+		if (reactor != null && readPause > 0) {
+			synchronized (this) {
+				readInterestSuspended = true;
+				updateInterestOps();
+			}
+
+			SharedTimer.schedule(handOff(resumeReading), readPause, this);
+		}
+
+		return numberOfBytesRead;
+	}
+
+	/** Returns the time for which reading is paused due to the inbound rate limit, rounded up to milliseconds */
+	private long getReadPauseInMilliseconds() {
+		long readPause = readPausedUntil - System.nanoTime();
+
+		return readPause > 0 ? TimeUnit.NANOSECONDS.toMillis(readPause) + 1 : 0;
+	}
+
+	/** Takes a permit from all inbound rate limiters for a received frame of any type, and applies the inbound
+	 * rate limit policy if a rate limit is exceeded. Only messages, requests, objects, publications and heartbeats 
+	 * are discarded, as discarding any other frame would break the state of a stream, a reliable session or a 
+	 * subscription. They are delayed instead. Called by the thread reading the messages.
+	 * @return false if the frame must be discarded */
+	private boolean admitInboundFrame(byte frameType) throws CommunicationException {
+		RateLimiter[] currentRateLimiters = inboundRateLimiters;
+
+		if (currentRateLimiters.length == 0) {
+			return true;
+		}
+
+		switch (inboundRateLimitPolicy) {
+		case DROP:
+			if (RateLimiter.tryAcquireAll(currentRateLimiters)) {
+				return true;
+			}
+
+			if (frameType == FrameType.MESSAGE || frameType == FrameType.REQUEST || frameType == FrameType.OBJECT 
+					|| frameType == FrameType.PUBLISH) {
+				numberOfDiscardedMessages++;
+				return false;
+			}
+
+			if (frameType == FrameType.PING || frameType == FrameType.PONG) {
+				return false;
+			}
+
+			pauseReading(RateLimiter.acquireAll(currentRateLimiters));
+			return true;
+		case DISCONNECT:
+			if (RateLimiter.tryAcquireAll(currentRateLimiters)) {
+				return true;
+			}
+
+			throw new CommunicationException("The remote device exceeds the inbound rate limit!");
+		default:
+			pauseReading(RateLimiter.acquireAll(currentRateLimiters));
+			return true;
+		}
+	}
+
+	/** Stops reading for the given time in nanoseconds, so that the remote device is slowed down by TCP flow control */
+	private void pauseReading(long delay) {
+		if (delay > 0) {
+			readPausedUntil = System.nanoTime() + delay;
+		}
+	}
+
+	/** Takes a permit from all outbound rate limiters for a message to be sent, and applies the outbound rate limit
+	 * policy if a rate limit is exceeded. The reactor and channel group threads never wait for the rate limit.
+	 * @return false if the message must be dropped */
+	private boolean admitOutboundMessage() throws InterruptedException {
+		if (outboundRateLimiters.length == 0) {
+			return true;
+		}
+
+		switch (outboundRateLimitPolicy) {
+		case DROP:
+			if (RateLimiter.tryAcquireAll(outboundRateLimiters)) {
+				return true;
+			}
+
+			numberOfDroppedMessages++;
+			return false;
+		case DISCONNECT:
+			if (RateLimiter.tryAcquireAll(outboundRateLimiters)) {
+				return true;
+			}
+
+			done();
+			throw new CommunicationException("The outbound rate limit has been exceeded!");
+		default:
+			long delay = RateLimiter.acquireAll(outboundRateLimiters);
+			if ((reactor != null && reactor.isReactorThread()) || Thread.currentThread() == readingThread) {
+				return true;
+			}
+
+			long deadline = System.nanoTime() + delay;
+			while (delay > 0 && !closed) {
+				// Waiting releases the lock, so that high priority messages can still be sent
+				wait(TimeUnit.NANOSECONDS.toMillis(delay) + 1);
+				delay = deadline - System.nanoTime();
+			}
+
+			return true;
+		}
+	}
+
+	/** Acquires the buffer, or replaces it by a larger one if it is full */
+	private void prepareBuffer() {
+		if (buffer == null) {
+			buffer = BufferPool.getDefault().acquire(Parameters.COMMUNICATION_BUFFER_SIZE_IN_BYTES);
+		} else if (!buffer.hasRemaining()) {
+			// A single frame exceeds the buffer, which therefore needs to grow
+			ByteBuffer largerBuffer = BufferPool.getDefault().acquire(Math.min(buffer.capacity() * 2, 
+					Parameters.COMMUNICATION_MAXIMUM_FRAME_SIZE_IN_BYTES + LengthPrefixedFrameCodec.HEADER_LENGTH));
+			buffer.flip();
+			largerBuffer.put(buffer);
+			BufferPool.getDefault().release(buffer);
+			buffer = largerBuffer;
+		}
+	}
+
+	/** Decodes the bytes which have been read into the buffer and forwards the contained messages */
+	private void decodeReceivedBytes() throws CommunicationException {
+		lastReceiveTime = System.nanoTime();
+		buffer.flip();
+		frameCodec.decode(buffer, frameHandler);
+		buffer.compact();
+
+		if (buffer.position() == 0 && buffer.capacity() > Parameters.COMMUNICATION_BUFFER_SIZE_IN_BYTES * 4) {
+			// Do not keep a large buffer after a large frame has been decoded
+			BufferPool.getDefault().release(buffer);
+			buffer = BufferPool.getDefault().acquire(Parameters.COMMUNICATION_BUFFER_SIZE_IN_BYTES);
+		}
+	}
+
+	/** Starts the next asynchronous read, unless the communication has been closed */
+	void readAsynchronously() {
+		synchronized (this) {
+			if (closed) {
+				finishAsynchronousRead();
+				return;
+			}
+
+			readInProgress = true;
+		}
+
+		prepareBuffer();
+		asynchronousTransport.read(buffer);
+	}
+
+	/** Forwards the messages received by an asynchronous read and starts the next read, unless reading is paused */
+	void completeAsynchronousRead(int numberOfBytesRead) {
+		try {
+			if (numberOfBytesRead < 0) {
+				finishAsynchronousRead();
+				close();
+				return;
+			}
+
+			readingThread = Thread.currentThread();
+			decodeReceivedBytes();
+		} catch (CommunicationException communicationException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+			finishAsynchronousRead();
+			close();
+			return;
+		} finally {
+			readingThread = null;
+			completeSendFutures();
+		}
+
+		long readPause = getReadPauseInMilliseconds();
+		if (readPause > 0) {
+			// The buffer is kept, as the read is only finished once it has been resumed
+			SharedTimer.schedule(handOff(resumeReading), readPause, this);
+		} else {
+			readAsynchronously();
+		}
+	}
+
+	void failAsynchronousRead(Throwable throwable) {
+		finishAsynchronousRead();
+
+		if (!done) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, throwable));
+		}
+
+		close();
+	}
+
+	/** Removes the written bytes from the outbound queue and starts writing the frames queued in the meantime */
+	void completeAsynchronousWrite(long numberOfBytesWritten) {
+		synchronized (this) {
+			writeInProgress = false;
+
+			if (closed) {
+				clearOutboundQueue();
+			} else {
+				outboundQueue.completeWrite(numberOfBytesWritten);
+
+				try {
+					flushPendingWrites();
+				} catch (IOException ioException) {
+					failAsynchronousWrite(ioException);
+				}
+			}
+		}
+
+		completeSendFutures();
+	}
+
+	void failAsynchronousWrite(Throwable throwable) {
+		boolean wasClosed;
+
+		synchronized (this) {
+			writeInProgress = false;
+			wasClosed = closed;
+
+			if (closed) {
+				clearOutboundQueue();
+			}
+		}
+
+		if (!wasClosed) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, throwable));
+			close();
+		}
+
+		completeSendFutures();
+	}
+
+	/** Marks the asynchronous reads as finished, and releases the buffer if the communication has been closed */
+	private synchronized void finishAsynchronousRead() {
+		readInProgress = false;
+
+		if (closed) {
+			releaseBuffer();
+		}
+	}
+
+	private synchronized void releaseBuffer() {
+		if (buffer != null) {
+			BufferPool.getDefault().release(buffer);
+			buffer = null;
+		}
+	}
+
+	/** Closes the transport and removes the communication from its reactor and manager (if any) */
+	void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+		}
+
+		done = true;
+
+		if (heartbeatTimeout != null) {
+			heartbeatTimeout.cancel();
+		}
+
+		if (reactor != null) {
+			reactor.unregister(this);
+		}
+
 		try {
-			socketChannel.socket().close();
-			socketChannel.close();
+			if (asynchronousTransport != null) {
+				asynchronousTransport.close();
+			} else {
+				transport.close();
+			}
 		} catch (IOException ioException) {
 			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
 		}
+
+		synchronized (this) {
+			// Frames and buffers still used by pending asynchronous operations are released once these have completed
+			if (!writeInProgress) {
+				clearOutboundQueue();
+			}
+
+			if (!readInProgress) {
+				releaseBuffer();
+			}
+
+			// Wake up all threads waiting for the outbound queue to be drained
+			notifyAll();
+		}
+
+		completeSendFutures();
+
+		closeAllStreams();
+
+		ReliableSession currentReliableSession = reliableSession;
+		if (currentReliableSession != null) {
+			currentReliableSession.detach(this);
+		}
+
+		for (ResponseFuture responseFuture : pendingRequests.removeAll()) {
+			responseFuture.cancelTimeout();
+			responseFuture.fail(new CommunicationException("The communication has been closed before a response has been received!"));
+		}
+
+		if (communicationManager != null) {
+			communicationManager.removeCommunication(this);
+		}
+
+		if (communicationConnector != null) {
+			communicationConnector.communicationClosed(this);
+		}
 	}
 
-	/** Sends a message to the host specified within the constructor
+	/** Sends a message to the host specified within the constructor. The message is written immediately if 
+	 * possible. Otherwise it is queued and written as soon as the remote device is able to receive it. If the 
+	 * outbound queue exceeds its high watermark, the overflow policy of the communication is applied.
 	 * @param messageContent the message to be sent
-	 * @throws CommunicationException */
-	public synchronized void sendMessage(String messageContent) throws CommunicationException {
-		if (socketChannel.isConnected()) {
-			Charset charset = Charset.forName("UTF-8");
-			CharsetEncoder encoder = charset.newEncoder();
+	 * @throws CommunicationException 
+	 * @see #setOverflowPolicy(OverflowPolicy)
+	 * @see #setLinger(int, int) */
+	public void sendMessage(String messageContent) throws CommunicationException {
+		sendMessage(messageContent, MessagePriority.NORMAL);
+	}
 
-			try {
-				ByteBuffer buffer = encoder.encode(CharBuffer.wrap(messageContent));
-				while (buffer.remaining()>0) {
-					socketChannel.write(buffer);
+	/** Sends a message using the given priority. Messages are queued separately per priority, so that a 
+	 * {@link MessagePriority#HIGH} message overtakes all lower priority messages which have not yet been written.
+	 * High priority messages are additionally written immediately regardless of the linger time, and are queued
+	 * even if the outbound queue exceeds its high watermark.
+	 * @param messageContent the message to be sent
+	 * @param messagePriority the priority class of the message
+	 * @throws CommunicationException 
+	 * @see #sendMessage(String) */
+	public void sendMessage(String messageContent, MessagePriority messagePriority) throws CommunicationException {
+		try {
+			synchronized (this) {
+				send(FrameType.MESSAGE, 0, messageContent, null, null, messagePriority);
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Sends a message without waiting for it to be written. The returned future completes as soon as the message
+	 * has been written to the socket, or fails if the message cannot be sent. Unlike {@link #sendMessage(String)},
+	 * this method never throws a CommunicationException, so that many messages can be sent in a row and their 
+	 * outcome handled afterwards. Note that the {@link OverflowPolicy#BLOCK} policy still blocks the calling 
+	 * thread while the outbound queue exceeds its high watermark.
+	 * @param messageContent the message to be sent
+	 * @return the future of the message
+	 * @see SendFuture#addSendListener(SendListener) */
+	public SendFuture sendAsync(String messageContent) {
+		return sendAsync(messageContent, MessagePriority.NORMAL);
+	}
+
+	/** Sends a message using the given priority without waiting for it to be written
+	 * @param messageContent the message to be sent
+	 * @param messagePriority the priority class of the message
+	 * @return the future of the message
+	 * @see #sendAsync(String)
+	 * @see #sendMessage(String, MessagePriority) */
+	public SendFuture sendAsync(String messageContent, MessagePriority messagePriority) {
+		SendFuture sendFuture = new SendFuture();
+		boolean queued;
+
+		try {
+			synchronized (this) {
+				queued = send(FrameType.MESSAGE, 0, messageContent, null, sendFuture, messagePriority);
+			}
+
+			if (!queued) {
+				sendFuture.fail(new CommunicationException("The message has been dropped as the outbound queue is full!"));
+			}
+		} catch (CommunicationException communicationException) {
+			sendFuture.fail(communicationException);
+		} finally {
+			completeSendFutures();
+		}
+
+		return sendFuture;
+	}
+
+	/** Sends several messages to the host specified within the constructor. All messages are queued first and
+	 * then written together using as few system calls as possible. The overflow policy is applied to every single
+	 * message, so that with {@link OverflowPolicy#DROP} only some of the given messages might be sent.
+	 * @param messageContents the messages to be sent, in the order in which they should be received
+	 * @throws CommunicationException 
+	 * @see #sendMessage(String) */
+	public void sendMessages(Collection<String> messageContents) throws CommunicationException {
+		try {
+			synchronized (this) {
+				ensureConnected();
+
+				try {
+					for (String messageContent : messageContents) {
+						if (mayQueue(MessagePriority.NORMAL)) {
+							outboundQueue.add(encodeFrame(FrameType.MESSAGE, messageContent), null);
+						}
+					}
+
+					flushOrLinger();
+				} catch (Exception exception) {
+					throw sendFailure(exception);
 				}
-			} catch (Exception e) {
-				throw new CommunicationException("Communication Error");
 			}
-		} else {
-			throw new CommunicationException("Communication not connected!");
+		} finally {
+			completeSendFutures();
 		}
 	}
-	
-	/** Get the IP address of the local device
-	 * @return the IP address of the local device */
-	public synchronized String getClientAddress() {
-		return clientAddress;
+
+	/** Sends a message whose content is already UTF-8 encoded, without decoding it. The bytes between the position
+	 * and the limit of the given buffer are copied into the outbound queue, and the buffer itself is not modified. 
+	 * This allows to relay a received {@link MessagePayload} to another device.
+	 * @param messageContent the UTF-8 encoded message to be sent
+	 * @throws CommunicationException 
+	 * @see #sendMessage(String) */
+	public void sendMessage(ByteBuffer messageContent) throws CommunicationException {
+		try {
+			synchronized (this) {
+				ensureConnected();
+
+				try {
+					if (!mayQueue(MessagePriority.NORMAL)) {
+						return;
+					}
+
+					outboundQueue.add(encodeFrame(FrameType.MESSAGE, messageContent), null);
+					flushOrLinger();
+				} catch (Exception exception) {
+					throw sendFailure(exception);
+				}
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Sends an object using the serializer registered for its class. Objects are transmitted in a compact binary 
+	 * form instead of text, and are forwarded to the SoutilsObservers of the remote communication as 
+	 * {@link MessageType#OBJECT} messages. Byte arrays, strings and boxed primitives can be sent without registering
+	 * a serializer. Objects require {@link MessageFraming#LENGTH_PREFIXED}.
+	 * @param object the object to be sent
+	 * @throws CommunicationException if the object cannot be serialized or sent
+	 * @see CodecRegistry#register(int, Class, Serializer)
+	 * @see SoutilsMessage#getObject() */
+	public void sendObject(Object object) throws CommunicationException {
+		sendObject(object, MessagePriority.NORMAL);
+	}
+
+	/** Sends an object using the given priority
+	 * @param object the object to be sent
+	 * @param messagePriority the priority class of the object
+	 * @throws CommunicationException if the object cannot be serialized or sent
+	 * @see #sendObject(Object)
+	 * @see #sendMessage(String, MessagePriority) */
+	public void sendObject(Object object, MessagePriority messagePriority) throws CommunicationException {
+		try {
+			synchronized (this) {
+				ensureConnected();
+
+				try {
+					if (!mayQueue(messagePriority)) {
+						return;
+					}
+
+					outboundQueue.add(encodeObjectFrame(object), null, messagePriority);
+					flush(messagePriority);
+				} catch (Exception exception) {
+					throw sendFailure(exception);
+				}
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Subscribes to all messages published to the given topic by the CommunicationManager this communication is 
+	 * connected to. A topic pattern ending with '*' subscribes to all topics starting with the characters in front 
+	 * of it. (E.g. "sensors/*" subscribes to "sensors/temperature" and "sensors/humidity", and "*" to all topics.) 
+	 * Published messages and objects are received like any other message or object, except that the topic they have
+	 * been published to is returned by {@link SoutilsMessage#getTopic()}. Subscriptions require 
+	 * {@link MessageFraming#LENGTH_PREFIXED}, and are sent with high priority.
+	 * @param topicPattern the topic or the wildcard pattern to subscribe to
+	 * @throws CommunicationException 
+	 * @see CommunicationManager#publish(String, String) */
+	public void subscribe(String topicPattern) throws CommunicationException {
+		sendSubscription(FrameType.SUBSCRIBE, topicPattern);
+	}
+
+	/** Cancels a subscription made using {@link #subscribe(String)}
+	 * @param topicPattern the topic or the wildcard pattern which has been subscribed to
+	 * @throws CommunicationException */
+	public void unsubscribe(String topicPattern) throws CommunicationException {
+		sendSubscription(FrameType.UNSUBSCRIBE, topicPattern);
+	}
+
+	private void sendSubscription(byte frameType, String topicPattern) throws CommunicationException {
+		try {
+			synchronized (this) {
+				if (messageFraming == MessageFraming.DELIMITED) {
+					throw new CommunicationException("Subscriptions can only be sent using the LENGTH_PREFIXED message framing!");
+				}
+
+				send(frameType, 0, topicPattern, null, null, MessagePriority.HIGH);
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Forwards a received subscription to the CommunicationManager of this communication */
+	private void updateSubscription(boolean subscribe, String topicPattern) {
+		if (communicationManager == null) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, 
+					new CommunicationException("Subscriptions are only accepted by communications of a CommunicationManager!")));
+			return;
+		}
+
+		try {
+			if (subscribe) {
+				communicationManager.subscribe(this, topicPattern);
+			} else {
+				communicationManager.unsubscribe(this, topicPattern);
+			}
+		} catch (CommunicationException communicationException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+		}
+	}
+
+	/** Opens a new stream sent with {@link MessagePriority#NORMAL} priority
+	 * @see #openStream(MessagePriority) */
+	public Stream openStream() throws CommunicationException {
+		return openStream(MessagePriority.NORMAL);
+	}
+
+	/** Opens a new logical stream multiplexed over this communication. The remote device learns about the stream
+	 * as soon as its first bytes arrive, so that a stream which is closed before any bytes have been sent is
+	 * forgotten right away. All bytes of a stream are sent with the same priority, so that they are never
+	 * reordered. Streams require {@link MessageFraming#LENGTH_PREFIXED}.
+	 * @param messagePriority the priority with which the bytes of the stream are sent
+	 * @return the opened stream
+	 * @throws CommunicationException
+	 * @see #setStreamHandler(StreamHandler) */
+	public synchronized Stream openStream(MessagePriority messagePriority) throws CommunicationException {
+		ensureConnected();
+
+		if (messageFraming == MessageFraming.DELIMITED) {
+			throw new CommunicationException("Streams can only be sent using the LENGTH_PREFIXED message framing!");
+		}
+
+		if (nextStreamId == 0) {
+			nextStreamId = communicationManager == null ? 1 : 2;
+		}
+
+		Stream stream = new Stream(this, nextStreamId, messagePriority);
+		streams.put(stream.getId(), stream);
+		nextStreamId += 2;
+
+		return stream;
+	}
+
+	/** Returns the number of streams which have not yet been closed by both sides */
+	public synchronized int getNumberOfStreams() {
+		return streams.size();
+	}
+
+	/** Sends the remaining bytes of the given buffer within as many chunks as required, waiting for the remote
+	 * device to replenish the flow control window of the stream whenever it has been exhausted. The threads of
+	 * reactors and channel groups never wait: the bytes exceeding the window are copied and sent as soon as the
+	 * window is replenished. Stream data is not subject to the overflow policy, as its window already limits the
+	 * number of queued bytes. */
+	void sendStreamData(Stream stream, ByteBuffer data) throws CommunicationException {
+		try {
+			synchronized (this) {
+				boolean mayWait = (reactor == null || !reactor.isReactorThread()) && Thread.currentThread() != readingThread;
+
+				try {
+					while (data.hasRemaining()) {
+						while (mayWait && (stream.sendWindow <= 0 || !stream.pendingData.isEmpty())
+								&& !stream.closedLocally && !closed) {
+							// Waiting releases the lock, so that window updates can be received
+							wait(Parameters.COMMUNICATION_MILLISECONDS_BETWEEN_WRITE_ATTEMPTS);
+						}
+
+						ensureConnected();
+
+						if (stream.closedLocally) {
+							throw new CommunicationException("The stream has been closed!");
+						}
+
+						stream.announced = true;
+
+						if (stream.pendingData.isEmpty()) {
+							sendStreamChunks(stream, data);
+						}
+
+						if (!mayWait && data.hasRemaining()) {
+							ByteBuffer pendingData = ByteBuffer.allocate(data.remaining());
+							pendingData.put(data);
+							pendingData.flip();
+							stream.pendingData.add(pendingData);
+						}
+					}
+				} catch (Exception exception) {
+					throw sendFailure(exception);
+				}
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Sends as many of the remaining bytes of the given buffer as the window of the stream allows */
+	private void sendStreamChunks(Stream stream, ByteBuffer data) throws IOException {
+		while (data.hasRemaining() && stream.sendWindow > 0) {
+			int chunkLength = Math.min(Math.min(data.remaining(), stream.sendWindow),
+					Parameters.COMMUNICATION_STREAM_MAXIMUM_CHUNK_SIZE_IN_BYTES);
+
+			ByteBuffer chunk = data.slice();
+			chunk.limit(chunkLength);
+			data.position(data.position() + chunkLength);
+			stream.sendWindow -= chunkLength;
+
+			outboundQueue.add(encodeStreamFrame(FrameType.STREAM_DATA, stream.getId(), chunk), null, stream.getMessagePriority());
+			flush(stream.getMessagePriority());
+		}
+	}
+
+	/** Sends the bytes which have been left pending by reactor or channel group threads as far as the replenished
+	 * window allows, followed by the close frame if the stream has been closed in the meantime */
+	private void sendPendingStreamData(Stream stream) {
+		try {
+			while (!stream.pendingData.isEmpty() && stream.sendWindow > 0) {
+				ByteBuffer pendingData = stream.pendingData.peek();
+				sendStreamChunks(stream, pendingData);
+
+				if (!pendingData.hasRemaining()) {
+					stream.pendingData.poll();
+				}
+			}
+
+			if (stream.pendingData.isEmpty() && stream.closeFramePending) {
+				stream.closeFramePending = false;
+				sendStreamClose(stream);
+			}
+		} catch (Exception exception) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, sendFailure(exception)));
+		}
+	}
+
+	/** Closes the sending direction of the given stream, and forgets it if the remote device has closed it as well
+	 * or has never learned about it */
+	void closeStream(Stream stream) {
+		try {
+			synchronized (this) {
+				if (stream.closedLocally) {
+					return;
+				}
+
+				stream.closedLocally = true;
+
+				// Wake up all threads waiting for the window of the stream
+				notifyAll();
+
+				if (!stream.announced) {
+					forgetStream(stream);
+					return;
+				}
+
+				if (closed) {
+					return;
+				}
+
+				if (!stream.pendingData.isEmpty()) {
+					stream.closeFramePending = true;
+					return;
+				}
+
+				try {
+					sendStreamClose(stream);
+				} catch (Exception exception) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, sendFailure(exception)));
+				}
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Closes the sending direction of a stream whose window has been corrupted by the remote device. The bytes
+	 * which have not yet been sent are discarded, and the threads waiting for the window fail. The receiving 
+	 * direction is kept until the remote device closes the stream as well. Called while holding the lock. */
+	private void failStream(Stream stream, CommunicationException communicationException) {
+		notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+
+		stream.pendingData.clear();
+		stream.closeFramePending = false;
+
+		if (stream.closedLocally) {
+			return;
+		}
+
+		stream.closedLocally = true;
+
+		// Wake up all threads waiting for the window of the stream
+		notifyAll();
+
+		if (closed) {
+			return;
+		}
+
+		try {
+			sendStreamClose(stream);
+		} catch (Exception exception) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, sendFailure(exception)));
+		}
+	}
+
+	/** Informs the remote device that no further bytes will be sent. The frame is sent with the priority of the
+	 * stream, so that it never overtakes the bytes of the stream. */
+	private void sendStreamClose(Stream stream) throws IOException {
+		if (stream.closedRemotely) {
+			forgetStream(stream);
+		}
+
+		outboundQueue.add(encodeStreamFrame(FrameType.STREAM_CLOSE, stream.getId(), null), null, stream.getMessagePriority());
+		flush(stream.getMessagePriority());
+	}
+
+	/** Removes a stream which has been closed by both sides */
+	private void forgetStream(Stream stream) {
+		if (streams.remove(stream.getId()) != null && isRemoteStreamId(stream.getId())) {
+			numberOfRemoteStreams--;
+		}
+	}
+
+	/** Returns true if the given stream id may be chosen by the remote device, which uses odd ids if this
+	 * communication has been accepted by a CommunicationManager and even ids otherwise */
+	private boolean isRemoteStreamId(int streamId) {
+		return streamId > 0 && (streamId % 2 == 1) == (communicationManager != null);
+	}
+
+	/** Handles a received stream frame. Streams opened by the remote device are created by their first data frame,
+	 * while frames of unknown streams are otherwise ignored. Received bytes are buffered by their stream, so that
+	 * the receiving thread never waits for the reader of a stream.
+	 * @throws CommunicationException if the remote device has violated the protocol, in which case the
+	 * communication is closed */
+	private void handleStreamFrame(byte frameType, ByteBuffer payload) {
+		if (payload.remaining() < FrameType.STREAM_ID_LENGTH) {
+			throw new CommunicationException("Invalid frame of type " + frameType + " received!");
+		}
+
+		int streamId = payload.getInt();
+		StreamHandler currentStreamHandler = streamHandler;
+		Stream stream;
+		boolean opened = false;
+
+		synchronized (this) {
+			stream = streams.get(streamId);
+
+			if (stream == null) {
+				if (frameType != FrameType.STREAM_DATA) {
+					return;
+				}
+
+				if (!isRemoteStreamId(streamId)) {
+					throw new CommunicationException("The remote device has sent bytes of the invalid stream " + streamId + "!");
+				}
+
+				if (numberOfRemoteStreams >= Parameters.COMMUNICATION_MAXIMUM_REMOTE_STREAMS_PER_COMMUNICATION) {
+					throw new CommunicationException("The remote device has opened more than "
+							+ Parameters.COMMUNICATION_MAXIMUM_REMOTE_STREAMS_PER_COMMUNICATION + " streams!");
+				}
+
+				stream = new Stream(this, streamId, MessagePriority.NORMAL);
+				stream.announced = true;
+				streams.put(streamId, stream);
+				numberOfRemoteStreams++;
+				opened = true;
+			}
+
+			if (frameType == FrameType.STREAM_WINDOW_UPDATE) {
+				if (payload.remaining() < 4) {
+					throw new CommunicationException("Invalid frame of type " + frameType + " received!");
+				}
+
+				int increment = payload.getInt();
+				if (increment <= 0 || increment > Parameters.COMMUNICATION_STREAM_WINDOW_IN_BYTES - stream.sendWindow) {
+					failStream(stream, new CommunicationException("The remote device has sent the invalid window update " 
+							+ increment + " for the stream " + streamId + "!"));
+					return;
+				}
+
+				stream.sendWindow += increment;
+				sendPendingStreamData(stream);
+				notifyAll();
+				return;
+			}
+
+			if (stream.closedRemotely) {
+				return;
+			}
+
+			if (frameType == FrameType.STREAM_CLOSE) {
+				stream.closedRemotely = true;
+				if (stream.closedLocally && !stream.closeFramePending) {
+					forgetStream(stream);
+				}
+			}
+		}
+
+		if (currentStreamHandler != null && opened) {
+			currentStreamHandler.handleStreamOpened(stream);
+		}
+
+		if (frameType == FrameType.STREAM_CLOSE) {
+			stream.receiveEndOfStream();
+
+			if (currentStreamHandler != null) {
+				currentStreamHandler.handleStreamClosed(stream);
+			} else if (isRemoteStreamId(streamId)) {
+				// Nobody knows about the stream, which would otherwise never be forgotten
+				closeStream(stream);
+			}
+
+			return;
+		}
+
+		if (currentStreamHandler == null && isRemoteStreamId(streamId)) {
+			acknowledgeStreamData(stream, payload.remaining());
+			return;
+		}
+
+		if (payload.hasRemaining() && stream.receive(payload) && currentStreamHandler != null) {
+			currentStreamHandler.handleStreamData(stream);
+		}
+	}
+
+	/** Replenishes the window of the remote sender once half of the window has been read, so that window
+	 * updates are only sent for every few chunks. Window updates are sent with high priority. */
+	void acknowledgeStreamData(Stream stream, int length) {
+		try {
+			synchronized (this) {
+				stream.numberOfUnacknowledgedBytes += length;
+
+				if (stream.numberOfUnacknowledgedBytes < Parameters.COMMUNICATION_STREAM_WINDOW_IN_BYTES / 2
+						|| stream.closedRemotely || closed) {
+					return;
+				}
+
+				ByteBuffer increment = ByteBuffer.allocate(4);
+				increment.putInt(0, stream.numberOfUnacknowledgedBytes);
+				stream.numberOfUnacknowledgedBytes = 0;
+
+				try {
+					outboundQueue.add(encodeStreamFrame(FrameType.STREAM_WINDOW_UPDATE, stream.getId(), increment), null, MessagePriority.HIGH);
+					flush(MessagePriority.HIGH);
+				} catch (Exception exception) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, sendFailure(exception)));
+				}
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Marks all streams as closed by both sides once the communication has been closed, wakes up their readers,
+	 * and informs the stream handler about every stream the remote device had not yet closed */
+	private void closeAllStreams() {
+		List<Stream> closedStreams = new ArrayList<Stream>();
+		List<Stream> openStreams = new ArrayList<Stream>();
+
+		synchronized (this) {
+			for (Stream stream : streams.values()) {
+				if (!stream.closedRemotely) {
+					openStreams.add(stream);
+				}
+
+				stream.closedLocally = true;
+				stream.closedRemotely = true;
+				stream.pendingData.clear();
+				stream.closeFramePending = false;
+				closedStreams.add(stream);
+			}
+
+			streams.clear();
+			numberOfRemoteStreams = 0;
+		}
+
+		for (Stream stream : closedStreams) {
+			stream.receiveEndOfStream();
+		}
+
+		StreamHandler currentStreamHandler = streamHandler;
+		if (currentStreamHandler != null) {
+			for (Stream stream : openStreams) {
+				currentStreamHandler.handleStreamClosed(stream);
+			}
+		}
+	}
+
+	/** Resumes the given reliable session using this communication, which must not have been started yet. The
+	 * remote device is asked for the last message it has received, after which all messages it has not received
+	 * are sent again. Client communications have to be given the session they have used before they have been 
+	 * disconnected (or a new session), while communications accepted by a CommunicationManager resume their 
+	 * sessions automatically. A session which has expired on the CommunicationManager cannot be resumed, and a new
+	 * session is started instead. Messages the manager has kept for the expired session may have been lost.
+	 * @param reliableSession the session to be resumed
+	 * @throws CommunicationException if the message framing is not {@link MessageFraming#LENGTH_PREFIXED}
+	 * @see CommunicationManager#setReliableDelivery(boolean) */
+	public void setReliableSession(ReliableSession reliableSession) throws CommunicationException {
+		try {
+			synchronized (this) {
+				if (messageFraming == MessageFraming.DELIMITED) {
+					throw new CommunicationException("Reliable messages can only be sent using the LENGTH_PREFIXED message framing!");
+				}
+
+				this.reliableSession = reliableSession;
+				sendResume(reliableSession);
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Returns the reliable session of this communication, or null if there is none */
+	public ReliableSession getReliableSession() {
+		return reliableSession;
+	}
+
+	/** Sends a message which is delivered at least once, even if the connection is reset before the remote device
+	 * has received it. Unlike this communication, the session survives a reconnect.
+	 * @param messageContent the message to be sent
+	 * @throws CommunicationException if the communication has no reliable session
+	 * @see ReliableSession#sendMessage(String) */
+	public void sendReliably(String messageContent) throws CommunicationException {
+		ReliableSession currentReliableSession = reliableSession;
+
+		if (currentReliableSession == null) {
+			throw new CommunicationException("The communication has no reliable session!");
+		}
+
+		currentReliableSession.sendMessage(messageContent);
+	}
+
+	/** Transmits a new reliable message, provided that this communication transmits the messages of the session
+	 * @return false if the session is not attached to this communication */
+	boolean transmitReliably(ReliableSession session, String messageContent) throws CommunicationException {
+		try {
+			synchronized (this) {
+				ReliableSession.UnacknowledgedMessage unacknowledgedMessage = session.append(messageContent, this);
+
+				if (unacknowledgedMessage == null) {
+					return false;
+				}
+
+				transmit(session, unacknowledgedMessage);
+
+				return true;
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Sends a reliable message along with the acknowledgement of all received reliable messages. If the message
+	 * cannot be sent, the session is detached and the communication closed, as all messages are kept and sent 
+	 * again once the session has been resumed. */
+	private void transmit(ReliableSession session, ReliableSession.UnacknowledgedMessage unacknowledgedMessage) {
+		long acknowledgement = session.getLastReceivedSequenceNumber();
+
+		try {
+			ensureConnected();
+			outboundQueue.add(encodeReliableFrame(FrameType.RELIABLE_MESSAGE, unacknowledgedMessage.sequenceNumber, 
+					acknowledgement - lastAcknowledgementSent, unacknowledgedMessage.content), null, MessagePriority.NORMAL);
+			lastAcknowledgementSent = acknowledgement;
+			flush(MessagePriority.NORMAL);
+		} catch (Exception exception) {
+			if (session.getCommunication() == this) {
+				session.detach(this);
+				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, sendFailure(exception)));
+				done();
+			}
+		}
+	}
+
+	private synchronized void sendResume(ReliableSession session) throws CommunicationException {
+		lastAcknowledgementSent = session.getLastReceivedSequenceNumber();
+
+		try {
+			ensureConnected();
+			outboundQueue.add(encodeResumeFrame(session.getId(), lastAcknowledgementSent, session.getToken()), null, MessagePriority.HIGH);
+			flush(MessagePriority.HIGH);
+		} catch (Exception exception) {
+			throw sendFailure(exception);
+		}
+	}
+
+	/** Handles a received RESUME, RELIABLE_MESSAGE or ACKNOWLEDGEMENT frame */
+	private void handleReliableFrame(byte frameType, ByteBuffer payload) {
+		long firstValue = BinaryEncoding.readUnsignedVarLong(payload);
+
+		if (frameType == FrameType.ACKNOWLEDGEMENT) {
+			acknowledgeReliableMessages(firstValue);
+			return;
+		}
+
+		if (frameType == FrameType.SESSION_UNKNOWN) {
+			restartReliableSession(firstValue);
+			return;
+		}
+
+		long secondValue = BinaryEncoding.readUnsignedVarLong(payload);
+
+		if (frameType == FrameType.RESUME) {
+			if (payload.remaining() != FrameType.SESSION_TOKEN_LENGTH) {
+				throw new CommunicationException("Invalid frame of type " + frameType + " received!");
+			}
+
+			byte[] token = new byte[FrameType.SESSION_TOKEN_LENGTH];
+			payload.get(token);
+			resume(firstValue, secondValue, token);
+			return;
+		}
+
+		ReliableSession currentReliableSession = reliableSession;
+		if (currentReliableSession == null) {
+			throw new CommunicationException("Reliable message received without a reliable session!");
+		}
+
+		if (secondValue > 0) {
+			acknowledgeReliableMessages(secondValue);
+		}
+
+		if (currentReliableSession.receive(firstValue)) {
+			deliverMessage(payload, null);
+		}
+
+		if (blocking) {
+			// Acknowledged by the communication thread once all received messages have been forwarded
+			return;
+		}
+
+		synchronized (this) {
+			if (!acknowledgementScheduled) {
+				acknowledgementScheduled = true;
+				SharedTimer.schedule(handOff(acknowledgement), Parameters.COMMUNICATION_ACKNOWLEDGEMENT_DELAY_IN_MILLISECONDS, this);
+			}
+		}
+	}
+
+	/** Resumes the reliable session after the remote device has sent the sequence number of the last message it
+	 * has received. Communications of a CommunicationManager look up (or issue) the session of the client and 
+	 * answer with a RESUME frame of their own first, which carries the id and token of the session. */
+	private void resume(long sessionId, long lastReceivedSequenceNumber, byte[] token) {
+		ReliableSession session = reliableSession;
+
+		if (communicationManager != null) {
+			session = communicationManager.resumeReliableSession(sessionId, token, clientAddress);
+
+			if (session == null) {
+				// The client starts a new session instead
+				sendSessionUnknown(sessionId);
+				return;
+			}
+
+			reliableSession = session;
+			sendResume(session);
+		} else if (session == null || !session.confirm(sessionId, token)) {
+			throw new CommunicationException("Unknown reliable session " + sessionId + " resumed!");
+		}
+
+		Communication previousCommunication;
+
+		synchronized (this) {
+			lastAcknowledgementReceived = lastReceivedSequenceNumber;
+			session.acknowledge(lastReceivedSequenceNumber);
+			previousCommunication = session.getCommunication();
+
+			for (ReliableSession.UnacknowledgedMessage unacknowledgedMessage : session.attach(this)) {
+				transmit(session, unacknowledgedMessage);
+			}
+		}
+
+		if (previousCommunication != null && previousCommunication != this) {
+			// The remote device has reconnected before the previous connection has been detected as broken
+			previousCommunication.done();
+		}
+	}
+
+	/** Starts a new reliable session after the CommunicationManager has answered that it does not know the resumed
+	 * session (any more). A new session is only requested once per unknown session, so that a manager which keeps
+	 * answering this way closes the communication instead of looping. */
+	private void restartReliableSession(long sessionId) {
+		ReliableSession session = reliableSession;
+
+		if (communicationManager != null || session == null || !session.restart(sessionId)) {
+			throw new CommunicationException("The remote device does not know the reliable session " + sessionId + "!");
+		}
+
+		notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, new CommunicationException("The reliable session " 
+				+ sessionId + " has expired and has been replaced by a new session. Messages may have been lost!")));
+
+		sendResume(session);
+	}
+
+	/** Answers the attempt to resume a session which has never been issued, has expired, or has been issued to
+	 * another client */
+	private synchronized void sendSessionUnknown(long sessionId) throws CommunicationException {
+		try {
+			ensureConnected();
+			outboundQueue.add(encodeReliableFrame(FrameType.SESSION_UNKNOWN, sessionId, 0, null), null, MessagePriority.HIGH);
+			flush(MessagePriority.HIGH);
+		} catch (Exception exception) {
+			throw sendFailure(exception);
+		}
+	}
+
+	private synchronized void acknowledgeReliableMessages(long numberOfAcknowledgedMessages) {
+		if (reliableSession == null) {
+			throw new CommunicationException("Acknowledgement received without a reliable session!");
+		}
+
+		lastAcknowledgementReceived += numberOfAcknowledgedMessages;
+		reliableSession.acknowledge(lastAcknowledgementReceived);
+	}
+
+	/** Sends the acknowledgement of all received reliable messages, unless it has already been sent along with a
+	 * reliable message */
+	private synchronized void sendAcknowledgement() {
+		acknowledgementScheduled = false;
+
+		ReliableSession currentReliableSession = reliableSession;
+		if (currentReliableSession == null || closed) {
+			return;
+		}
+
+		long acknowledgement = currentReliableSession.getLastReceivedSequenceNumber();
+		if (acknowledgement == lastAcknowledgementSent) {
+			return;
+		}
+
+		try {
+			outboundQueue.add(encodeReliableFrame(FrameType.ACKNOWLEDGEMENT, acknowledgement - lastAcknowledgementSent, 0, null), 
+					null, MessagePriority.HIGH);
+			lastAcknowledgementSent = acknowledgement;
+			flush(MessagePriority.HIGH);
+		} catch (Exception exception) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, sendFailure(exception)));
+		}
+	}
+
+	/** Sends a frame which has been encoded once for several communications. The frame must have been
+	 * encoded using the message framing of this communication. */
+	void sendSharedFrame(SharedFrame sharedFrame, MessagePriority messagePriority) throws CommunicationException {
+		try {
+			synchronized (this) {
+				send(FrameType.MESSAGE, 0, null, sharedFrame, null, messagePriority);
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Sends a request to the host specified within the constructor, using the default request timeout.
+	 * @see #request(String, long)
+	 * @see Parameters#COMMUNICATION_REQUEST_TIMEOUT_IN_MILLISECONDS */
+	public ResponseFuture request(String requestContent) {
+		return request(requestContent, Parameters.COMMUNICATION_REQUEST_TIMEOUT_IN_MILLISECONDS);
+	}
+
+	/** Sends a request to the host specified within the constructor. The request is answered by the request
+	 * handler of the remote communication, and the returned future completes as soon as the response has been 
+	 * received. Any number of requests can be outstanding at the same time, as every request is identified by
+	 * an id which is sent back along with its response. Requests require {@link MessageFraming#LENGTH_PREFIXED}.
+	 * @param requestContent the request to be sent
+	 * @param timeoutInMilliseconds the time after which the future fails with a TimeoutException if no response 
+	 * has been received
+	 * @return the future of the response
+	 * @see #setRequestHandler(RequestHandler) */
+	public ResponseFuture request(String requestContent, final long timeoutInMilliseconds) {
+		try {
+			synchronized (this) {
+				final ResponseFuture responseFuture = new ResponseFuture();
+				final long requestId = nextRequestId++;
+
+				pendingRequests.add(requestId, responseFuture);
+				responseFuture.setTimeout(SharedTimer.schedule(new Runnable() {
+					@Override
+					public void run() {
+						ResponseFuture expiredResponseFuture = pendingRequests.remove(requestId);
+
+						if (expiredResponseFuture != null) {
+							expiredResponseFuture.fail(new TimeoutException("No response received within " + timeoutInMilliseconds + " ms!"));
+						}
+					}
+				}, timeoutInMilliseconds, this));
+
+				try {
+					if (!send(FrameType.REQUEST, requestId, requestContent, null, null, MessagePriority.NORMAL)) {
+						throw new CommunicationException("The request has been dropped as the outbound queue is full!");
+					}
+				} catch (CommunicationException communicationException) {
+					if (pendingRequests.remove(requestId) != null) {
+						responseFuture.cancelTimeout();
+						responseFuture.fail(communicationException);
+					}
+				}
+
+				return responseFuture;
+			}
+		} finally {
+			completeSendFutures();
+		}
+	}
+
+	/** Answers a received request using the request handler and sends back the response */
+	/** Answers a received request right away if this communication is served by a thread of its own. Requests
+	 * received by a reactor or channel group are answered by the request executor instead, so that a slow request
+	 * handler never delays the other communications served by the same thread. The requests of a communication
+	 * are answered one after the other in either case. */
+	private void receiveRequest(final long requestId, final String requestContent) {
+		if (reactor == null && asynchronousTransport == null) {
+			answerRequest(requestId, requestContent);
+			return;
+		}
+
+		receivedRequests.add(new Runnable() {
+			@Override
+			public void run() {
+				answerRequest(requestId, requestContent);
+			}
+		});
+
+		if (!answeringReceivedRequests.compareAndSet(false, true)) {
+			return;
+		}
+
+		Executor currentRequestExecutor = requestExecutor;
+
+		try {
+			(currentRequestExecutor != null ? currentRequestExecutor : RequestWorkers.EXECUTOR).execute(answerReceivedRequests);
+		} catch (RejectedExecutionException rejectedExecutionException) {
+			// The requests are never answered, and fail on the requesting device once they have timed out
+			receivedRequests.clear();
+			answeringReceivedRequests.set(false);
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, rejectedExecutionException));
+		}
+	}
+
+	private void answerRequest(long requestId, String requestContent) {
+		RequestHandler currentRequestHandler = requestHandler;
+		byte frameType = FrameType.RESPONSE;
+		String responseContent;
+
+		if (currentRequestHandler == null) {
+			frameType = FrameType.REQUEST_FAILURE;
+			responseContent = "No request handler has been set!";
+		} else {
+			try {
+				responseContent = currentRequestHandler.handleRequest(this, requestContent);
+			} catch (Exception exception) {
+				frameType = FrameType.REQUEST_FAILURE;
+				responseContent = String.valueOf(exception.getMessage());
+			}
+		}
+
+		try {
+			synchronized (this) {
+				send(frameType, requestId, responseContent == null ? "" : responseContent, null, null, MessagePriority.NORMAL);
+			}
+		} catch (CommunicationException communicationException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+		} finally {
+			// The response may have written the messages of other futures as well
+			completeSendFutures();
+		}
+	}
+
+	/** Deserializes a received object and forwards it to the SoutilsObservers. Objects which cannot be deserialized
+	 * are reported as errors, while the following frames are still received. */
+	private void deliverObject(ByteBuffer payload) {
+		Object object;
+
+		try {
+			objectInput.reset(payload);
+			object = codecRegistry.decode(objectInput);
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			return;
+		} catch (RuntimeException runtimeException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, runtimeException));
+			return;
+		} finally {
+			objectInput.reset(null);
+		}
+
+		notifyAllObservers(SoutilsMessage.object(clientAddress, object));
+	}
+
+	/** Forwards a received publication along with its topic, as either a message or an object. Publications which
+	 * cannot be decoded are reported as errors, while the following frames are still received. */
+	private void deliverPublication(ByteBuffer payload) {
+		String topic;
+		byte publishedFrameType;
+		Object object = null;
+
+		try {
+			objectInput.reset(payload);
+			topic = BinaryEncoding.readString(objectInput);
+			publishedFrameType = objectInput.readByte();
+
+			if (publishedFrameType == FrameType.OBJECT) {
+				object = codecRegistry.decode(objectInput);
+			} else if (publishedFrameType != FrameType.MESSAGE) {
+				throw new IOException("Invalid publication of type " + publishedFrameType + " received!");
+			}
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			return;
+		} catch (RuntimeException runtimeException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, runtimeException));
+			return;
+		} finally {
+			objectInput.reset(null);
+		}
+
+		if (publishedFrameType == FrameType.OBJECT) {
+			notifyAllObservers(SoutilsMessage.object(clientAddress, topic, object));
+		} else {
+			deliverMessage(payload, topic);
+		}
+	}
+
+	/** Forwards a received message either decoded to the SoutilsObservers or undecoded to the payload observers
+	 * @param topic the topic to which the message has been published, or null */
+	private void deliverMessage(ByteBuffer payload, String topic) {
+		PayloadObserver[] currentPayloadObservers = payloadObservers;
+
+		if (currentPayloadObservers.length > 0) {
+			deliverPayload(currentPayloadObservers, payload, topic);
+		} else if (topic == null) {
+			notifyAllObservers(new SoutilsMessage(MessageType.COMMUNICATION, clientAddress, Utf8Coders.decode(payload)));
+		} else {
+			notifyAllObservers(SoutilsMessage.publication(clientAddress, topic, Utf8Coders.decode(payload)));
+		}
+	}
+
+	/** Hands a received message over to the payload observers without decoding it */
+	private void deliverPayload(PayloadObserver[] currentPayloadObservers, ByteBuffer payload, String topic) {
+		messagePayload.reset(payload, topic);
+
+		try {
+			for (PayloadObserver payloadObserver : currentPayloadObservers) {
+				payloadObserver.handlePayload(messagePayload);
+			}
+		} finally {
+			messagePayload.reset(null, null);
+		}
+	}
+
+	/** Answers a received PING frame by sending back its send time within a PONG frame */
+	private void answerPing(long sendTime) {
+		try {
+			synchronized (this) {
+				send(FrameType.PONG, sendTime, "", null, null, MessagePriority.HIGH);
+			}
+		} catch (CommunicationException communicationException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+		}
+	}
+
+	/** Updates the smoothed round trip time using the send time of a PING frame which has just been answered.
+	 * As for TCP, every new sample contributes one eighth to the smoothed round trip time. */
+	private void updateRoundTripTime(long sendTime) {
+		long sample = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sendTime);
+		roundTripTime = roundTripTime < 0 ? sample : (7 * roundTripTime + sample) / 8;
+	}
+
+	/** Closes the communication if it has been idle for too long, sends a PING frame and schedules the next 
+	 * heartbeat. Called by the thread serving the communication, except for communications in blocking mode whose
+	 * thread waits for new messages. These never send PING frames, so that the timer thread never locks them. */
+	private void beatHeart() {
+		if (done) {
+			return;
+		}
+
+		long idleTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReceiveTime);
+		if (idleTimeout > 0 && idleTime >= idleTimeout) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, 
+					new CommunicationException("No data has been received for " + idleTime + " ms!")));
+			done();
+			return;
+		}
+
+		if (heartbeatInterval > 0 && !blocking) {
+			synchronized (this) {
+				if (writable && messageFraming != MessageFraming.DELIMITED && !closed) {
+					try {
+						send(FrameType.PING, System.nanoTime(), "", null, null, MessagePriority.HIGH);
+					} catch (CommunicationException communicationException) {
+						notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+					}
+				}
+			}
+
+			completeSendFutures();
+		}
+
+		heartbeatScheduled.set(false);
+		scheduleHeartbeat();
+	}
+
+	/** Returns a task of the shared timer which hands the given work over to the thread serving this communication */
+	private Runnable handOff(final Runnable work) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				executeTimerTask(work);
+			}
+		};
+	}
+
+	/** Hands work of the shared timer over to the thread serving this communication, as the timer thread must never
+	 * wait for the lock of a communication which may be held by a thread writing to a full socket. The work is done
+	 * by the reactor, by the polling thread after its next read attempt, or by a worker of the shared timer for 
+	 * asynchronous communications (whose channel group does not accept tasks), blocking communications (whose 
+	 * thread waits for new messages) and communications which are not running. */
+	private void executeTimerTask(Runnable work) {
+		timerTasks.add(work);
+
+		CommunicationReactor currentReactor = reactor;
+		if (currentReactor != null) {
+			currentReactor.execute(runTimerTasks);
+		} else if (pollingThread == null) {
+			SharedTimer.execute(runTimerTasks);
+		}
+	}
+
+	private void runTimerTasks() {
+		Runnable work;
+		while ((work = timerTasks.poll()) != null) {
+			work.run();
+		}
+	}
+
+	/** Schedules the next heartbeat unless heartbeats are disabled or a heartbeat is already scheduled */
+	private void scheduleHeartbeat() {
+		long heartbeatPeriod = heartbeatInterval > 0 ? heartbeatInterval : idleTimeout;
+
+		if (heartbeatPeriod > 0 && !done && heartbeatScheduled.compareAndSet(false, true)) {
+			heartbeatTimeout = SharedTimer.schedule(heartbeat, heartbeatPeriod, this);
+		}
+	}
+
+	/** Completes a pending request with a received response. Late responses to expired requests are ignored. */
+	private void completeRequest(long requestId, byte frameType, ByteBuffer payload) {
+		ResponseFuture responseFuture = pendingRequests.remove(requestId);
+
+		if (responseFuture != null) {
+			responseFuture.cancelTimeout();
+
+			if (frameType == FrameType.RESPONSE) {
+				responseFuture.succeed(Utf8Coders.decode(payload));
+			} else {
+				responseFuture.fail(new CommunicationException(Utf8Coders.decode(payload)));
+			}
+		}
+	}
+
+	/** Queues either the given content or the given shared frame and writes as much as possible
+	 * @param identifier the identifier at the beginning of the payload if the frame type is identified
+	 * @param sendFuture the future to be completed once the frame has been written, or null 
+	 * @param messagePriority the lane of the outbound queue, where high priority frames bypass the overflow policy
+	 * @return false if the frame has been dropped due to the overflow policy */
+	private boolean send(byte frameType, long identifier, String content, SharedFrame sharedFrame, SendFuture sendFuture, 
+			MessagePriority messagePriority) throws CommunicationException {
+		ensureConnected();
+
+		try {
+			if (!mayQueue(messagePriority)) {
+				return false;
+			}
+
+			if (sharedFrame == null) {
+				outboundQueue.add(encodeFrame(frameType, identifier, content), sendFuture, messagePriority);
+			} else {
+				outboundQueue.add(sharedFrame, messagePriority);
+			}
+
+			flush(messagePriority);
+
+			return true;
+		} catch (Exception exception) {
+			throw sendFailure(exception);
+		}
+	}
+
+	/** Applies the outbound rate limit and the overflow policy, which high priority frames bypass
+	 * @return false if the frame must be dropped */
+	private boolean mayQueue(MessagePriority messagePriority) throws IOException, InterruptedException {
+		return messagePriority == MessagePriority.HIGH || (admitOutboundMessage() && (writable || awaitWritability()));
+	}
+
+	/** Writes high priority frames immediately, and all others unless they linger */
+	private void flush(MessagePriority messagePriority) throws IOException {
+		if (messagePriority == MessagePriority.HIGH) {
+			flushPendingWrites();
+		} else {
+			flushOrLinger();
+		}
+	}
+
+	private void ensureConnected() throws CommunicationException {
+		if (closed || (transport != null && !transport.isConnected())) {
+			throw new CommunicationException("Communication not connected!");
+		}
+	}
+
+	/** Converts an exception which occurred while sending into the CommunicationException to be thrown */
+	private CommunicationException sendFailure(Exception exception) {
+		if (exception instanceof CommunicationException) {
+			return (CommunicationException) exception;
+		} else if (exception instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+			return new CommunicationException("Interrupted while waiting for the outbound queue to be drained!");
+		} else {
+			return new CommunicationException("Communication Error");
+		}
+	}
+
+	/** Writes the queued messages immediately, unless lingering is enabled and the linger budget has not yet been
+	 * exhausted. In that case the messages are written by the shared timer once the linger time has elapsed, 
+	 * together with all messages sent in the meantime. */
+	private void flushOrLinger() throws IOException {
+		if (lingerInMilliseconds <= 0 || blocking || outboundQueue.getNumberOfQueuedBytes() >= lingerBudget) {
+			flushPendingWrites();
+		} else if (!lingerFlushScheduled) {
+			lingerFlushScheduled = true;
+			SharedTimer.schedule(handOff(lingerFlush), lingerInMilliseconds, this);
+		}
+	}
+	
+	/** Applies the overflow policy while the outbound queue exceeds its high watermark
+	 * @return true if the message may be queued, false if it must be dropped */
+	private boolean awaitWritability() throws IOException, InterruptedException {
+		switch (overflowPolicy) {
+		case DROP:
+			numberOfDroppedMessages++;
+			return false;
+		case DISCONNECT:
+			done();
+			throw new CommunicationException("The remote device does not receive the sent messages fast enough!");
+		default:
+			if ((reactor != null && reactor.isReactorThread()) || Thread.currentThread() == readingThread) {
+				// The reactor (or channel group thread) cannot wait for itself to drain the outbound queue
+				return true;
+			}
+
+			while (!writable && !closed) {
+				flushPendingWrites();
+
+				if (!writable) {
+					wait(Parameters.COMMUNICATION_MILLISECONDS_BETWEEN_WRITE_ATTEMPTS);
+				}
+			}
+
+			if (closed) {
+				throw new CommunicationException("Communication not connected!");
+			}
+
+			return true;
+		}
+	}
+
+	/** Encodes the given content as a single frame using the message framing of this communication. The frame
+	 * is encoded into a pooled buffer which must be released once the frame has been written. As encoding does 
+	 * not depend on the decoding state of the codec, this method may be called by any thread. */
+	ByteBuffer encodeFrame(byte frameType, String content) throws CharacterCodingException {
+		return encodeFrame(frameType, 0, content);
+	}
+
+	/** Encodes a frame containing a copy of the given bytes, leaving the position of the given buffer unchanged */
+	ByteBuffer encodeFrame(byte frameType, ByteBuffer content) throws CommunicationException {
+		ByteBuffer frame = BufferPool.getDefault().acquire(frameCodec.getHeaderLength() + content.remaining());
+		int position = content.position();
+
+		try {
+			frame.position(frameCodec.getHeaderLength());
+			frame.put(content);
+			frame.flip();
+			frameCodec.writeHeader(frame, frameType, frame.limit() - frameCodec.getHeaderLength());
+		} catch (CommunicationException communicationException) {
+			BufferPool.getDefault().release(frame);
+			throw communicationException;
+		} finally {
+			content.position(position);
+		}
+
+		return frame;
+	}
+
+	/** Encodes a frame containing the type id of the given object followed by the serialized object */
+	ByteBuffer encodeObjectFrame(Object object) throws CommunicationException {
+		if (object == null) {
+			throw new CommunicationException("A null object cannot be sent!");
+		} else if (messageFraming == MessageFraming.DELIMITED) {
+			throw new CommunicationException("Objects can only be sent using the LENGTH_PREFIXED message framing!");
+		}
+
+		BufferDataOutput output = new BufferDataOutput(frameCodec.getHeaderLength());
+
+		try {
+			codecRegistry.encode(object, output);
+			ByteBuffer frame = output.finish();
+
+			try {
+				frameCodec.writeHeader(frame, FrameType.OBJECT, frame.limit() - frameCodec.getHeaderLength());
+			} catch (CommunicationException communicationException) {
+				BufferPool.getDefault().release(frame);
+				throw communicationException;
+			}
+
+			return frame;
+		} catch (IOException ioException) {
+			throw new CommunicationException("The object could not be serialized!", ioException);
+		} finally {
+			output.discard();
+		}
+	}
+
+	/** Encodes a PUBLISH frame containing the given topic followed by either the given message or the type id of 
+	 * the given object and the serialized object */
+	ByteBuffer encodePublishFrame(String topic, String messageContent, Object object) throws CommunicationException {
+		if (messageContent == null && object == null) {
+			throw new CommunicationException("A null object cannot be published!");
+		}
+
+		BufferDataOutput output = new BufferDataOutput(frameCodec.getHeaderLength());
+
+		try {
+			BinaryEncoding.writeString(output, topic);
+
+			if (messageContent != null) {
+				output.writeByte(FrameType.MESSAGE);
+				output.write(messageContent.getBytes(UTF_8));
+			} else {
+				output.writeByte(FrameType.OBJECT);
+				codecRegistry.encode(object, output);
+			}
+
+			ByteBuffer frame = output.finish();
+
+			try {
+				frameCodec.writeHeader(frame, FrameType.PUBLISH, frame.limit() - frameCodec.getHeaderLength());
+			} catch (CommunicationException communicationException) {
+				BufferPool.getDefault().release(frame);
+				throw communicationException;
+			}
+
+			return frame;
+		} catch (IOException ioException) {
+			throw new CommunicationException("The publication could not be serialized!", ioException);
+		} finally {
+			output.discard();
+		}
+	}
+
+	/** Encodes a frame of the reliability layer, containing one (ACKNOWLEDGEMENT) or two variable length integers
+	 * followed by the given content (if any) */
+	private ByteBuffer encodeReliableFrame(byte frameType, long firstValue, long secondValue, String content) throws CharacterCodingException {
+		int contentLength = content == null ? 0 : Utf8Coders.maximumEncodedLength(content);
+		ByteBuffer frame = BufferPool.getDefault().acquire(frameCodec.getHeaderLength() + 2 * MAXIMUM_VARIABLE_LENGTH_INTEGER_LENGTH + contentLength);
+
+		try {
+			frame.position(frameCodec.getHeaderLength());
+			BinaryEncoding.writeUnsignedVarLong(frame, firstValue);
+			if (frameType != FrameType.ACKNOWLEDGEMENT && frameType != FrameType.SESSION_UNKNOWN) {
+				BinaryEncoding.writeUnsignedVarLong(frame, secondValue);
+			}
+
+			if (content != null) {
+				Utf8Coders.encode(content, frame);
+			}
+
+			frame.flip();
+			frameCodec.writeHeader(frame, frameType, frame.limit() - frameCodec.getHeaderLength());
+		} catch (CharacterCodingException characterCodingException) {
+			BufferPool.getDefault().release(frame);
+			throw characterCodingException;
+		} catch (CommunicationException communicationException) {
+			BufferPool.getDefault().release(frame);
+			throw communicationException;
+		}
+
+		return frame;
+	}
+
+	/** Encodes a RESUME frame containing the given session id and sequence number followed by the session token */
+	private ByteBuffer encodeResumeFrame(long sessionId, long lastReceivedSequenceNumber, byte[] token) throws CommunicationException {
+		ByteBuffer frame = BufferPool.getDefault().acquire(frameCodec.getHeaderLength() + 2 * MAXIMUM_VARIABLE_LENGTH_INTEGER_LENGTH 
+				+ FrameType.SESSION_TOKEN_LENGTH);
+
+		try {
+			frame.position(frameCodec.getHeaderLength());
+			BinaryEncoding.writeUnsignedVarLong(frame, sessionId);
+			BinaryEncoding.writeUnsignedVarLong(frame, lastReceivedSequenceNumber);
+			frame.put(token);
+			frame.flip();
+			frameCodec.writeHeader(frame, FrameType.RESUME, frame.limit() - frameCodec.getHeaderLength());
+		} catch (CommunicationException communicationException) {
+			BufferPool.getDefault().release(frame);
+			throw communicationException;
+		}
+
+		return frame;
+	}
+
+	/** Encodes a stream frame containing the given stream id followed by a copy of the given bytes (if any) */
+	private ByteBuffer encodeStreamFrame(byte frameType, int streamId, ByteBuffer content) throws CommunicationException {
+		int contentLength = content == null ? 0 : content.remaining();
+		ByteBuffer frame = BufferPool.getDefault().acquire(frameCodec.getHeaderLength() + FrameType.STREAM_ID_LENGTH + contentLength);
+
+		try {
+			frame.position(frameCodec.getHeaderLength());
+			frame.putInt(streamId);
+			if (content != null) {
+				frame.put(content);
+			}
+
+			frame.flip();
+			frameCodec.writeHeader(frame, frameType, frame.limit() - frameCodec.getHeaderLength());
+		} catch (CommunicationException communicationException) {
+			BufferPool.getDefault().release(frame);
+			throw communicationException;
+		}
+
+		return frame;
+	}
+
+	/** Encodes a frame whose payload starts with the given identifier if the frame type is identified */
+	private ByteBuffer encodeFrame(byte frameType, long identifier, String content) throws CharacterCodingException {
+		int identifierLength = FrameType.isIdentified(frameType) ? FrameType.IDENTIFIER_LENGTH : 0;
+		ByteBuffer frame = BufferPool.getDefault().acquire(frameCodec.getHeaderLength() + identifierLength + Utf8Coders.maximumEncodedLength(content));
+
+		try {
+			frame.position(frameCodec.getHeaderLength());
+			if (identifierLength > 0) {
+				frame.putLong(identifier);
+			}
+
+			Utf8Coders.encode(content, frame);
+			frame.flip();
+			frameCodec.writeHeader(frame, frameType, frame.limit() - frameCodec.getHeaderLength());
+		} catch (CharacterCodingException characterCodingException) {
+			BufferPool.getDefault().release(frame);
+			throw characterCodingException;
+		} catch (CommunicationException communicationException) {
+			BufferPool.getDefault().release(frame);
+			throw communicationException;
+		}
+
+		return frame;
+	}
+
+	/** Sets the registry containing the serializers of the sent and received objects
+	 * @param codecRegistry the registry to be used (By default {@link CodecRegistry#getDefault()}) */
+	public void setCodecRegistry(CodecRegistry codecRegistry) {
+		this.codecRegistry = codecRegistry;
+	}
+
+	/** Sets the message framing used to separate messages from each other. The remote device must use the same
+	 * message framing. This method must be called before the communication is started or handed over to a reactor.
+	 * @param messageFraming the message framing to be used (By default {@link MessageFraming#DELIMITED}) */
+	public synchronized void setMessageFraming(MessageFraming messageFraming) {
+		this.messageFraming = messageFraming;
+		this.frameCodec = messageFraming.createFrameCodec();
+	}
+
+	synchronized MessageFraming getMessageFraming() {
+		return messageFraming;
+	}
+	
+	/** Returns the socket address (IP address and port) of the remote device. Unlike the IP address, the socket
+	 * address distinguishes several communications established by the same device.
+	 * @return the remote socket address */
+	public InetSocketAddress getRemoteSocketAddress() {
+		return remoteSocketAddress;
+	}
+
+	/** Sets the watermarks of the outbound queue. As soon as more than highWatermark bytes are waiting to be 
+	 * written, the overflow policy is applied to all messages sent until the queue has been drained to 
+	 * lowWatermark bytes or less.
+	 * @param lowWatermark the number of queued bytes at which sending is possible again
+	 * @param highWatermark the number of queued bytes above which the overflow policy is applied
+	 * @see #setOverflowPolicy(OverflowPolicy) */
+	public synchronized void setOutboundQueueWatermarks(int lowWatermark, int highWatermark) {
+		if (lowWatermark > highWatermark) {
+			throw new IllegalArgumentException("The low watermark cannot be larger than the high watermark!");
+		}
+
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	/** Sets the action to be taken if a message is sent while the outbound queue exceeds its high watermark.
+	 * @param overflowPolicy the overflow policy (By default {@link OverflowPolicy#BLOCK}) */
+	public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/** Enables or disables lingering. While lingering, sent messages are not written immediately, but collected
+	 * for up to the given time and then written together. Batching many small messages this way saves system 
+	 * calls and TCP segments at the cost of latency. Lingering has no effect on communications running in 
+	 * blocking mode, which always write immediately.
+	 * @param lingerInMilliseconds the maximum time a message is held back, or 0 to disable lingering (the default)
+	 * @param lingerBudgetInBytes the number of collected bytes at which the messages are written without further delay */
+	public synchronized void setLinger(int lingerInMilliseconds, int lingerBudgetInBytes) {
+		this.lingerInMilliseconds = lingerInMilliseconds;
+		this.lingerBudget = lingerBudgetInBytes;
+	}
+
+	/** Registers an observer which receives the undecoded bytes of all messages received from now on. Once a
+	 * payload observer has been registered, received messages are no longer forwarded to the SoutilsObservers.
+	 * @param payloadObserver the observer to be registered */
+	public synchronized void registerPayloadObserver(PayloadObserver payloadObserver) {
+		PayloadObserver[] newPayloadObservers = new PayloadObserver[payloadObservers.length + 1];
+		System.arraycopy(payloadObservers, 0, newPayloadObservers, 0, payloadObservers.length);
+		newPayloadObservers[payloadObservers.length] = payloadObserver;
+
+		payloadObservers = newPayloadObservers;
+	}
+
+	/** Removes a payload observer. Once all payload observers have been removed, received messages are 
+	 * forwarded to the SoutilsObservers again.
+	 * @param payloadObserver the observer to be removed */
+	public synchronized void removePayloadObserver(PayloadObserver payloadObserver) {
+		for (int i=0; i<payloadObservers.length; i++) {
+			if (payloadObservers[i] == payloadObserver) {
+				PayloadObserver[] newPayloadObservers = new PayloadObserver[payloadObservers.length - 1];
+				System.arraycopy(payloadObservers, 0, newPayloadObservers, 0, i);
+				System.arraycopy(payloadObservers, i + 1, newPayloadObservers, i, payloadObservers.length - i - 1);
+
+				payloadObservers = newPayloadObservers;
+				return;
+			}
+		}
+	}
+
+	/** Sets the handler answering the requests received by this communication. Without a request handler, all
+	 * received requests fail on the requesting device.
+	 * @param requestHandler the request handler, or null to reject all requests
+	 * @see #request(String, long)
+	 * @see #setRequestExecutor(Executor) */
+	public void setRequestHandler(RequestHandler requestHandler) {
+		this.requestHandler = requestHandler;
+	}
+
+	/** Sets the executor which calls the request handler if this communication is served by a reactor or a channel
+	 * group. By default, a small pool of threads shared by all communications is used (See 
+	 * {@link Parameters#COMMUNICATION_NUMBER_OF_REQUEST_THREADS}). Communications served by a thread of their own
+	 * answer requests on this thread.
+	 * @param requestExecutor the executor, or null to use the shared request threads */
+	public void setRequestExecutor(Executor requestExecutor) {
+		this.requestExecutor = requestExecutor;
+	}
+
+	/** Sets the handler informed about the streams opened by the remote device and about the bytes received by 
+	 * all streams of this communication. Without a stream handler, the bytes of streams opened by the remote 
+	 * device are discarded, while the bytes of streams opened by this side can still be read.
+	 * @param streamHandler the stream handler, or null to discard all streams opened by the remote device
+	 * @see #openStream(MessagePriority) */
+	public void setStreamHandler(StreamHandler streamHandler) {
+		this.streamHandler = streamHandler;
+	}
+
+	/** Enables heartbeats and idle detection. Every heartbeat interval, a PING frame is sent which the remote 
+	 * communication answers with a PONG frame, so that the round trip time can be measured and idle but healthy
+	 * connections keep receiving data. If no data at all has been received for the idle timeout, the 
+	 * communication is considered dead and closed. The idle timeout is checked once per heartbeat interval.
+	 * PING frames require {@link MessageFraming#LENGTH_PREFIXED}, and are not sent by communications running
+	 * in blocking mode (which answer them nevertheless). All heartbeats are driven by a single shared timer.
+	 * @param heartbeatIntervalInMilliseconds the time between two PING frames, or 0 to send no PING frames (the default)
+	 * @param idleTimeoutInMilliseconds the time without received data after which the communication is closed, 
+	 * or 0 to never close idle communications (the default). Should be a multiple of the heartbeat interval.
+	 * @see #getRoundTripTimeInMicroseconds() */
+	public void setHeartbeat(long heartbeatIntervalInMilliseconds, long idleTimeoutInMilliseconds) {
+		this.heartbeatInterval = heartbeatIntervalInMilliseconds;
+		this.idleTimeout = idleTimeoutInMilliseconds;
+		scheduleHeartbeat();
+	}
+
+	/** Returns the smoothed round trip time measured using PING frames. The round trip time includes the time
+	 * needed by the remote device to read the PING frame and to answer it. 
+	 * @return the round trip time in microseconds, or -1 if it has not yet been measured
+	 * @see #setHeartbeat(long, long) */
+	public long getRoundTripTimeInMicroseconds() {
+		return roundTripTime;
+	}
+
+	/** Returns the number of sent requests which are still waiting for their responses */
+	public int getNumberOfPendingRequests() {
+		return pendingRequests.size();
+	}
+
+	/** Returns the number of bytes which have been sent but not yet written to the socket */
+	public synchronized long getNumberOfQueuedBytes() {
+		return outboundQueue.getNumberOfQueuedBytes();
+	}
+
+	/** Returns the number of sent messages which have been discarded due to the {@link OverflowPolicy#DROP} policy
+	 * or an outbound rate limit using the {@link RateLimitPolicy#DROP} policy */
+	public synchronized long getNumberOfDroppedMessages() {
+		return numberOfDroppedMessages;
+	}
+
+	/** Returns the number of received messages and requests which have been discarded due to an inbound rate limit 
+	 * using the {@link RateLimitPolicy#DROP} policy */
+	public long getNumberOfDiscardedMessages() {
+		return numberOfDiscardedMessages;
+	}
+
+	/** Limits the rate at which received frames are handled. Every message, request, object, stream frame, 
+	 * acknowledgement or heartbeat requires a permit from each of the given rate limiters, so that a rate limiter 
+	 * shared by several communications limits their total rate. With {@link RateLimitPolicy#DELAY}, the communication 
+	 * stops reading from its socket until the rate limits are met again. {@link RateLimitPolicy#DROP} only discards 
+	 * messages, requests, objects, publications and heartbeats, whereas all other frames are delayed. Discarded requests are not 
+	 * answered, so that their futures time out. 
+	 * @param rateLimitPolicy the action taken if a message exceeds a rate limit
+	 * @param rateLimiters the rate limiters to be applied, or none to remove all inbound rate limits */
+	public synchronized void setInboundRateLimit(RateLimitPolicy rateLimitPolicy, RateLimiter... rateLimiters) {
+		this.inboundRateLimitPolicy = rateLimitPolicy;
+		this.inboundRateLimiters = rateLimiters.clone();
+	}
+
+	/** Limits the rate at which messages, requests and responses are sent. High priority messages (Including 
+	 * heartbeats) are not limited. With {@link RateLimitPolicy#DELAY}, the sending thread waits until the rate 
+	 * limits are met again, unless it is the thread of a reactor or channel group.
+	 * @param rateLimitPolicy the action taken if a message exceeds a rate limit
+	 * @param rateLimiters the rate limiters to be applied, or none to remove all outbound rate limits
+	 * @see #setInboundRateLimit(RateLimitPolicy, RateLimiter...) */
+	public synchronized void setOutboundRateLimit(RateLimitPolicy rateLimitPolicy, RateLimiter... rateLimiters) {
+		this.outboundRateLimitPolicy = rateLimitPolicy;
+		this.outboundRateLimiters = rateLimiters.clone();
+	}
+	
+	/** Get the IP address of the local device
+	 * @return the IP address of the local device */
+	public synchronized String getClientAddress() {
+		return clientAddress;
+	}
+
+	/** Writes as many pending messages as the socket send buffer accepts. If the communication is served by a 
+	 * reactor, the reactor is asked to report writability for as long as messages are left over. The futures of
+	 * all messages which have been written completely are completed by {@link #completeSendFutures()}. */
+	synchronized void flushPendingWrites() throws IOException {
+		if (asynchronousTransport == null) {
+			outboundQueue.writeTo(transport);
+		} else if (!writeInProgress && !closed && !outboundQueue.isEmpty()) {
+			// The queued frames are released by the write handler once they have been written
+			writeInProgress = true;
+			asynchronousTransport.write(outboundQueue.gatherFrames(), outboundQueue.getNumberOfGatheredFrames());
+		}
+
+		if (writable && outboundQueue.getNumberOfQueuedBytes() > highWatermark) {
+			writable = false;
+		} else if (!writable && outboundQueue.getNumberOfQueuedBytes() <= lowWatermark) {
+			writable = true;
+			notifyAll();
+		}
+
+		if (reactor != null && writeInterest == outboundQueue.isEmpty()) {
+			writeInterest = !outboundQueue.isEmpty();
+			updateInterestOps();
+		}
+	}
+
+	/** Writes the frames which have been queued before this communication has been served, such as the spooled
+	 * messages replayed while it has been accepted. Called by the thread serving the communication. */
+	synchronized void writeQueuedFrames() throws IOException {
+		if (!closed && !outboundQueue.isEmpty()) {
+			flushPendingWrites();
+		}
+	}
+
+	/** Queues a message replayed from the message spool without applying the outbound rate limit or the overflow
+	 * policy, so that the thread accepting the communication never waits
+	 * @see #writeQueuedFrames() */
+	synchronized void queueSpooledMessage(String messageContent) throws CommunicationException {
+		ensureConnected();
+
+		try {
+			outboundQueue.add(encodeFrame(FrameType.MESSAGE, messageContent), null);
+		} catch (Exception exception) {
+			throw sendFailure(exception);
+		}
+	}
+
+	/** Completes the futures of all messages which have been written or discarded. The listeners of a future may
+	 * send further messages, possibly using other communications, and are therefore never informed while holding
+	 * the lock of this communication. If the calling thread holds the lock, the futures are left to the method 
+	 * which has acquired it, which calls this method again once it has released the lock. */
+	void completeSendFutures() {
+		if (Thread.holdsLock(this)) {
+			return;
+		}
+
+		List<SendFuture> writtenSendFutures;
+		List<SendFuture> failedSendFutures;
+		List<CommunicationException> causes;
+
+		synchronized (this) {
+			if (!outboundQueue.hasSendFutures()) {
+				return;
+			}
+
+			writtenSendFutures = new ArrayList<SendFuture>();
+			failedSendFutures = new ArrayList<SendFuture>();
+			causes = new ArrayList<CommunicationException>();
+			outboundQueue.takeSendFutures(writtenSendFutures, failedSendFutures, causes);
+		}
+
+		for (SendFuture sendFuture : writtenSendFutures) {
+			sendFuture.succeed();
+		}
+
+		for (int i=0; i<failedSendFutures.size(); i++) {
+			failedSendFutures.get(i).fail(causes.get(i));
+		}
+	}
+
+	/** Asks the reactor to report readability unless reading is paused, and writability while messages are left over */
+	private synchronized void updateInterestOps() {
+		final int interestOps = (readInterestSuspended ? 0 : SelectionKey.OP_READ) | (writeInterest ? SelectionKey.OP_WRITE : 0);
+
+		reactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				transport.setInterestOps(interestOps);
+			}
+		});
+	}
+
+	private void clearOutboundQueue() {
+		outboundQueue.clear(new CommunicationException("The communication has been closed before the message could be written!"));
+	}
+
+	/** Called by the reactor once the transport has been registered with it */
+	synchronized void attachToReactor(CommunicationReactor reactor) {
+		this.reactor = reactor;
+
+		try {
+			writeQueuedFrames();
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			done = true;
+		}
+
+		if (!timerTasks.isEmpty()) {
+			// Work handed over by the shared timer before the reactor has been known
+			reactor.execute(runTimerTasks);
+		}
+
+		if (done) {
+			close();
+		}
+	}
+
+	void setCommunicationManager(CommunicationManager communicationManager) {
+		this.communicationManager = communicationManager;
+	}
+
+	void setCommunicationConnector(CommunicationConnector communicationConnector) {
+		this.communicationConnector = communicationConnector;
+	}
+
+	Transport getTransport() {
+		return transport;
+	}
+
+	/** The request threads shared by all communications, which are only created once the first request has been
+	 * received by a reactor or channel group */
+	private static final class RequestWorkers {
+		private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(Parameters.COMMUNICATION_NUMBER_OF_REQUEST_THREADS,
+				Parameters.COMMUNICATION_NUMBER_OF_REQUEST_THREADS, Parameters.COMMUNICATION_REQUEST_THREAD_KEEP_ALIVE_IN_MILLISECONDS, 
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread requestThread = new Thread(runnable, "Soutils Request Handler");
+						requestThread.setDaemon(true);
+						return requestThread;
+					}
+				});
+
+		static {
+			EXECUTOR.allowCoreThreadTimeOut(true);
+		}
 	}
 }
@@ -0,0 +1,405 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.jeromewagener.soutils.Parameters;
+import com.jeromewagener.soutils.messaging.MessageType;
+import com.jeromewagener.soutils.messaging.SoutilsMessage;
+import com.jeromewagener.soutils.messaging.SoutilsObservable;
+import com.jeromewagener.soutils.messaging.SoutilsObserver;
+
+/** A SoutilsObservable thread which establishes and maintains client communications with any number of 
+ * CommunicationManagers. Connections are established without blocking, so that connecting to many devices at 
+ * once (e.g. to all devices found using beaconing) takes no longer than connecting to the slowest of them. 
+ * Attempts which do not succeed within the connect timeout are aborted, and both failed attempts and dropped 
+ * connections are retried after an exponentially growing, randomized delay. All connection attempts and all 
+ * established communications are served by a single CommunicationReactor running within this thread.
+ * @see Communication
+ * @see CommunicationManager
+ * @see CommunicationReactor */
+public class CommunicationConnector extends SoutilsObservable {
+	private final CommunicationReactor reactor;
+	/** All peers to which a connection is established or maintained, indexed by their socket address */
+	private final ConcurrentMap<InetSocketAddress, Peer> peers = new ConcurrentHashMap<InetSocketAddress, Peer>();
+	private volatile boolean done = false;
+	private final Random random = new Random();
+	private volatile MessageFraming messageFraming = MessageFraming.DELIMITED;
+	private volatile long connectTimeout = Parameters.COMMUNICATION_CONNECT_TIMEOUT_IN_MILLISECONDS;
+	private volatile long initialReconnectDelay = Parameters.COMMUNICATION_INITIAL_RECONNECT_DELAY_IN_MILLISECONDS;
+	private volatile long maximumReconnectDelay = Parameters.COMMUNICATION_MAXIMUM_RECONNECT_DELAY_IN_MILLISECONDS;
+	private volatile long heartbeatInterval = Parameters.COMMUNICATION_HEARTBEAT_INTERVAL_IN_MILLISECONDS;
+	private volatile long idleTimeout = Parameters.COMMUNICATION_IDLE_TIMEOUT_IN_MILLISECONDS;
+	private volatile boolean reliableDelivery = false;
+
+	/** Sets up a new connector thread. As for any Java thread this thread needs to be started using the 
+	 * {@link #start()} method. Connections can be requested before or after the thread has been started.
+	 * @param soutilsObserver the observer to which all received messages and errors should be forwarded to
+	 * @see #connect(InetSocketAddress) */
+	public CommunicationConnector(SoutilsObserver soutilsObserver) {
+		this.registerSoutilsObserver(soutilsObserver);
+
+		reactor = new CommunicationReactor(new SoutilsObserver() {
+			@Override
+			public void handleSoutilsMessage(SoutilsMessage soutilsMessage) {
+				notifyAllObservers(soutilsMessage);
+			}
+		});
+	}
+
+	/** Call this method to stop the connector. All communications established by this connector will be closed,
+	 * and no further connection attempts are made. Once the thread has been stopped, it cannot be started again. 
+	 * You must instead instantiate a new CommunicationConnector. */
+	public void done() {
+		done = true;
+		reactor.done();
+	}
+
+	/** Starts establishing the requested connections and receiving messages until the connector is stopped.
+	 * @see #done() */
+	@Override
+	public void run() {
+		reactor.run();
+	}
+
+	/** Starts establishing a connection with the given CommunicationManager. Once established, the connection is
+	 * maintained until {@link #disconnect(InetSocketAddress)} is called, i.e. dropped connections are re-established.
+	 * Requesting a connection which is already maintained has no effect.
+	 * @param ipAddress the IP address of the host (the device that runs the CommunicationManager)
+	 * @param port the TCP port of the CommunicationManager */
+	public void connect(String ipAddress, int port) {
+		connect(new InetSocketAddress(ipAddress, port));
+	}
+
+	/** Starts establishing a connection with the CommunicationManager listening on the given socket address.
+	 * @param socketAddress the IP address and port of the CommunicationManager
+	 * @see #connect(String, int) */
+	public void connect(InetSocketAddress socketAddress) {
+		Peer peer = new Peer(socketAddress);
+
+		if (peers.putIfAbsent(socketAddress, peer) == null) {
+			reactor.execute(peer.connectTask);
+		}
+	}
+
+	/** Starts establishing connections with all given CommunicationManagers at once
+	 * @param socketAddresses the IP addresses and ports of the CommunicationManagers
+	 * @see #connect(InetSocketAddress) */
+	public void connectAll(Collection<InetSocketAddress> socketAddresses) {
+		for (InetSocketAddress socketAddress : socketAddresses) {
+			connect(socketAddress);
+		}
+	}
+
+	/** Stops maintaining the connection with the given CommunicationManager and closes the communication (if any)
+	 * @param socketAddress the IP address and port of the CommunicationManager */
+	public void disconnect(InetSocketAddress socketAddress) {
+		final Peer peer = peers.remove(socketAddress);
+
+		if (peer != null) {
+			reactor.execute(new Runnable() {
+				@Override
+				public void run() {
+					peer.abort();
+				}
+			});
+		}
+	}
+
+	/** Returns the communication with the given CommunicationManager
+	 * @param socketAddress the IP address and port of the CommunicationManager
+	 * @return the communication, or null if the connection is not established at the moment */
+	public Communication getCommunication(InetSocketAddress socketAddress) {
+		Peer peer = peers.get(socketAddress);
+
+		return peer == null ? null : peer.communication;
+	}
+
+	/** Returns the reliable session of the connection with the given CommunicationManager. Messages sent using the
+	 * session are delivered at least once, even if they are sent while the connection is being re-established.
+	 * @param socketAddress the socket address of the CommunicationManager
+	 * @return the session, or null if no connection with the CommunicationManager is maintained
+	 * @see #setReliableDelivery(boolean) */
+	public ReliableSession getReliableSession(InetSocketAddress socketAddress) {
+		Peer peer = peers.get(socketAddress);
+
+		return peer == null ? null : peer.reliableSession;
+	}
+
+	/** Returns the number of currently established connections */
+	public int getNumberOfConnectedPeers() {
+		int numberOfConnectedPeers = 0;
+
+		for (Peer peer : peers.values()) {
+			if (peer.communication != null) {
+				numberOfConnectedPeers++;
+			}
+		}
+
+		return numberOfConnectedPeers;
+	}
+
+	/** Sends a message to all CommunicationManagers with which a connection is currently established
+	 * @param messageContent the message to be sent */
+	public void sendMessageToAllConnectedPeers(String messageContent) {
+		for (Peer peer : peers.values()) {
+			Communication communication = peer.communication;
+
+			if (communication != null) {
+				try {
+					communication.sendMessage(messageContent);
+				} catch (CommunicationException communicationException) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+				}
+			}
+		}
+	}
+
+	/** Sets the message framing used by all communications established from now on
+	 * @param messageFraming the message framing to be used (By default {@link MessageFraming#DELIMITED}) */
+	public void setMessageFraming(MessageFraming messageFraming) {
+		this.messageFraming = messageFraming;
+	}
+
+	/** Sets the time after which a connection attempt is aborted and retried later
+	 * @param connectTimeoutInMilliseconds the connect timeout */
+	public void setConnectTimeout(long connectTimeoutInMilliseconds) {
+		this.connectTimeout = connectTimeoutInMilliseconds;
+	}
+
+	/** Sets the delays between connection attempts. After each failed attempt, the delay is doubled until the 
+	 * maximum delay is reached. A random part of up to half of the delay is subtracted, so that many devices 
+	 * which have lost their connections at the same time do not reconnect at the same time.
+	 * @param initialReconnectDelayInMilliseconds the delay after the first failed attempt or a dropped connection,
+	 * or 0 to never reconnect
+	 * @param maximumReconnectDelayInMilliseconds the maximum delay between two attempts */
+	public void setReconnectDelays(long initialReconnectDelayInMilliseconds, long maximumReconnectDelayInMilliseconds) {
+		this.initialReconnectDelay = initialReconnectDelayInMilliseconds;
+		this.maximumReconnectDelay = maximumReconnectDelayInMilliseconds;
+	}
+
+	/** Sets the heartbeat interval and idle timeout of all communications established from now on. Dead 
+	 * connections are thereby detected and re-established.
+	 * @see Communication#setHeartbeat(long, long) */
+	public void setHeartbeat(long heartbeatIntervalInMilliseconds, long idleTimeoutInMilliseconds) {
+		this.heartbeatInterval = heartbeatIntervalInMilliseconds;
+		this.idleTimeout = idleTimeoutInMilliseconds;
+	}
+
+	/** Enables reliable sessions for all communications established from now on. Every maintained connection
+	 * keeps a single session, which is resumed whenever the connection has been re-established. The 
+	 * CommunicationManagers must accept reliable sessions as well.
+	 * @param reliableDelivery true to resume the reliable session of every connection (By default false)
+	 * @see #getReliableSession(InetSocketAddress)
+	 * @see CommunicationManager#setReliableDelivery(boolean) */
+	public void setReliableDelivery(boolean reliableDelivery) {
+		this.reliableDelivery = reliableDelivery;
+	}
+
+	/** Called by a communication established by this connector once it has been closed */
+	void communicationClosed(Communication communication) {
+		final Peer peer = peers.get(communication.getRemoteSocketAddress());
+
+		if (peer != null && peer.communication == communication) {
+			peer.communication = null;
+
+			reactor.execute(new Runnable() {
+				@Override
+				public void run() {
+					peer.scheduleReconnect();
+				}
+			});
+		}
+	}
+
+	/** A CommunicationManager with which a connection is maintained. Except for the communication, the state of 
+	 * a peer is only accessed by the reactor thread. */
+	final class Peer {
+		private final InetSocketAddress socketAddress;
+		private volatile Communication communication = null;
+		/** The reliable session which outlives the communications established with the peer */
+		private final ReliableSession reliableSession = new ReliableSession();
+		/** The channel of the pending connection attempt, or null if there is none */
+		private SocketChannel socketChannel = null;
+		private SharedTimer.Timeout connectTimeout = null;
+		private int numberOfFailedAttempts = 0;
+		private final Runnable connectTask = new Runnable() {
+			@Override
+			public void run() {
+				attemptConnect();
+			}
+		};
+		/** Executed by the timer once the reconnect delay has elapsed */
+		private final Runnable reconnectTask = new Runnable() {
+			@Override
+			public void run() {
+				reactor.execute(connectTask);
+			}
+		};
+		/** Executed by the timer once the connect timeout has expired */
+		private final Runnable connectTimeoutTask = new Runnable() {
+			@Override
+			public void run() {
+				reactor.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (socketChannel != null) {
+							fail(new IOException("Could not connect to " + socketAddress + " within " + CommunicationConnector.this.connectTimeout + " ms!"));
+						}
+					}
+				});
+			}
+		};
+
+		private Peer(InetSocketAddress socketAddress) {
+			this.socketAddress = socketAddress;
+		}
+
+		private void attemptConnect() {
+			if (done || peers.get(socketAddress) != this || socketChannel != null || communication != null) {
+				return;
+			}
+
+			try {
+				socketChannel = SocketChannel.open();
+				socketChannel.configureBlocking(false);
+
+				if (socketChannel.connect(socketAddress)) {
+					establish();
+				} else {
+					reactor.registerChannel(socketChannel, SelectionKey.OP_CONNECT, this);
+					connectTimeout = SharedTimer.schedule(connectTimeoutTask, CommunicationConnector.this.connectTimeout, CommunicationConnector.this);
+				}
+			} catch (IOException ioException) {
+				fail(ioException);
+			} catch (UnresolvedAddressException unresolvedAddressException) {
+				// The host name could not be resolved when the peer was added, so the attempt is retried like any other
+				fail(new IOException("Could not resolve " + socketAddress.getHostString() + "!", unresolvedAddressException));
+			}
+		}
+
+		/** Called by the reactor once the connection attempt has either succeeded or failed */
+		void finishConnect(SelectionKey selectionKey) {
+			try {
+				if (socketChannel.finishConnect()) {
+					// The communication registers the channel for reading as soon as it is handed over to the reactor
+					selectionKey.interestOps(0);
+					establish();
+				}
+			} catch (IOException ioException) {
+				fail(ioException);
+			}
+		}
+
+		private void establish() {
+			connectTimeout = cancel(connectTimeout);
+			numberOfFailedAttempts = 0;
+
+			Communication newCommunication = new Communication(socketChannel);
+			socketChannel = null;
+
+			newCommunication.setMessageFraming(messageFraming);
+			newCommunication.setHeartbeat(heartbeatInterval, idleTimeout);
+			newCommunication.setCommunicationConnector(CommunicationConnector.this);
+			for (SoutilsObserver soutilsObserver : getSoutilsObservers()) {
+				newCommunication.registerSoutilsObserver(soutilsObserver);
+			}
+
+			if (reliableDelivery) {
+				try {
+					newCommunication.setReliableSession(reliableSession);
+				} catch (CommunicationException communicationException) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+				}
+			}
+
+			communication = newCommunication;
+			reactor.register(newCommunication);
+		}
+
+		/** Closes the channel of a failed connection attempt and schedules the next attempt */
+		void fail(Exception exception) {
+			connectTimeout = cancel(connectTimeout);
+			closeChannel();
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, exception));
+
+			numberOfFailedAttempts++;
+			scheduleReconnect();
+		}
+
+		private void scheduleReconnect() {
+			if (done || peers.get(socketAddress) != this) {
+				return;
+			}
+
+			if (initialReconnectDelay <= 0) {
+				peers.remove(socketAddress);
+				return;
+			}
+
+			long delay = initialReconnectDelay << Math.min(Math.max(numberOfFailedAttempts - 1, 0), 30);
+			delay = Math.min(delay > 0 ? delay : Long.MAX_VALUE, maximumReconnectDelay);
+			delay -= (long) (random.nextDouble() * delay / 2);
+
+			SharedTimer.schedule(reconnectTask, delay, CommunicationConnector.this);
+		}
+
+		/** Aborts the pending connection attempt and closes the established communication (if any) */
+		void abort() {
+			connectTimeout = cancel(connectTimeout);
+			closeChannel();
+
+			if (communication != null) {
+				communication.done();
+			}
+		}
+
+		private void closeChannel() {
+			if (socketChannel != null) {
+				try {
+					socketChannel.close();
+				} catch (IOException ioException) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+				}
+
+				socketChannel = null;
+			}
+		}
+
+		private SharedTimer.Timeout cancel(SharedTimer.Timeout timeout) {
+			if (timeout != null) {
+				timeout.cancel();
+			}
+
+			return null;
+		}
+	}
+}
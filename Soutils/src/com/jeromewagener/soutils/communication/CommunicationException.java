@@ -32,4 +32,8 @@ public class CommunicationException extends RuntimeException {
 	public CommunicationException(String exception) {
 		super(exception);
 	}
+
+	public CommunicationException(String exception, Throwable cause) {
+		super(exception, cause);
+	}
 }
\ No newline at end of file
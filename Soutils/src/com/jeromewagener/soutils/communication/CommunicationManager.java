@@ -22,10 +22,25 @@ CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
 package com.jeromewagener.soutils.communication;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.charset.CharacterCodingException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.jeromewagener.soutils.Parameters;
 import com.jeromewagener.soutils.messaging.MessageType;
@@ -39,18 +54,116 @@ import com.jeromewagener.soutils.messaging.SoutilsObserver;
  * SoutilsObservers are informed about the incoming message. Messages can be either sent using a particular client 
  * communication identified by the client IP address, or to multiple devices at once.
  * @see Communication
+ * @see CommunicationMode
  * @see SoutilsObservable */
 public class CommunicationManager extends SoutilsObservable {
-	private ArrayList<Communication> communications = new ArrayList<Communication>();
+	private final CommunicationRegistry communications = new CommunicationRegistry();
+	/** The topics subscribed by the managed communications */
+	private final TopicIndex topicIndex = new TopicIndex();
 	private ServerSocketChannel server = null;
 	private SocketChannel socketChannel = null;
-	private boolean done = false;
+	private volatile boolean done = false;
+	private final CommunicationMode communicationMode;
+	/** The reactors serving all communications if the manager runs in event driven mode. The first reactor
+	 * runs within the manager thread and additionally accepts all incoming connections. */
+	private CommunicationReactor[] reactors = new CommunicationReactor[0];
+	/** The message framing used by all communications accepted from now on */
+	private MessageFraming messageFraming = MessageFraming.DELIMITED;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+	private int lowWatermark = Parameters.COMMUNICATION_OUTBOUND_QUEUE_LOW_WATERMARK_IN_BYTES;
+	private int highWatermark = Parameters.COMMUNICATION_OUTBOUND_QUEUE_HIGH_WATERMARK_IN_BYTES;
+	private int lingerInMilliseconds = Parameters.COMMUNICATION_LINGER_IN_MILLISECONDS;
+	private int lingerBudget = Parameters.COMMUNICATION_LINGER_BUDGET_IN_BYTES;
+	private RequestHandler requestHandler = null;
+	private Executor requestExecutor = null;
+	private StreamHandler streamHandler = null;
+	private volatile boolean reliableDelivery = false;
+	/** The reliable sessions of all clients by session id, including those waiting for their clients to reconnect */
+	private final Map<Long, ReliableSession> reliableSessions = new HashMap<Long, ReliableSession>();
+	/** True while the shared timer is scheduled to forget expired sessions, guarded by the reliable sessions */
+	private boolean reliableSessionExpiryScheduled = false;
+	private final Runnable reliableSessionExpiry = new Runnable() {
+		@Override
+		public void run() {
+			synchronized (reliableSessions) {
+				forgetExpiredReliableSessions();
+
+				// Sessions are checked once per timeout, so that memory is freed even if no client ever reconnects
+				reliableSessionExpiryScheduled = !reliableSessions.isEmpty();
+				if (reliableSessionExpiryScheduled) {
+					SharedTimer.schedule(this, Parameters.COMMUNICATION_RELIABLE_SESSION_TIMEOUT_IN_MILLISECONDS, CommunicationManager.this);
+				}
+			}
+		}
+	};
+	/** The spool of the messages sent to disconnected peers, or null if such messages are dropped */
+	private volatile MessageSpool messageSpool = null;
+	private final List<PayloadObserver> payloadObservers = new ArrayList<PayloadObserver>();
+	private long heartbeatInterval = Parameters.COMMUNICATION_HEARTBEAT_INTERVAL_IN_MILLISECONDS;
+	private long idleTimeout = Parameters.COMMUNICATION_IDLE_TIMEOUT_IN_MILLISECONDS;
+	/** The inbound and outbound rate limits of every single communication in messages per second (0 if unlimited)
+	 * and the rate limiters shared by all communications (null if unlimited) */
+	private double inboundMessagesPerSecondPerPeer = 0;
+	private RateLimiter inboundRateLimiter = null;
+	private RateLimitPolicy inboundRateLimitPolicy = RateLimitPolicy.DELAY;
+	private double outboundMessagesPerSecondPerPeer = 0;
+	private RateLimiter outboundRateLimiter = null;
+	private RateLimitPolicy outboundRateLimitPolicy = RateLimitPolicy.DELAY;
+	/** The rate limiters shared by all communications with the same client, by client IP address. Guarded by the map 
+	 * itself, as closed communications are removed while the lock of the communication is held. */
+	private final Map<String, PeerRateLimiters> peerRateLimiters = new HashMap<String, PeerRateLimiters>();
+	private CodecRegistry codecRegistry = CodecRegistry.getDefault();
+	/** The factory creating the communication threads in blocking mode */
+	private ThreadFactory threadFactory = new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			return new Thread(runnable);
+		}
+	};
+	/** The index of the reactor from which the search for the least loaded reactor is started */
+	private final AtomicInteger nextReactor = new AtomicInteger();
+	/** The port and the number of channel group threads of a manager running in asynchronous mode */
+	private final int port;
+	private final int numberOfThreads;
+	/** Released by {@link #done()} to wake up the manager thread in asynchronous mode */
+	private final CountDownLatch asynchronousShutdown = new CountDownLatch(1);
 	
 	/** Call this method to stop the thread from receiving and and forwarding future messages. Once the thread
 	 * has been stopped, it cannot be started again. You must instead instantiate a new CommunicationManager.
 	 * @see #start() */
 	public void done() {
 		done = true;
+
+		for (CommunicationReactor reactor : reactors) {
+			reactor.done();
+		}
+
+		if (communicationMode == CommunicationMode.BLOCKING && server != null) {
+			// Closing the server channel wakes up the manager thread waiting for new connections
+			try {
+				server.close();
+			} catch (IOException ioException) {
+				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			}
+		}
+
+		asynchronousShutdown.countDown();
+
+		// Loopback communications are served even if the manager thread has never been started, unless they are
+		// waiting for a reactor, which is only started by the manager thread
+		boolean unservedReactors = communicationMode == CommunicationMode.EVENT_DRIVEN && !isAlive();
+
+		for (Communication communication : communications.getAll()) {
+			if (!(communication.getTransport() instanceof LoopbackTransport)) {
+				continue;
+			}
+
+			if (unservedReactors) {
+				communication.close();
+			} else {
+				communication.done();
+			}
+		}
 	}
 	
 	/** Sets up a new server communication thread to which clients can connect. The constructor initializes a new 
@@ -65,6 +178,74 @@ public class CommunicationManager extends SoutilsObservable {
 	 * @see SoutilsObservable
 	 * @see #registerSoutilsObserver(SoutilsObserver) */
 	public CommunicationManager(int port, SoutilsObserver soutilsObserver) {
+		this(port, soutilsObserver, CommunicationMode.POLLING);
+	}
+
+	/** Sets up a new server communication thread which serves its communications using the given mode. 
+	 * In {@link CommunicationMode#EVENT_DRIVEN} mode, the connections are accepted and all messages are received
+	 * by selector based reactors, one per available core. No additional thread is created per communication, 
+	 * and messages are forwarded to the observers as soon as they arrive.
+	 * @param port the TCP port to which you want to connect to
+	 * @param soutilsObserver the observer to which all received messages should be forwarded to
+	 * @param communicationMode the way how communications should be served
+	 * @see #CommunicationManager(int, SoutilsObserver) 
+	 * @see Parameters#COMMUNICATION_NUMBER_OF_REACTORS */
+	public CommunicationManager(int port, SoutilsObserver soutilsObserver, CommunicationMode communicationMode) {
+		this(port, soutilsObserver, communicationMode, communicationMode == CommunicationMode.ASYNCHRONOUS ? 
+				Parameters.COMMUNICATION_NUMBER_OF_ASYNCHRONOUS_THREADS : Parameters.COMMUNICATION_NUMBER_OF_REACTORS);
+	}
+
+	/** Sets up a new event driven server communication thread which spreads its communications across the 
+	 * given number of reactor threads. The first reactor runs within this thread and accepts all incoming 
+	 * connections, each of which is then handed over to the reactor currently serving the fewest communications.
+	 * @param port the TCP port to which you want to connect to
+	 * @param soutilsObserver the observer to which all received messages should be forwarded to
+	 * @param numberOfReactors the number of reactor threads (at least one)
+	 * @see CommunicationMode#EVENT_DRIVEN
+	 * @see #getReactorLoads() */
+	public CommunicationManager(int port, SoutilsObserver soutilsObserver, int numberOfReactors) {
+		this(port, soutilsObserver, CommunicationMode.EVENT_DRIVEN, numberOfReactors);
+	}
+
+	/** Sets up a new server communication thread which serves its communications using the given mode and number of
+	 * threads. The number of threads is the number of reactors in {@link CommunicationMode#EVENT_DRIVEN} mode, and
+	 * the size of the channel group completing all reads and writes in {@link CommunicationMode#ASYNCHRONOUS} mode. 
+	 * In all other modes, it is ignored.
+	 * @param port the TCP port to which you want to connect to
+	 * @param soutilsObserver the observer to which all received messages should be forwarded to
+	 * @param communicationMode the way how communications should be served
+	 * @param numberOfThreads the number of reactor or channel group threads (at least one)
+	 * @see #setThreadFactory(ThreadFactory) */
+	public CommunicationManager(int port, SoutilsObserver soutilsObserver, CommunicationMode communicationMode, int numberOfThreads) {
+		this.communicationMode = communicationMode;
+		this.port = port;
+		this.numberOfThreads = numberOfThreads;
+
+		if (numberOfThreads < 1 && (communicationMode == CommunicationMode.EVENT_DRIVEN || communicationMode == CommunicationMode.ASYNCHRONOUS)) {
+			throw new IllegalArgumentException("At least one thread is required!");
+		}
+
+		if (communicationMode == CommunicationMode.ASYNCHRONOUS) {
+			// The channel group is created once the manager is started, using the configured thread factory
+			this.registerSoutilsObserver(soutilsObserver);
+			return;
+		}
+
+		if (communicationMode == CommunicationMode.EVENT_DRIVEN) {
+
+			SoutilsObserver reactorObserver = new SoutilsObserver() {
+				@Override
+				public void handleSoutilsMessage(SoutilsMessage soutilsMessage) {
+					notifyAllObservers(soutilsMessage);
+				}
+			};
+
+			reactors = new CommunicationReactor[numberOfThreads];
+			for (int i=0; i<numberOfThreads; i++) {
+				reactors[i] = new CommunicationReactor(reactorObserver);
+			}
+		}
+
 		try {
 			server = ServerSocketChannel.open();
 			server.socket().bind(new InetSocketAddress(port));
@@ -76,56 +257,291 @@ public class CommunicationManager extends SoutilsObservable {
 	}
 
 	/** Sends a message to all connected clients. I.e. to all communications that are currently managed.
+	 * The message is encoded only once, and all communications write the same encoded bytes.
 	 * @param messageContent the message to be sent to all connected clients */
-	public synchronized void sendMessageToAllConnectedPeers(String messageContent) {
-		for(Communication communication : communications) {
-			try {
-				communication.sendMessage(messageContent);
-			} catch (CommunicationException communicationException) {
-				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
-				communications.remove(communication);
-			}
-		}
+	public void sendMessageToAllConnectedPeers(String messageContent) {
+		broadcast(communications.getAll(), null, messageContent, null, null, MessagePriority.NORMAL);
 	}
-	
-	/** Sends a message to the specified client using a managed communication
-	 * @param receiverAddress the recipient's IP address
-	 * @param messageContent the message to be sent */
-	public synchronized void sendMessage(String receiverAddress, String messageContent) {
-		for(Communication communication : communications) {			
-			if (communication.getClientAddress().equals(receiverAddress)) {
+
+	/** Sends a message to all clients which have subscribed to the given topic, or to a wildcard pattern matching
+	 * it. As for {@link #sendMessageToAllConnectedPeers(String)}, the message is encoded only once. The topic is sent
+	 * along with the message, so that the subscribers can tell the topics of their subscriptions apart.
+	 * @param topic the topic of the message
+	 * @param messageContent the message to be sent to all subscribers
+	 * @see Communication#subscribe(String)
+	 * @see SoutilsMessage#getTopic() */
+	public void publish(String topic, String messageContent) {
+		publish(topic, messageContent, MessagePriority.NORMAL);
+	}
+
+	/** Sends a message to all clients which have subscribed to the given topic using the given priority
+	 * @param topic the topic of the message
+	 * @param messageContent the message to be sent to all subscribers
+	 * @param messagePriority the priority class of the message
+	 * @see #publish(String, String) */
+	public void publish(String topic, String messageContent, MessagePriority messagePriority) {
+		broadcast(topicIndex.getSubscribers(topic), topic, messageContent, null, null, messagePriority);
+	}
+
+	/** Sends an object to all clients which have subscribed to the given topic
+	 * @param topic the topic of the object
+	 * @param object the object to be sent to all subscribers
+	 * @see #sendObjectToAllConnectedPeers(Object) */
+	public void publishObject(String topic, Object object) {
+		broadcast(topicIndex.getSubscribers(topic), topic, null, null, object, MessagePriority.NORMAL);
+	}
+
+	/** Returns the number of clients which have subscribed to the given topic, or to a wildcard pattern matching it
+	 * @param topic the topic
+	 * @return the number of clients receiving the messages published to the topic */
+	public int getNumberOfSubscribers(String topic) {
+		return topicIndex.getSubscribers(topic).size();
+	}
+
+	/** Called by a managed communication which has received a subscription. A communication which is closed in
+	 * the meantime is unsubscribed as soon as a message cannot be published to it. */
+	void subscribe(Communication communication, String topicPattern) throws CommunicationException {
+		topicIndex.subscribe(communication, topicPattern);
+	}
+
+	/** Called by a managed communication which has received the cancellation of a subscription */
+	void unsubscribe(Communication communication, String topicPattern) {
+		topicIndex.unsubscribe(communication, topicPattern);
+	}
+
+	/** Sends an object to all connected clients. The object is serialized only once. Clients using 
+	 * {@link MessageFraming#DELIMITED} cannot receive objects and are skipped.
+	 * @param object the object to be sent to all connected clients
+	 * @see Communication#sendObject(Object) */
+	public void sendObjectToAllConnectedPeers(Object object) {
+		broadcast(communications.getAll(), null, null, null, object, MessagePriority.NORMAL);
+	}
+
+	/** Sends a message to all connected clients using the given priority. A {@link MessagePriority#HIGH} message
+	 * (E.g. a shutdown notice) overtakes all lower priority messages which have not yet been written.
+	 * @param messageContent the message to be sent to all connected clients
+	 * @param messagePriority the priority class of the message
+	 * @see Communication#sendMessage(String, MessagePriority) */
+	public void sendMessageToAllConnectedPeers(String messageContent, MessagePriority messagePriority) {
+		broadcast(communications.getAll(), null, messageContent, null, null, messagePriority);
+	}
+
+	/** Sends an already UTF-8 encoded message to all connected clients without decoding it. The bytes are copied 
+	 * once per message framing, and the given buffer itself is not modified.
+	 * @param messageContent the UTF-8 encoded message to be sent to all connected clients
+	 * @see MessagePayload#getBuffer() */
+	public void sendMessageToAllConnectedPeers(ByteBuffer messageContent) {
+		broadcast(communications.getAll(), null, null, messageContent, null, MessagePriority.NORMAL);
+	}
+
+	/** Encodes either the given string, the given bytes or the given object once per message framing and sends 
+	 * the encoded frames to the given communications
+	 * @param topic the topic sent along with the string or the object, or null if they are not published */
+	private void broadcast(Collection<Communication> receivers, String topic, String messageContent, ByteBuffer encodedMessageContent, 
+			Object object, MessagePriority messagePriority) {
+		// One frame per message framing, as communications accepted at different times may use different framings
+		SharedFrame[] sharedFrames = new SharedFrame[MessageFraming.values().length];
+
+		try {
+			for(Communication communication : receivers) {
 				try {
-					communication.sendMessage(messageContent);
+					int messageFraming = communication.getMessageFraming().ordinal();
+
+					if (sharedFrames[messageFraming] == null) {
+						if (topic != null) {
+							try {
+								sharedFrames[messageFraming] = new SharedFrame(communication.encodePublishFrame(topic, messageContent, object));
+							} catch (CommunicationException communicationException) {
+								// The object cannot be serialized, which is not the fault of the communication
+								notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+								return;
+							}
+						} else if (messageContent != null) {
+							sharedFrames[messageFraming] = new SharedFrame(communication.encodeFrame(FrameType.MESSAGE, messageContent));
+						} else if (encodedMessageContent != null) {
+							sharedFrames[messageFraming] = new SharedFrame(communication.encodeFrame(FrameType.MESSAGE, encodedMessageContent));
+						} else if (communication.getMessageFraming() == MessageFraming.DELIMITED) {
+							// Objects cannot be separated from each other by delimiters
+							continue;
+						} else {
+							try {
+								sharedFrames[messageFraming] = new SharedFrame(communication.encodeObjectFrame(object));
+							} catch (CommunicationException communicationException) {
+								// The object cannot be serialized, which is not the fault of the communication
+								notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+								return;
+							}
+						}
+					}
+
+					communication.sendSharedFrame(sharedFrames[messageFraming], messagePriority);
+				} catch (CharacterCodingException characterCodingException) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, characterCodingException));
+					return;
 				} catch (CommunicationException communicationException) {
 					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
-					communications.remove(communication);
+					removeCommunication(communication);
+				}
+			}
+		} finally {
+			for (SharedFrame sharedFrame : sharedFrames) {
+				if (sharedFrame != null) {
+					sharedFrame.release();
 				}
 			}
 		}
 	}
 	
+	/** Sends a message to the specified client using a managed communication. If the client has established
+	 * several communications, the message is sent using each of them. If the client is not connected, the 
+	 * message is kept within the message spool (if any) until the client reconnects.
+	 * @param receiverAddress the recipient's IP address
+	 * @param messageContent the message to be sent 
+	 * @see #sendMessage(InetSocketAddress, String)
+	 * @see #setMessageSpool(MessageSpool) */
+	public void sendMessage(String receiverAddress, String messageContent) {
+		if (communications.get(receiverAddress).isEmpty() && spool(receiverAddress, messageContent)) {
+			return;
+		}
+
+		for(Communication communication : communications.get(receiverAddress)) {			
+			sendMessage(communication, messageContent);
+		}
+	}
+
+	/** Appends a message to the message spool, unless the receiver has connected in the meantime
+	 * @return false if the message has not been spooled and must be sent to the connected receiver instead */
+	private boolean spool(String receiverAddress, String messageContent) {
+		MessageSpool currentMessageSpool = messageSpool;
+		if (currentMessageSpool == null) {
+			return true;
+		}
+
+		// Reconnecting receivers replay the spool while holding its lock before they are added to the registry
+		synchronized (currentMessageSpool) {
+			if (!communications.get(receiverAddress).isEmpty()) {
+				return false;
+			}
+
+			try {
+				currentMessageSpool.append(receiverAddress, messageContent);
+			} catch (IOException ioException) {
+				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			}
+		}
+
+		return true;
+	}
+
+	/** Sends a message using the managed communication with the given remote socket address. Unlike the IP 
+	 * address, the socket address (IP address and port) identifies a single communication.
+	 * @param receiverSocketAddress the remote socket address of the recipient's communication
+	 * @param messageContent the message to be sent 
+	 * @see Communication#getRemoteSocketAddress() */
+	public void sendMessage(InetSocketAddress receiverSocketAddress, String messageContent) {
+		Communication communication = communications.get(receiverSocketAddress);
+
+		if (communication != null) {
+			sendMessage(communication, messageContent);
+		}
+	}
+
+	/** Sends a message using the managed communication with the given remote socket address without waiting for
+	 * it to be written. If there is no such communication, the returned future has already failed.
+	 * @param receiverSocketAddress the remote socket address of the recipient's communication
+	 * @param messageContent the message to be sent 
+	 * @return the future of the message
+	 * @see Communication#sendAsync(String) */
+	public SendFuture sendAsync(InetSocketAddress receiverSocketAddress, String messageContent) {
+		Communication communication = communications.get(receiverSocketAddress);
+
+		if (communication == null) {
+			return SendFuture.failed(new CommunicationException("No communication with " + receiverSocketAddress + "!"));
+		}
+
+		return communication.sendAsync(messageContent);
+	}
+
+	/** Sends a request using the managed communication with the given remote socket address. If there is no
+	 * such communication, the returned future has already failed.
+	 * @param receiverSocketAddress the remote socket address of the recipient's communication
+	 * @param requestContent the request to be sent
+	 * @param timeoutInMilliseconds the time after which the request fails if no response has been received
+	 * @return the future of the response
+	 * @see Communication#request(String, long) */
+	public ResponseFuture request(InetSocketAddress receiverSocketAddress, String requestContent, long timeoutInMilliseconds) {
+		Communication communication = communications.get(receiverSocketAddress);
+
+		if (communication == null) {
+			ResponseFuture responseFuture = new ResponseFuture();
+			responseFuture.fail(new CommunicationException("No communication with " + receiverSocketAddress + "!"));
+
+			return responseFuture;
+		}
+
+		return communication.request(requestContent, timeoutInMilliseconds);
+	}
+
+	private void sendMessage(Communication communication, String messageContent) {
+		try {
+			communication.sendMessage(messageContent);
+		} catch (CommunicationException communicationException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+			removeCommunication(communication);
+			spool(communication.getClientAddress(), messageContent);
+		}
+	}
+
+	/** Returns the managed communication with the given remote socket address
+	 * @param remoteSocketAddress the remote socket address (IP address and port) of the communication
+	 * @return the communication, or null if there is no such communication */
+	public Communication getCommunication(InetSocketAddress remoteSocketAddress) {
+		return communications.get(remoteSocketAddress);
+	}
+	
 	/** Starts listening for incoming messages from all connected clients. As soon as a message has been received, 
 	 * all registered SoutilsObservers are informed about the newly received message.
 	 * @see #done() */
 	@Override
 	public void run() {
+		if (communicationMode == CommunicationMode.EVENT_DRIVEN) {
+			for (int i=1; i<reactors.length; i++) {
+				reactors[i].start();
+			}
+
+			reactors[0].registerServer(this, server);
+			// The accepting reactor loop runs within this thread until done() is called
+			reactors[0].run();
+		} else if (communicationMode == CommunicationMode.ASYNCHRONOUS) {
+			runAsynchronously();
+			return;
+		} else if (communicationMode == CommunicationMode.BLOCKING) {
+			try {
+				server.configureBlocking(true);
+			} catch (IOException ioException) {
+				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			}
+		}
+
 		while (!done) {
 			try {
 				socketChannel = server.accept();
 
 				if (socketChannel == null) {
 					Thread.sleep(Parameters.COMMUNICATION_MILLISECONDS_UNTIL_NEXT_CONNECTION_ACCEPT);
+				} else if (communicationMode == CommunicationMode.BLOCKING) {
+					createCommunication(socketChannel).start(threadFactory);
 				} else {
-					Communication communication = new Communication(socketChannel);
+					Communication communication = createCommunication(socketChannel);
 					Thread clientServiceThread = new Thread(communication);
-					communications.add(communication);
-					
-					for (SoutilsObserver soutilsObserver : getSoutilsObservers()) {
-						communication.registerSoutilsObserver(soutilsObserver);
-					}
-					
 					clientServiceThread.start();
 				}
+			} catch (ClosedChannelException closedChannelException) {
+				if (!done) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, closedChannelException));
+				}
+
+				break;
 			} catch (IOException ioException) {
 				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
 			} catch (InterruptedException e) {
@@ -133,7 +549,7 @@ public class CommunicationManager extends SoutilsObservable {
 			}
 		}		
 		
-		for (Communication communication : communications) {
+		for (Communication communication : communications.getAll()) {
 			communication.done();
 		}
 				
@@ -144,19 +560,542 @@ public class CommunicationManager extends SoutilsObservable {
 		}
 	}
 
-	/** Shuts down the communication with a specific client
-	 * @param ipAddress the IP address of the client communication that should be terminated */
-	public void shutdownCommunication(String ipAddress) {
-		Communication communicationToBeRemoved = null;
-		
-		for (Communication communication : communications) {
-			if (communication.getClientAddress().equals(ipAddress)) {
-				communication.done();
-				communicationToBeRemoved = communication;
-				break;
+	/** Accepts connections using an asynchronous server channel until {@link #done()} is called. All reads and writes
+	 * of the accepted communications are completed by the threads of a channel group. */
+	private void runAsynchronously() {
+		AsynchronousAcceptor asynchronousAcceptor = null;
+
+		try {
+			synchronized (this) {
+				asynchronousAcceptor = new AsynchronousAcceptor(this, numberOfThreads, threadFactory);
+			}
+
+			asynchronousAcceptor.accept(port);
+			asynchronousShutdown.await();
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+		} catch (InterruptedException interruptedException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, interruptedException));
+		}
+
+		done = true;
+
+		try {
+			if (asynchronousAcceptor != null) {
+				asynchronousAcceptor.close();
 			}
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+		}
+
+		for (Communication communication : communications.getAll()) {
+			communication.done();
+		}
+
+		if (asynchronousAcceptor != null) {
+			// Pending reads and writes are completed before the threads of the group terminate
+			asynchronousAcceptor.shutdown();
+		}
+	}
+
+	/** Manages a communication accepted in asynchronous mode and starts its first read right away, as asynchronous
+	 * communications do not need a thread of their own */
+	void manageAsynchronously(Communication communication) {
+		manage(communication);
+
+		try {
+			communication.writeQueuedFrames();
+		} catch (IOException ioException) {
+			communication.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			communication.close();
+		}
+
+		communication.readAsynchronously();
+	}
+
+	boolean isDone() {
+		return done;
+	}
+
+	/** Connects a new client communication to this manager without using a socket. Both the returned communication
+	 * and the communication accepted by the manager exchange frames through in-memory queues, but otherwise behave
+	 * exactly like communications connected over TCP. This allows to test or benchmark code built on communications
+	 * without opening ports, and to measure the overhead of the framework without the one of the network stack. 
+	 * The accepted communication is served by a reactor in event driven mode, and otherwise by a blocking thread 
+	 * created by the configured thread factory, which waits for the queued frames instead of polling for them. The 
+	 * returned communication uses the message framing of the manager and, as any other communication, needs to be 
+	 * started using {@link Communication#start(ThreadFactory)} or handed over to a {@link CommunicationReactor}. 
+	 * (Started using {@link Communication#start()}, it would only read every 
+	 * {@link Parameters#COMMUNICATION_DURATION_BETWEEN_READ_ATTEMPTS_IN_MS} ms.) All loopback communications of the
+	 * manager are closed by {@link #done()}.
+	 * @param soutilsObserver the observer to which all messages received by the client should be forwarded to
+	 * @return the client communication, whose remote socket address is the loopback address and the port of this 
+	 * manager
+	 * @throws CommunicationException if the manager has already been stopped
+	 * @see #setThreadFactory(ThreadFactory) */
+	public Communication connectLoopback(SoutilsObserver soutilsObserver) throws CommunicationException {
+		LoopbackTransport[] transports;
+		MessageFraming currentMessageFraming;
+		ThreadFactory currentThreadFactory;
+
+		synchronized (this) {
+			if (done) {
+				throw new CommunicationException("The communication manager has been stopped!");
+			}
+
+			transports = LoopbackTransport.openPair(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+			currentMessageFraming = messageFraming;
+			currentThreadFactory = threadFactory;
+		}
+
+		Communication communication = new Communication(transports[0]);
+		communication.registerSoutilsObserver(soutilsObserver);
+		communication.setMessageFraming(currentMessageFraming);
+
+		Communication acceptedCommunication = manage(new Communication(transports[1]));
+
+		if (communicationMode == CommunicationMode.EVENT_DRIVEN) {
+			leastLoadedReactor().register(acceptedCommunication);
+		} else {
+			// Polling would leave the queued frames unread between two read attempts
+			acceptedCommunication.start(currentThreadFactory);
+		}
+
+		return communication;
+	}
+
+	/** Accepts all pending connections and hands them over to the reactor. Called by the reactor as soon as 
+	 * the server channel is ready to accept new connections. */
+	void acceptCommunications() {
+		try {
+			while ((socketChannel = server.accept()) != null) {
+				leastLoadedReactor().register(createCommunication(socketChannel));
+			}
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+		}
+	}
+
+	/** Sets the message framing used by all communications which are accepted from now on. All connecting 
+	 * clients must use the same message framing. This method should be called before the manager is started.
+	 * @param messageFraming the message framing to be used (By default {@link MessageFraming#DELIMITED}) 
+	 * @see Communication#setMessageFraming(MessageFraming) */
+	public synchronized void setMessageFraming(MessageFraming messageFraming) {
+		this.messageFraming = messageFraming;
+	}
+
+	/** Sets the factory which creates the threads serving the communications in {@link CommunicationMode#BLOCKING}
+	 * mode, or the threads of the channel group in {@link CommunicationMode#ASYNCHRONOUS} mode. Except in
+	 * {@link CommunicationMode#EVENT_DRIVEN} mode, it also creates the threads serving loopback communications. On Java 21 and later, {@code Thread.ofVirtual().factory()} can be used to serve every communication 
+	 * using a virtual thread. This method should be called before the manager is started.
+	 * @param threadFactory the factory creating the communication threads 
+	 * @see Communication#start(ThreadFactory) */
+	public synchronized void setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+	}
+
+	/** Sets the action taken by all communications accepted from now on if a message is sent while their 
+	 * outbound queue exceeds its high watermark. Use {@link OverflowPolicy#DROP} or {@link OverflowPolicy#DISCONNECT}
+	 * to prevent a single slow client from delaying messages sent to all other clients.
+	 * @param overflowPolicy the overflow policy (By default {@link OverflowPolicy#BLOCK}) 
+	 * @see Communication#setOverflowPolicy(OverflowPolicy) */
+	public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/** Sets the outbound queue watermarks of all communications which are accepted from now on
+	 * @param lowWatermark the number of queued bytes at which sending is possible again
+	 * @param highWatermark the number of queued bytes above which the overflow policy is applied
+	 * @see Communication#setOutboundQueueWatermarks(int, int) */
+	public synchronized void setOutboundQueueWatermarks(int lowWatermark, int highWatermark) {
+		if (lowWatermark > highWatermark) {
+			throw new IllegalArgumentException("The low watermark cannot be larger than the high watermark!");
+		}
+
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+	}
+
+	/** Sets the linger time and budget of all communications which are accepted from now on. Lingering also batches
+	 * the frames written by {@link #sendMessageToAllConnectedPeers(String)}.
+	 * @param lingerInMilliseconds the maximum time a message is held back, or 0 to disable lingering (the default)
+	 * @param lingerBudgetInBytes the number of collected bytes at which the messages are written without further delay
+	 * @see Communication#setLinger(int, int) */
+	public synchronized void setLinger(int lingerInMilliseconds, int lingerBudgetInBytes) {
+		this.lingerInMilliseconds = lingerInMilliseconds;
+		this.lingerBudget = lingerBudgetInBytes;
+	}
+
+	/** Registers an observer which receives the undecoded bytes of the messages received by all communications 
+	 * which are accepted from now on. SoutilsObservers are then no longer informed about received messages.
+	 * @param payloadObserver the observer to be registered
+	 * @see Communication#registerPayloadObserver(PayloadObserver) */
+	public synchronized void registerPayloadObserver(PayloadObserver payloadObserver) {
+		payloadObservers.add(payloadObserver);
+	}
+
+	/** Sets the handler answering the requests received by all communications which are accepted from now on
+	 * @param requestHandler the request handler, or null to reject all requests
+	 * @see Communication#setRequestHandler(RequestHandler) */
+	public synchronized void setRequestHandler(RequestHandler requestHandler) {
+		this.requestHandler = requestHandler;
+	}
+
+	/** Sets the executor calling the request handler of all communications which are accepted from now on and 
+	 * served by a reactor or channel group
+	 * @param requestExecutor the executor, or null to use the request threads shared by all communications
+	 * @see Communication#setRequestExecutor(Executor) */
+	public synchronized void setRequestExecutor(Executor requestExecutor) {
+		this.requestExecutor = requestExecutor;
+	}
+
+	/** Sets the handler receiving the stream bytes of all communications which are accepted from now on
+	 * @param streamHandler the stream handler, or null to discard all received stream bytes
+	 * @see Communication#setStreamHandler(StreamHandler) */
+	public synchronized void setStreamHandler(StreamHandler streamHandler) {
+		this.streamHandler = streamHandler;
+	}
+
+	/** Sets the spool keeping the messages sent to disconnected clients using {@link #sendMessage(String, String)}. 
+	 * The spooled messages of a client are sent as soon as it reconnects, before any other message.
+	 * @param messageSpool the message spool, or null to drop messages sent to disconnected clients (the default) */
+	public void setMessageSpool(MessageSpool messageSpool) {
+		this.messageSpool = messageSpool;
+	}
+
+	/** Enables reliable sessions for all communications. Clients resuming a session using 
+	 * {@link Communication#setReliableSession(ReliableSession)} get the session they have used before they have
+	 * been disconnected, so that the messages lost in between are sent again. Sessions are only issued by this
+	 * manager, and can only be resumed by the client they have been issued to. Sessions whose clients do not 
+	 * reconnect are forgotten after {@link Parameters#COMMUNICATION_RELIABLE_SESSION_TIMEOUT_IN_MILLISECONDS}.
+	 * @param reliableDelivery true to accept reliable sessions (By default false)
+	 * @see Communication#getReliableSession() */
+	public void setReliableDelivery(boolean reliableDelivery) {
+		this.reliableDelivery = reliableDelivery;
+	}
+
+	/** Returns the reliable session with the given id, or issues a new session if the client resumes the id 0.
+	 * Expired sessions are forgotten at the same time.
+	 * @param sessionId the id of the session resumed by the client
+	 * @param token the secret token presented by the client
+	 * @param clientAddress the IP address of the client
+	 * @return the session, or null if the session has never been issued, has expired, or has been issued to 
+	 * another client
+	 * @throws CommunicationException if reliable sessions are not accepted, or if the client already holds the 
+	 * maximum number of sessions, all of which are attached to communications */
+	ReliableSession resumeReliableSession(long sessionId, byte[] token, String clientAddress) throws CommunicationException {
+		if (!reliableDelivery) {
+			throw new CommunicationException("Reliable sessions are not accepted!");
+		}
+
+		synchronized (reliableSessions) {
+			forgetExpiredReliableSessions();
+
+			ReliableSession reliableSession;
+
+			if (sessionId == 0) {
+				limitReliableSessions(clientAddress);
+
+				do {
+					reliableSession = ReliableSession.issue(clientAddress);
+				} while (reliableSessions.containsKey(reliableSession.getId()));
+
+				reliableSessions.put(reliableSession.getId(), reliableSession);
+
+				if (!reliableSessionExpiryScheduled) {
+					reliableSessionExpiryScheduled = true;
+					SharedTimer.schedule(reliableSessionExpiry, Parameters.COMMUNICATION_RELIABLE_SESSION_TIMEOUT_IN_MILLISECONDS, this);
+				}
+			} else {
+				reliableSession = reliableSessions.get(sessionId);
+
+				if (reliableSession == null || !reliableSession.isIssuedTo(token)) {
+					return null;
+				}
+			}
+
+			return reliableSession;
+		}
+	}
+
+	/** Forgets the session which the given client has not used for the longest time if the client already holds 
+	 * the maximum number of sessions, so that a client resuming new sessions over and over again cannot exhaust
+	 * the memory. Must be called while holding the lock of the reliable sessions.
+	 * @throws CommunicationException if all sessions of the client are attached to communications */
+	private void limitReliableSessions(String clientAddress) throws CommunicationException {
+		int numberOfSessions = 0;
+		ReliableSession leastRecentlyUsedSession = null;
+		long leastRecentDetachTime = 0;
+
+		for (ReliableSession reliableSession : reliableSessions.values()) {
+			if (!reliableSession.getClientAddress().equals(clientAddress)) {
+				continue;
+			}
+
+			numberOfSessions++;
+
+			Long detachTime = reliableSession.getDetachTime();
+			if (detachTime != null && (leastRecentlyUsedSession == null || detachTime.longValue() - leastRecentDetachTime < 0)) {
+				leastRecentlyUsedSession = reliableSession;
+				leastRecentDetachTime = detachTime.longValue();
+			}
+		}
+
+		if (numberOfSessions < Parameters.COMMUNICATION_MAXIMUM_RELIABLE_SESSIONS_PER_PEER) {
+			return;
+		}
+
+		if (leastRecentlyUsedSession == null) {
+			throw new CommunicationException("The client " + clientAddress + " already holds " + numberOfSessions 
+					+ " reliable sessions!");
+		}
+
+		reliableSessions.remove(leastRecentlyUsedSession.getId());
+	}
+
+	/** Forgets all sessions whose clients have not reconnected in time. Must be called while holding the lock 
+	 * of the reliable sessions. */
+	private void forgetExpiredReliableSessions() {
+		Iterator<ReliableSession> sessions = reliableSessions.values().iterator();
+		while (sessions.hasNext()) {
+			if (sessions.next().isExpired()) {
+				sessions.remove();
+			}
+		}
+	}
+
+	/** Sets the heartbeat interval and idle timeout of all communications which are accepted from now on.
+	 * Dead clients are thereby detected and their resources freed, even if no message is ever sent to them.
+	 * @param heartbeatIntervalInMilliseconds the time between two PING frames, or 0 to send no PING frames (the default)
+	 * @param idleTimeoutInMilliseconds the time without received data after which a communication is closed, 
+	 * or 0 to never close idle communications (the default)
+	 * @see Communication#setHeartbeat(long, long) */
+	public synchronized void setHeartbeat(long heartbeatIntervalInMilliseconds, long idleTimeoutInMilliseconds) {
+		this.heartbeatInterval = heartbeatIntervalInMilliseconds;
+		this.idleTimeout = idleTimeoutInMilliseconds;
+	}
+
+	/** Sets the registry containing the serializers of the objects sent and received by all communications which 
+	 * are accepted from now on
+	 * @param codecRegistry the registry to be used (By default {@link CodecRegistry#getDefault()})
+	 * @see Communication#setCodecRegistry(CodecRegistry) */
+	public synchronized void setCodecRegistry(CodecRegistry codecRegistry) {
+		this.codecRegistry = codecRegistry;
+	}
+
+	/** Limits the rate of the messages and requests received by all communications which are accepted from now on.
+	 * Every client is limited separately (Across all its communications), and all clients together are limited as 
+	 * well. Every received frame counts, including acknowledgements, stream frames and heartbeats. Bursts of up to one 
+	 * second worth of messages are accepted. With {@link RateLimitPolicy#DELAY}, a communication exceeding a rate
+	 * limit stops reading from its socket, which slows down the client instead of buffering its messages.
+	 * @param messagesPerSecondPerPeer the maximum rate of every single client, or 0 for no limit
+	 * @param messagesPerSecond the maximum rate of all clients together, or 0 for no limit
+	 * @param rateLimitPolicy the action taken if a message exceeds a rate limit
+	 * @see Communication#setInboundRateLimit(RateLimitPolicy, RateLimiter...) */
+	public synchronized void setInboundRateLimit(double messagesPerSecondPerPeer, double messagesPerSecond, RateLimitPolicy rateLimitPolicy) {
+		this.inboundMessagesPerSecondPerPeer = messagesPerSecondPerPeer;
+		this.inboundRateLimiter = messagesPerSecond > 0 ? createRateLimiter(messagesPerSecond) : null;
+		this.inboundRateLimitPolicy = rateLimitPolicy;
+		forgetPeerRateLimiters();
+	}
+
+	/** Limits the rate of the messages sent by all communications which are accepted from now on, including the 
+	 * messages sent to all connected clients. High priority messages are not limited.
+	 * @param messagesPerSecondPerPeer the maximum rate to every single client, or 0 for no limit
+	 * @param messagesPerSecond the maximum rate to all clients together, or 0 for no limit
+	 * @param rateLimitPolicy the action taken if a message exceeds a rate limit
+	 * @see #setInboundRateLimit(double, double, RateLimitPolicy)
+	 * @see Communication#setOutboundRateLimit(RateLimitPolicy, RateLimiter...) */
+	public synchronized void setOutboundRateLimit(double messagesPerSecondPerPeer, double messagesPerSecond, RateLimitPolicy rateLimitPolicy) {
+		this.outboundMessagesPerSecondPerPeer = messagesPerSecondPerPeer;
+		this.outboundRateLimiter = messagesPerSecond > 0 ? createRateLimiter(messagesPerSecond) : null;
+		this.outboundRateLimitPolicy = rateLimitPolicy;
+		forgetPeerRateLimiters();
+	}
+
+	private static RateLimiter createRateLimiter(double messagesPerSecond) {
+		return new RateLimiter(messagesPerSecond, Math.max(1, messagesPerSecond));
+	}
+
+	/** Returns the rate limiters of a newly accepted communication */
+	private static RateLimiter[] rateLimiters(RateLimiter peerRateLimiter, RateLimiter sharedRateLimiter) {
+		List<RateLimiter> rateLimiters = new ArrayList<RateLimiter>(2);
+
+		if (peerRateLimiter != null) {
+			rateLimiters.add(peerRateLimiter);
+		}
+
+		if (sharedRateLimiter != null) {
+			rateLimiters.add(sharedRateLimiter);
+		}
+
+		return rateLimiters.toArray(new RateLimiter[rateLimiters.size()]);
+	}
+
+	/** Returns the rate limiters of the client of a newly accepted communication, which are created as soon as the 
+	 * client connects for the first time */
+	private PeerRateLimiters acquirePeerRateLimiters(Communication communication) {
+		synchronized (peerRateLimiters) {
+			PeerRateLimiters clientRateLimiters = peerRateLimiters.get(communication.getClientAddress());
+
+			if (clientRateLimiters == null) {
+				clientRateLimiters = new PeerRateLimiters(
+						inboundMessagesPerSecondPerPeer > 0 ? createRateLimiter(inboundMessagesPerSecondPerPeer) : null, 
+						outboundMessagesPerSecondPerPeer > 0 ? createRateLimiter(outboundMessagesPerSecondPerPeer) : null);
+				peerRateLimiters.put(communication.getClientAddress(), clientRateLimiters);
+			}
+
+			clientRateLimiters.communications.add(communication);
+			return clientRateLimiters;
+		}
+	}
+
+	/** Forgets the rate limiters of a client as soon as its last communication has been closed */
+	private void releasePeerRateLimiters(Communication communication) {
+		synchronized (peerRateLimiters) {
+			PeerRateLimiters clientRateLimiters = peerRateLimiters.get(communication.getClientAddress());
+
+			if (clientRateLimiters != null && clientRateLimiters.communications.remove(communication) 
+					&& clientRateLimiters.communications.isEmpty()) {
+				peerRateLimiters.remove(communication.getClientAddress());
+			}
+		}
+	}
+
+	/** Forgets the rate limiters of all clients after the rate limits have been changed. Communications accepted from
+	 * now on share new rate limiters, whereas the existing communications keep their rate limiters. */
+	private void forgetPeerRateLimiters() {
+		synchronized (peerRateLimiters) {
+			peerRateLimiters.clear();
+		}
+	}
+
+	/** Returns the reactor serving the fewest communications. Equally loaded reactors are chosen in a round-robin fashion.
+	 * Called by the accepting reactor as well as by the threads connecting loopback communications. */
+	private CommunicationReactor leastLoadedReactor() {
+		CommunicationReactor leastLoadedReactor = null;
+		int firstReactor = (nextReactor.getAndIncrement() & Integer.MAX_VALUE) % reactors.length;
+
+		for (int i=0; i<reactors.length; i++) {
+			CommunicationReactor reactor = reactors[(firstReactor + i) % reactors.length];
+
+			if (leastLoadedReactor == null || reactor.getNumberOfCommunications() < leastLoadedReactor.getNumberOfCommunications()) {
+				leastLoadedReactor = reactor;
+			}
+		}
+
+		return leastLoadedReactor;
+	}
+
+	/** Returns the current load of every reactor, i.e. the number of communications each reactor is serving.
+	 * The returned array is empty if the manager does not run in event driven mode.
+	 * @return the number of communications per reactor, indexed in the order of the reactors */
+	public int[] getReactorLoads() {
+		int[] reactorLoads = new int[reactors.length];
+
+		for (int i=0; i<reactors.length; i++) {
+			reactorLoads[i] = reactors[i].getNumberOfCommunications();
+		}
+
+		return reactorLoads;
+	}
+
+	/** Wraps a newly accepted socket channel into a managed communication which forwards all messages 
+	 * to the observers of this manager */
+	private Communication createCommunication(SocketChannel socketChannel) {
+		return manage(new Communication(socketChannel));
+	}
+
+	/** Applies the settings of this manager to a newly accepted communication and adds it to the managed communications */
+	private synchronized Communication manage(Communication communication) {
+		communication.setMessageFraming(messageFraming);
+		communication.setOverflowPolicy(overflowPolicy);
+		communication.setOutboundQueueWatermarks(lowWatermark, highWatermark);
+		communication.setLinger(lingerInMilliseconds, lingerBudget);
+		communication.setRequestHandler(requestHandler);
+		communication.setRequestExecutor(requestExecutor);
+		communication.setStreamHandler(streamHandler);
+		communication.setHeartbeat(heartbeatInterval, idleTimeout);
+		communication.setCodecRegistry(codecRegistry);
+		PeerRateLimiters clientRateLimiters = acquirePeerRateLimiters(communication);
+		communication.setInboundRateLimit(inboundRateLimitPolicy, rateLimiters(clientRateLimiters.inboundRateLimiter, inboundRateLimiter));
+		communication.setOutboundRateLimit(outboundRateLimitPolicy, rateLimiters(clientRateLimiters.outboundRateLimiter, outboundRateLimiter));
+		communication.setCommunicationManager(this);
+
+		for (SoutilsObserver soutilsObserver : getSoutilsObservers()) {
+			communication.registerSoutilsObserver(soutilsObserver);
+		}
+
+		for (PayloadObserver payloadObserver : payloadObservers) {
+			communication.registerPayloadObserver(payloadObserver);
+		}
+
+		MessageSpool currentMessageSpool = messageSpool;
+		if (currentMessageSpool == null) {
+			communications.add(communication);
+		} else {
+			// Messages sent to the client from now on must not overtake its spooled messages
+			synchronized (currentMessageSpool) {
+				replaySpooledMessages(currentMessageSpool, communication);
+				communications.add(communication);
+			}
+		}
+
+		return communication;
+	}
+
+	/** Queues the messages spooled while the client of a newly accepted communication was disconnected. The 
+	 * accepting thread holds the lock of this manager and of the spool, and therefore never waits for the queued
+	 * messages to be written: they are written once the communication is served by its own thread, reactor or
+	 * channel group. */
+	private void replaySpooledMessages(MessageSpool currentMessageSpool, Communication communication) {
+		try {
+			currentMessageSpool.replay(communication.getClientAddress(), communication);
+		} catch (CommunicationException communicationException) {
+			// The remaining messages are kept until the client reconnects again
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, communicationException));
+		}
+	}
+
+	/** Removes a closed communication from the managed communications */
+	void removeCommunication(Communication communication) {
+		communications.remove(communication);
+		topicIndex.unsubscribeAll(communication);
+		releasePeerRateLimiters(communication);
+	}
+
+	/** Shuts down the communications with a specific client
+	 * @param ipAddress the IP address of the client whose communications should be terminated */
+	public void shutdownCommunication(String ipAddress) {
+		for (Communication communication : communications.get(ipAddress)) {
+			communication.done();
+			communications.remove(communication);
+		}
+	}
+
+	/** Shuts down a single communication
+	 * @param remoteSocketAddress the remote socket address of the communication that should be terminated */
+	public void shutdownCommunication(InetSocketAddress remoteSocketAddress) {
+		Communication communication = communications.get(remoteSocketAddress);
+
+		if (communication != null) {
+			communication.done();
+			communications.remove(communication);
+		}
+	}
+
+	/** The rate limiters shared by all communications with the same client, which are forgotten once the last of
+	 * these communications has been closed */
+	private static final class PeerRateLimiters {
+		/** The inbound and outbound rate limiters of the client, or null if unlimited */
+		private final RateLimiter inboundRateLimiter;
+		private final RateLimiter outboundRateLimiter;
+		/** The communications with the client which have not yet been closed */
+		private final Set<Communication> communications = new HashSet<Communication>();
+
+		private PeerRateLimiters(RateLimiter inboundRateLimiter, RateLimiter outboundRateLimiter) {
+			this.inboundRateLimiter = inboundRateLimiter;
+			this.outboundRateLimiter = outboundRateLimiter;
 		}
-		
-		communications.remove(communicationToBeRemoved);
 	}
 }
@@ -0,0 +1,39 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** An enumeration of the different ways a CommunicationManager can serve its communications. */
+public enum CommunicationMode {
+	/** Every communication runs in its own thread which polls for new messages. (The default) */
+	POLLING,
+	/** All communications are served by one or more selector based CommunicationReactor threads */
+	EVENT_DRIVEN,
+	/** Every communication is served by a thread obtained from a ThreadFactory, which blocks until new messages 
+	 * arrive instead of polling. Connections are accepted the same way. With a factory creating virtual threads 
+	 * (Java 21 and later), waiting communications only occupy a few kilobytes of memory each. 
+	 * @see CommunicationManager#setThreadFactory(java.util.concurrent.ThreadFactory) */
+	BLOCKING,
+	/** All connections are accepted and all communications are served using asynchronous channels (NIO.2). Reads 
+	 * and writes are started without waiting for readiness, and completed by the threads of a bounded channel group.
+	 * @see CommunicationManager#CommunicationManager(int, SoutilsObserver, CommunicationMode, int) */
+	ASYNCHRONOUS
+}
@@ -0,0 +1,279 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jeromewagener.soutils.messaging.MessageType;
+import com.jeromewagener.soutils.messaging.SoutilsMessage;
+import com.jeromewagener.soutils.messaging.SoutilsObservable;
+import com.jeromewagener.soutils.messaging.SoutilsObserver;
+
+/** A SoutilsObservable thread which serves any number of communications using a single selector. Instead of
+ * running one polling thread per communication, the reactor waits for the operating system to report accept,
+ * read and write readiness for all of its channels and handles these events as soon as they occur. Messages are
+ * therefore delivered as soon as they arrive instead of after the next read attempt.
+ * @see CommunicationManager
+ * @see Communication
+ * @see CommunicationMode#EVENT_DRIVEN */
+public class CommunicationReactor extends SoutilsObservable {
+	private Selector selector = null;
+	/** Tasks which must be executed on the reactor thread. (E.g. channel registrations) */
+	private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+	private volatile boolean done = false;
+	/** The thread running the reactor loop */
+	private volatile Thread reactorThread = null;
+	/** The number of communications currently served by this reactor */
+	private final AtomicInteger numberOfCommunications = new AtomicInteger();
+	/** The communications served by this reactor, which are closed once the reactor has been stopped */
+	private final Set<Communication> communications = Collections.newSetFromMap(new ConcurrentHashMap<Communication, Boolean>());
+
+	/** Sets up a new reactor thread. As for any Java thread this thread needs to be started using the
+	 * {@link #start()} method. Communications can be handed over to the reactor before or after it has been started.
+	 * @param soutilsObserver the observer which is informed about errors occurring within the reactor
+	 * @see #register(Communication) */
+	public CommunicationReactor(SoutilsObserver soutilsObserver) {
+		this.registerSoutilsObserver(soutilsObserver);
+
+		try {
+			selector = Selector.open();
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+		}
+	}
+
+	/** Call this method to stop the reactor. All communications served by this reactor will be closed. Once the
+	 * thread has been stopped, it cannot be started again. You must instead instantiate a new CommunicationReactor.
+	 * @see #start() */
+	public void done() {
+		done = true;
+		selector.wakeup();
+	}
+
+	/** Hands the given communication over to this reactor. The communication thread must not be started, as the
+	 * reactor will from now on read and forward all messages received by this communication.
+	 * @param communication the communication to be served by this reactor */
+	public void register(final Communication communication) {
+		if (communication.getTransport() == null) {
+			communication.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, 
+					new CommunicationException("Communication not connected!")));
+			return;
+		}
+
+		numberOfCommunications.incrementAndGet();
+
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					communication.getTransport().register(CommunicationReactor.this, communication);
+					communications.add(communication);
+					communication.attachToReactor(CommunicationReactor.this);
+				} catch (IOException ioException) {
+					numberOfCommunications.decrementAndGet();
+					communication.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+					communication.close();
+				}
+			}
+		});
+	}
+
+	/** Returns the number of communications currently served by this reactor. This value reflects the load of the 
+	 * reactor and is used to distribute new connections among the reactors of a CommunicationManager.
+	 * @return the number of communications served by this reactor */
+	public int getNumberOfCommunications() {
+		return numberOfCommunications.get();
+	}
+
+	/** Called by a communication served by this reactor once it has been closed */
+	void unregister(Communication communication) {
+		communications.remove(communication);
+		numberOfCommunications.decrementAndGet();
+	}
+
+	/** Registers the server channel of a CommunicationManager so that incoming connections are accepted by this reactor */
+	void registerServer(final CommunicationManager communicationManager, final ServerSocketChannel server) {
+		execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					server.register(selector, SelectionKey.OP_ACCEPT, communicationManager);
+				} catch (IOException ioException) {
+					notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+				}
+			}
+		});
+	}
+
+	/** Registers a channel with the selector of this reactor. Must only be called by the reactor thread. */
+	SelectionKey registerChannel(SelectableChannel channel, int interestOps, Object attachment) throws ClosedChannelException {
+		return channel.register(selector, interestOps, attachment);
+	}
+
+	/** Returns true if the calling thread is the thread running the reactor loop */
+	boolean isReactorThread() {
+		return Thread.currentThread() == reactorThread;
+	}
+
+	/** Schedules a task for execution on the reactor thread and wakes up the selector */
+	void execute(Runnable task) {
+		pendingTasks.add(task);
+		selector.wakeup();
+	}
+
+	/** Starts waiting for and handling I/O events until the reactor is stopped.
+	 * @see #done() */
+	@Override
+	public void run() {
+		reactorThread = Thread.currentThread();
+
+		while (!done) {
+			try {
+				selector.select();
+			} catch (IOException ioException) {
+				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+				break;
+			}
+
+			Runnable task;
+			while ((task = pendingTasks.poll()) != null) {
+				runTask(task);
+			}
+
+			Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+			while (selectedKeys.hasNext()) {
+				SelectionKey selectionKey = selectedKeys.next();
+				selectedKeys.remove();
+
+				if (selectionKey.isValid()) {
+					try {
+						handle(selectionKey);
+					} catch (RuntimeException runtimeException) {
+						fail(selectionKey, runtimeException);
+					}
+				}
+			}
+		}
+
+		// Communications handed over in the meantime are registered, so that they are closed as well. Tasks added
+		// by these tasks are not executed anymore.
+		for (int numberOfPendingTasks = pendingTasks.size(); numberOfPendingTasks > 0; numberOfPendingTasks--) {
+			runTask(pendingTasks.poll());
+		}
+
+		for (Communication communication : communications) {
+			communication.close();
+		}
+
+		for (SelectionKey selectionKey : selector.keys()) {
+			if (selectionKey.attachment() instanceof CommunicationConnector.Peer) {
+				((CommunicationConnector.Peer) selectionKey.attachment()).abort();
+			}
+		}
+
+		try {
+			selector.close();
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+		}
+	}
+
+	/** Runs a task on the reactor thread. A failing task (E.g. a timer task informing an observer which throws)
+	 * must not stop the reactor, as all communications served by the reactor would be stopped as well. */
+	private void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException runtimeException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, runtimeException));
+		}
+	}
+
+	/** Informs about an unexpected exception thrown while handling an I/O event, and closes the communication or
+	 * the connection attempt which has caused it. The other channels of the reactor are served as usual. */
+	private void fail(SelectionKey selectionKey, RuntimeException runtimeException) {
+		Object attachment = selectionKey.attachment();
+
+		// The observers are informed last, as they may throw again
+		if (attachment instanceof Communication) {
+			Communication communication = (Communication) attachment;
+			communication.close();
+			communication.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, runtimeException));
+		} else if (attachment instanceof CommunicationConnector.Peer) {
+			// The connection attempt is closed and retried later, as if it had failed
+			((CommunicationConnector.Peer) attachment).fail(runtimeException);
+		} else {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, runtimeException));
+		}
+	}
+
+	/** Dispatches a single I/O event to the corresponding CommunicationManager, connection attempt or Communication */
+	private void handle(SelectionKey selectionKey) {
+		if (selectionKey.attachment() instanceof CommunicationManager) {
+			((CommunicationManager) selectionKey.attachment()).acceptCommunications();
+			return;
+		}
+
+		if (selectionKey.attachment() instanceof CommunicationConnector.Peer) {
+			((CommunicationConnector.Peer) selectionKey.attachment()).finishConnect(selectionKey);
+			return;
+		}
+
+		serve((Communication) selectionKey.attachment(), selectionKey.isReadable(), selectionKey.isWritable());
+	}
+
+	/** Reads the messages received by a communication whose transport is readable, and writes its pending messages
+	 * if the transport is writable. Called by the reactor thread, either for a selected key or by a transport
+	 * without selectable channel. */
+	void serve(Communication communication, boolean readable, boolean writable) {
+		try {
+			if (readable && communication.readMessages() < 0) {
+				communication.close();
+				return;
+			}
+
+			if (writable && communication.getTransport().isConnected()) {
+				communication.flushPendingWrites();
+			}
+		} catch (IOException ioException) {
+			communication.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+			communication.close();
+		} catch (RuntimeException runtimeException) {
+			// Includes CommunicationExceptions as well as exceptions thrown by observers and request handlers
+			communication.close();
+			communication.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, runtimeException));
+		} finally {
+			communication.completeSendFutures();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** The communications managed by a CommunicationManager, indexed by their remote socket address (IP address and port) 
+ * and by their remote IP address. Lookups and iterations never lock, so that messages can be sent while 
+ * communications are being added or removed. Several communications may share the same IP address. */
+class CommunicationRegistry {
+	private final ConcurrentMap<InetSocketAddress, Communication> communicationsBySocketAddress = 
+			new ConcurrentHashMap<InetSocketAddress, Communication>();
+	/** Immutable lists which are replaced as a whole whenever a communication is added or removed */
+	private final ConcurrentMap<String, List<Communication>> communicationsByHostAddress = 
+			new ConcurrentHashMap<String, List<Communication>>();
+
+	synchronized void add(Communication communication) {
+		communicationsBySocketAddress.put(communication.getRemoteSocketAddress(), communication);
+
+		List<Communication> communications = new ArrayList<Communication>(get(communication.getClientAddress()));
+		communications.add(communication);
+		communicationsByHostAddress.put(communication.getClientAddress(), Collections.unmodifiableList(communications));
+	}
+
+	synchronized void remove(Communication communication) {
+		if (!communicationsBySocketAddress.remove(communication.getRemoteSocketAddress(), communication)) {
+			return;
+		}
+
+		List<Communication> communications = new ArrayList<Communication>(get(communication.getClientAddress()));
+		communications.remove(communication);
+
+		if (communications.isEmpty()) {
+			communicationsByHostAddress.remove(communication.getClientAddress());
+		} else {
+			communicationsByHostAddress.put(communication.getClientAddress(), Collections.unmodifiableList(communications));
+		}
+	}
+
+	/** Returns the communication with the given remote socket address, or null if there is none */
+	Communication get(InetSocketAddress socketAddress) {
+		return communicationsBySocketAddress.get(socketAddress);
+	}
+
+	/** Returns all communications with the given remote IP address */
+	List<Communication> get(String hostAddress) {
+		List<Communication> communications = communicationsByHostAddress.get(hostAddress);
+		return communications == null ? Collections.<Communication>emptyList() : communications;
+	}
+
+	/** Returns a weakly consistent view of all communications which may be iterated while communications are added or removed */
+	Collection<Communication> getAll() {
+		return communicationsBySocketAddress.values();
+	}
+}
@@ -0,0 +1,142 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/** A codec which separates messages using a message splitter. Every message is expected to start with the 
+ * message splitter, which remains part of the message content. Received bytes which do not start with the 
+ * message splitter are forwarded as a single message. Leading and trailing whitespace is ignored. A character
+ * whose UTF-8 encoding has only partially been received is left within the buffer until the next read.
+ * @see MessageFraming#DELIMITED */
+class DelimitedFrameCodec implements FrameCodec {
+	private final byte[] messageSplitter;
+
+	DelimitedFrameCodec(String messageSplitter) {
+		this.messageSplitter = messageSplitter.getBytes(Charset.forName("UTF-8"));
+	}
+
+	@Override
+	public int getHeaderLength() {
+		return 0;
+	}
+
+	@Override
+	public void writeHeader(ByteBuffer frame, byte frameType, int payloadLength) throws CommunicationException {
+		if (frameType != FrameType.MESSAGE) {
+			throw new CommunicationException("Only messages can be sent using delimited message framing!");
+		}
+	}
+
+	@Override
+	public void decode(ByteBuffer buffer, FrameHandler frameHandler) throws CommunicationException {
+		int start = buffer.position();
+		int end = endOfCompleteCharacters(buffer, start, buffer.limit());
+		int endOfReceivedBytes = end;
+
+		while (start < end && isWhitespace(buffer.get(start))) {
+			start++;
+		}
+
+		while (end > start && isWhitespace(buffer.get(end - 1))) {
+			end--;
+		}
+
+		if (start < end) {
+			if (messageSplitter.length == 0 || indexOfMessageSplitter(buffer, start, end) != start) {
+				handleMessage(buffer, start, end, frameHandler);
+			} else {
+				int messageStart = start;
+
+				while (messageStart < end) {
+					int messageEnd = indexOfMessageSplitter(buffer, messageStart + messageSplitter.length, end);
+
+					if (!isBlank(buffer, messageStart + messageSplitter.length, messageEnd)) {
+						handleMessage(buffer, messageStart, messageEnd, frameHandler);
+					}
+
+					messageStart = messageEnd;
+				}
+			}
+		}
+
+		buffer.position(endOfReceivedBytes);
+	}
+
+	/** Returns the end of the last complete UTF-8 character between start and end */
+	private static int endOfCompleteCharacters(ByteBuffer buffer, int start, int end) {
+		int leadingByteIndex = end - 1;
+		while (leadingByteIndex >= start && leadingByteIndex > end - 4 && (buffer.get(leadingByteIndex) & 0xC0) == 0x80) {
+			leadingByteIndex--;
+		}
+
+		if (leadingByteIndex < start) {
+			return end;
+		}
+
+		int leadingByte = buffer.get(leadingByteIndex) & 0xFF;
+		int characterLength = leadingByte >= 0xF0 ? 4 : leadingByte >= 0xE0 ? 3 : leadingByte >= 0xC0 ? 2 : 1;
+
+		return leadingByteIndex + characterLength > end ? leadingByteIndex : end;
+	}
+
+	/** Passes the bytes between start and end as message to the frame handler */
+	private void handleMessage(ByteBuffer buffer, int start, int end, FrameHandler frameHandler) {
+		ByteBuffer payload = buffer.duplicate();
+		payload.limit(end);
+		payload.position(start);
+
+		frameHandler.handleFrame(FrameType.MESSAGE, payload.slice());
+	}
+
+	/** Returns the index of the first message splitter between from and end, or end if there is none */
+	private int indexOfMessageSplitter(ByteBuffer buffer, int from, int end) {
+		for (int i = from; i <= end - messageSplitter.length; i++) {
+			int j = 0;
+			while (j < messageSplitter.length && buffer.get(i + j) == messageSplitter[j]) {
+				j++;
+			}
+
+			if (j == messageSplitter.length) {
+				return i;
+			}
+		}
+
+		return end;
+	}
+
+	private boolean isBlank(ByteBuffer buffer, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!isWhitespace(buffer.get(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/** Whitespace as defined by {@link String#trim()}. Bytes of multi-byte UTF-8 characters are never whitespace. */
+	private static boolean isWhitespace(byte b) {
+		return (b & 0xFF) <= ' ';
+	}
+}
@@ -0,0 +1,46 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+
+/** Converts frames into bytes that can be written to a channel and vice versa. A codec may keep state between
+ * two decode calls and must therefore be used by a single communication only.
+ * @see MessageFraming */
+interface FrameCodec {
+	/** Returns the number of bytes that must be reserved in front of the payload of every frame
+	 * @return the header length in bytes */
+	int getHeaderLength();
+
+	/** Writes the frame header into the reserved space at the beginning of the given frame. 
+	 * @param frame a buffer containing the reserved header space followed by the payload, starting at index 0
+	 * @param frameType the type of the frame
+	 * @param payloadLength the length of the payload in bytes
+	 * @throws CommunicationException if the frame cannot be represented using this codec */
+	void writeHeader(ByteBuffer frame, byte frameType, int payloadLength) throws CommunicationException;
+
+	/** Decodes all complete frames contained in the given buffer and passes them to the frame handler.
+	 * @param buffer a buffer containing the newly received bytes between its position and its limit 
+	 * @param frameHandler the handler to which all decoded frames are passed
+	 * @throws CommunicationException if the received bytes do not represent valid frames */
+	void decode(ByteBuffer buffer, FrameHandler frameHandler) throws CommunicationException;
+}
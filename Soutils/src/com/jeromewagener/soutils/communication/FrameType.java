@@ -0,0 +1,84 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** The frame types which can be exchanged by communications. The frame type is transmitted as a single byte
+ * in front of the payload of every length prefixed frame. */
+final class FrameType {
+	/** A frame carrying a UTF-8 encoded message that is forwarded to the observers */
+	static final byte MESSAGE = 0;
+	/** A frame carrying a request id followed by a UTF-8 encoded request that is answered by the request handler */
+	static final byte REQUEST = 1;
+	/** A frame carrying the id of the answered request followed by the UTF-8 encoded response */
+	static final byte RESPONSE = 2;
+	/** A frame carrying the id of a request which could not be answered followed by a UTF-8 encoded reason */
+	static final byte REQUEST_FAILURE = 3;
+	/** A heartbeat frame carrying the time at which it has been sent, which is answered by a PONG frame */
+	static final byte PING = 4;
+	/** The answer to a PING frame carrying the unmodified time of the PING frame */
+	static final byte PONG = 5;
+	/** A frame carrying the type id of a serialized object followed by the object */
+	static final byte OBJECT = 6;
+	/** A frame carrying a UTF-8 encoded topic pattern the sender subscribes to */
+	static final byte SUBSCRIBE = 7;
+	/** A frame carrying a UTF-8 encoded topic pattern the sender no longer subscribes to */
+	static final byte UNSUBSCRIBE = 8;
+	/** A frame carrying a 32 bit stream id followed by bytes of that stream */
+	static final byte STREAM_DATA = 9;
+	/** A frame carrying a 32 bit stream id followed by the 32 bit number of bytes the receiver has consumed */
+	static final byte STREAM_WINDOW_UPDATE = 10;
+	/** A frame carrying the 32 bit id of a stream to which the sender will not send any further bytes */
+	static final byte STREAM_CLOSE = 11;
+
+	/** A frame carrying the id of a reliable session followed by the sequence number of the last reliable message
+	 * received by the sender (Both encoded as variable length integers) and the secret token of the session, which
+	 * is exchanged after every connect. Clients send the id 0 to be issued a new session. */
+	static final byte RESUME = 12;
+	/** A frame carrying a sequence number, the number of newly acknowledged reliable messages and a message */
+	static final byte RELIABLE_MESSAGE = 13;
+	/** A frame carrying only the number of newly acknowledged reliable messages */
+	static final byte ACKNOWLEDGEMENT = 14;
+	/** A frame carrying the topic of a published message or object (as the variable length number of its UTF-8 
+	 * encoded bytes followed by the bytes), followed by the type and the payload of a MESSAGE or OBJECT frame */
+	static final byte PUBLISH = 15;
+	/** The answer of a CommunicationManager to a RESUME frame whose session it does not know (any more), carrying
+	 * the id of that session as a variable length integer. The client then resumes a new session. */
+	static final byte SESSION_UNKNOWN = 16;
+
+	/** The number of bytes of the stream id at the beginning of the payload of stream frames */
+	static final int STREAM_ID_LENGTH = 4;
+
+	/** The number of bytes of the secret token at the end of the payload of RESUME frames */
+	static final int SESSION_TOKEN_LENGTH = 16;
+
+	/** The number of bytes of the identifier at the beginning of the payload of identified frames */
+	static final int IDENTIFIER_LENGTH = 8;
+
+	/** Returns true if the payload of frames of the given type starts with a 64 bit identifier. The identifier is
+	 * either a request id or the send time of a PING frame. */
+	static boolean isIdentified(byte frameType) {
+		return frameType >= REQUEST && frameType <= PONG;
+	}
+
+	private FrameType() {
+	}
+}
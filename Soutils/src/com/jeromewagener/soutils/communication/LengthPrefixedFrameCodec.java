@@ -0,0 +1,75 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** A codec which precedes every frame with its length. A frame consists of a four byte (big-endian) length 
+ * followed by a single frame type byte and the payload. The length covers the frame type and the payload.
+ * Frames are decoded incrementally: Incomplete frames are left within the buffer until the remaining bytes 
+ * have been received, and the payload itself is never inspected.
+ * @see MessageFraming#LENGTH_PREFIXED */
+class LengthPrefixedFrameCodec implements FrameCodec {
+	/** The length field followed by the frame type */
+	static final int HEADER_LENGTH = 5;
+
+	@Override
+	public int getHeaderLength() {
+		return HEADER_LENGTH;
+	}
+
+	@Override
+	public void writeHeader(ByteBuffer frame, byte frameType, int payloadLength) throws CommunicationException {
+		if (payloadLength + 1 > Parameters.COMMUNICATION_MAXIMUM_FRAME_SIZE_IN_BYTES) {
+			throw new CommunicationException("The message exceeds the maximum frame size!");
+		}
+
+		frame.putInt(0, payloadLength + 1);
+		frame.put(4, frameType);
+	}
+
+	@Override
+	public void decode(ByteBuffer buffer, FrameHandler frameHandler) throws CommunicationException {
+		while (buffer.remaining() >= 4) {
+			int frameStart = buffer.position();
+			int frameLength = buffer.getInt(frameStart);
+
+			if (frameLength < 1 || frameLength > Parameters.COMMUNICATION_MAXIMUM_FRAME_SIZE_IN_BYTES) {
+				throw new CommunicationException("Invalid frame length: " + frameLength);
+			}
+
+			if (buffer.remaining() < 4 + frameLength) {
+				// Leave the incomplete frame within the buffer until its remaining bytes have been received
+				return;
+			}
+
+			ByteBuffer payload = buffer.duplicate();
+			payload.limit(frameStart + 4 + frameLength);
+			payload.position(frameStart + HEADER_LENGTH);
+			buffer.position(frameStart + 4 + frameLength);
+
+			frameHandler.handleFrame(buffer.get(frameStart + 4), payload.slice());
+		}
+	}
+}
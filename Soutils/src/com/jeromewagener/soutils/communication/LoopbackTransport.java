@@ -0,0 +1,343 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** One end of a pair of transports connected to each other within the same JVM, which allows two communications to 
+ * exchange frames without a socket. The bytes written into one end are copied into chunks, which are queued until
+ * the other end reads them. As with a socket send buffer, at most 
+ * {@link Parameters#COMMUNICATION_LOOPBACK_BUFFER_SIZE_IN_BYTES} bytes are queued per direction, so that the 
+ * outbound queue of a communication fills up as usual if its peer reads too slowly. Instead of a selector, the
+ * reactor serving an end is handed a task whenever the end becomes readable or writable.
+ * 
+ * Every direction has a single writer (the communication holding its lock) and a single reader, so that the chunks
+ * and their number of bytes are exchanged through a lock-free queue and an atomic counter. The lock shared by both 
+ * ends is only taken by blocking ends waiting for bytes or space, and by the other end to wake them up.
+ * @see CommunicationManager#connectLoopback(com.jeromewagener.soutils.messaging.SoutilsObserver) */
+final class LoopbackTransport implements Transport {
+	/** The ports assigned to the client ends, which are taken from the range of ephemeral ports */
+	private static final int FIRST_EPHEMERAL_PORT = 49152;
+	private static final int NUMBER_OF_EPHEMERAL_PORTS = 65536 - FIRST_EPHEMERAL_PORT;
+	private static final AtomicInteger nextEphemeralPort = new AtomicInteger();
+
+	/** The lock on which blocking ends wait, and the number of threads waiting on it */
+	private final Object lock;
+	private final AtomicInteger numberOfWaitingThreads;
+	private final InetSocketAddress remoteAddress;
+	private LoopbackTransport peer;
+	/** The chunks written by the peer which have not yet been read, and their total number of bytes */
+	private final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger numberOfQueuedBytes = new AtomicInteger();
+	private volatile boolean blocking = false;
+	private volatile boolean closed = false;
+	/** True once the peer has been closed, so that reads return -1 after the last chunk */
+	private volatile boolean endOfStream = false;
+	/** The reactor serving this end, the communication it serves and the readiness reported to it */
+	private volatile CommunicationReactor reactor = null;
+	private volatile Communication communication = null;
+	private volatile int interestOps = 0;
+	/** True while a task serving the communication is waiting to be executed by the reactor */
+	private final AtomicBoolean readinessScheduled = new AtomicBoolean();
+	private final Runnable readiness = new Runnable() {
+		@Override
+		public void run() {
+			// Cleared first, so that any change from now on schedules the task again
+			readinessScheduled.set(false);
+
+			boolean readable = isReadable();
+			boolean writable = isWritable();
+
+			if (readable || writable) {
+				reactor.serve(communication, readable, writable);
+			}
+
+			// As with a selector, readiness is reported until all bytes have been read or written
+			scheduleReadiness();
+		}
+	};
+
+	private LoopbackTransport(Object lock, AtomicInteger numberOfWaitingThreads, InetSocketAddress remoteAddress) {
+		this.lock = lock;
+		this.numberOfWaitingThreads = numberOfWaitingThreads;
+		this.remoteAddress = remoteAddress;
+	}
+
+	/** Opens two transports connected to each other. The first one is the client end, whose remote address is the 
+	 * given server address, and the second one is the server end, whose remote address is a loopback address with
+	 * an ephemeral port. */
+	static LoopbackTransport[] openPair(InetSocketAddress serverAddress) {
+		int port = FIRST_EPHEMERAL_PORT + (nextEphemeralPort.getAndIncrement() & Integer.MAX_VALUE) % NUMBER_OF_EPHEMERAL_PORTS;
+		InetSocketAddress clientAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+		Object lock = new Object();
+		AtomicInteger numberOfWaitingThreads = new AtomicInteger();
+
+		LoopbackTransport clientTransport = new LoopbackTransport(lock, numberOfWaitingThreads, serverAddress);
+		LoopbackTransport serverTransport = new LoopbackTransport(lock, numberOfWaitingThreads, clientAddress);
+		clientTransport.peer = serverTransport;
+		serverTransport.peer = clientTransport;
+
+		return new LoopbackTransport[] { clientTransport, serverTransport };
+	}
+
+	@Override
+	public InetSocketAddress getRemoteSocketAddress() {
+		return remoteAddress;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return !closed;
+	}
+
+	@Override
+	public void configureBlocking(boolean blocking) {
+		this.blocking = blocking;
+	}
+
+	@Override
+	public int read(ByteBuffer buffer) throws IOException {
+		ensureOpen();
+
+		if (blocking) {
+			awaitChunks();
+		}
+
+		// The end of the stream is only set after the last chunk has been queued
+		boolean peerClosed = endOfStream;
+		if (chunks.isEmpty()) {
+			return peerClosed ? -1 : 0;
+		}
+
+		int numberOfBytesRead = 0;
+		ByteBuffer chunk;
+
+		while (buffer.hasRemaining() && (chunk = chunks.peek()) != null) {
+			numberOfBytesRead += transfer(chunk, buffer);
+
+			if (!chunk.hasRemaining()) {
+				chunks.poll();
+			}
+		}
+
+		// The peer may write again
+		numberOfQueuedBytes.addAndGet(-numberOfBytesRead);
+		wakeUpWaitingThreads();
+		peer.scheduleReadiness();
+
+		return numberOfBytesRead;
+	}
+
+	@Override
+	public long write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+		long numberOfBytesToWrite = 0;
+		for (int i=offset; i<offset+length; i++) {
+			numberOfBytesToWrite += buffers[i].remaining();
+		}
+
+		long numberOfBytesWritten = 0;
+
+		while (true) {
+			ensureOpen();
+
+			if (peer.closed) {
+				throw new IOException("The connection has been closed by the remote device!");
+			}
+
+			int space = Parameters.COMMUNICATION_LOOPBACK_BUFFER_SIZE_IN_BYTES - peer.numberOfQueuedBytes.get();
+			if (space > 0 && numberOfBytesWritten < numberOfBytesToWrite) {
+				numberOfBytesWritten += peer.enqueue(buffers, offset, length, 
+						(int) Math.min(numberOfBytesToWrite - numberOfBytesWritten, space));
+			}
+
+			// As a blocking socket channel, a blocking transport writes all bytes
+			if (!blocking || numberOfBytesWritten == numberOfBytesToWrite) {
+				return numberOfBytesWritten;
+			}
+
+			awaitSpace();
+		}
+	}
+
+	/** Queues a copy of the given number of bytes and informs the reader
+	 * @return the number of queued bytes */
+	private int enqueue(ByteBuffer[] buffers, int offset, int length, int numberOfBytes) {
+		ByteBuffer chunk = ByteBuffer.allocate(numberOfBytes);
+		for (int i=offset; i<offset+length && chunk.hasRemaining(); i++) {
+			transfer(buffers[i], chunk);
+		}
+
+		chunk.flip();
+		numberOfQueuedBytes.addAndGet(numberOfBytes);
+		chunks.add(chunk);
+
+		wakeUpWaitingThreads();
+		scheduleReadiness();
+
+		return numberOfBytes;
+	}
+
+	/** Copies as many bytes as the target has space for
+	 * @return the number of copied bytes */
+	private static int transfer(ByteBuffer source, ByteBuffer target) {
+		int length = Math.min(source.remaining(), target.remaining());
+		int limit = source.limit();
+
+		source.limit(source.position() + length);
+		target.put(source);
+		source.limit(limit);
+
+		return length;
+	}
+
+	@Override
+	public void register(CommunicationReactor reactor, Communication communication) throws IOException {
+		ensureOpen();
+
+		this.reactor = reactor;
+		this.communication = communication;
+		this.interestOps = SelectionKey.OP_READ;
+
+		scheduleReadiness();
+	}
+
+	@Override
+	public void setInterestOps(int interestOps) {
+		this.interestOps = interestOps;
+		scheduleReadiness();
+	}
+
+	/** Hands a task serving the communication over to the reactor, unless the communication is neither readable 
+	 * nor writable or such a task is already waiting */
+	private void scheduleReadiness() {
+		CommunicationReactor currentReactor = reactor;
+
+		if (currentReactor != null && (isReadable() || isWritable()) && readinessScheduled.compareAndSet(false, true)) {
+			currentReactor.execute(readiness);
+		}
+	}
+
+	private boolean isReadable() {
+		return !closed && (interestOps & SelectionKey.OP_READ) != 0 && (!chunks.isEmpty() || endOfStream);
+	}
+
+	/** A closed peer is reported as writable, so that the next write fails as it would for a socket */
+	private boolean isWritable() {
+		return !closed && (interestOps & SelectionKey.OP_WRITE) != 0 
+				&& (peer.closed || peer.numberOfQueuedBytes.get() < Parameters.COMMUNICATION_LOOPBACK_BUFFER_SIZE_IN_BYTES);
+	}
+
+	@Override
+	public void close() {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+		}
+
+		chunks.clear();
+		numberOfQueuedBytes.set(0);
+		peer.endOfStream = true;
+
+		// Wake up the threads of both ends, and let the peer read the end of the stream
+		wakeUpWaitingThreads();
+		peer.scheduleReadiness();
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (closed) {
+			throw new ClosedChannelException();
+		}
+	}
+
+	/** Waits until chunks have been queued or the peer has been closed */
+	private void awaitChunks() throws IOException {
+		synchronized (lock) {
+			numberOfWaitingThreads.incrementAndGet();
+
+			try {
+				while (chunks.isEmpty() && !endOfStream && !closed) {
+					await();
+				}
+			} finally {
+				numberOfWaitingThreads.decrementAndGet();
+			}
+		}
+
+		if (closed) {
+			throw new AsynchronousCloseException();
+		}
+	}
+
+	/** Waits until the peer has read queued bytes or either end has been closed */
+	private void awaitSpace() throws IOException {
+		synchronized (lock) {
+			numberOfWaitingThreads.incrementAndGet();
+
+			try {
+				while (peer.numberOfQueuedBytes.get() >= Parameters.COMMUNICATION_LOOPBACK_BUFFER_SIZE_IN_BYTES 
+						&& !peer.closed && !closed) {
+					await();
+				}
+			} finally {
+				numberOfWaitingThreads.decrementAndGet();
+			}
+		}
+	}
+
+	/** Waits for the peer to read, write or close. Must be called while holding the lock. */
+	private void await() throws InterruptedIOException {
+		try {
+			lock.wait();
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the loopback connection!");
+		}
+	}
+
+	/** Wakes up the threads of blocking ends after bytes have been queued or read, or an end has been closed. The 
+	 * waiting threads announce themselves before checking their condition, so that the lock is only taken if one of
+	 * them may have missed the change. */
+	private void wakeUpWaitingThreads() {
+		if (numberOfWaitingThreads.get() > 0) {
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+		}
+	}
+}
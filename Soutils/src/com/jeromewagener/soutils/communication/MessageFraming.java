@@ -0,0 +1,49 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** An enumeration of the different ways messages can be separated from each other on the wire. Both sides
+ * of a communication must use the same message framing. */
+public enum MessageFraming {
+	/** Messages are separated using the {@link Parameters#messageSplitter}. This is the default framing and 
+	 * requires every message to start with the message splitter. Messages which contain the message splitter 
+	 * within their content cannot be transmitted. */
+	DELIMITED {
+		@Override
+		FrameCodec createFrameCodec() {
+			return new DelimitedFrameCodec(Parameters.messageSplitter);
+		}
+	},
+	/** Every message is preceded by its length. Messages are decoded incrementally, may span several reads and
+	 * may contain arbitrary content, as the message content itself is never scanned for separators. */
+	LENGTH_PREFIXED {
+		@Override
+		FrameCodec createFrameCodec() {
+			return new LengthPrefixedFrameCodec();
+		}
+	};
+
+	/** Creates a new codec instance. Codecs are stateful and must not be shared between communications. */
+	abstract FrameCodec createFrameCodec();
+}
@@ -0,0 +1,100 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+
+/** The payload of a received message, which refers to the bytes within the receive buffer of the communication
+ * instead of a copy of them. The message is only decoded if its content is requested. A single payload instance 
+ * is reused for all messages received by a communication, so that it is only valid during 
+ * {@link PayloadObserver#handlePayload(MessagePayload)}.
+ * @see PayloadObserver */
+public final class MessagePayload {
+	private final Communication communication;
+	/** The bytes of the current message, or null outside of handlePayload */
+	private ByteBuffer payload = null;
+	private String content = null;
+	private String topic = null;
+
+	MessagePayload(Communication communication) {
+		this.communication = communication;
+	}
+
+	/** Returns the communication which has received the message. (E.g. in order to answer it) */
+	public Communication getCommunication() {
+		return communication;
+	}
+
+	/** Returns the IP address of the device which has sent the message */
+	public String getSenderAddress() {
+		return communication.getClientAddress();
+	}
+
+	/** Returns the topic to which the message has been published, or null if it has been sent directly
+	 * @see CommunicationManager#publish(String, String) */
+	public String getTopic() {
+		currentPayload();
+
+		return topic;
+	}
+
+	/** Returns a read-only view of the UTF-8 encoded bytes of the message. Every call returns a new view, so that
+	 * several observers can read the bytes independently of each other.
+	 * @return the bytes of the message between the position and the limit of the returned buffer
+	 * @see Communication#sendMessage(ByteBuffer) */
+	public ByteBuffer getBuffer() {
+		return currentPayload().asReadOnlyBuffer();
+	}
+
+	/** Returns the number of bytes of the message */
+	public int getLength() {
+		return currentPayload().remaining();
+	}
+
+	/** Decodes the message upon the first call and returns the decoded message from then on */
+	public String getContent() {
+		if (content == null) {
+			ByteBuffer currentPayload = currentPayload();
+			int position = currentPayload.position();
+
+			content = Utf8Coders.decode(currentPayload);
+			currentPayload.position(position);
+		}
+
+		return content;
+	}
+
+	/** Refers to the given bytes and topic until the next call */
+	void reset(ByteBuffer payload, String topic) {
+		this.payload = payload;
+		this.content = null;
+		this.topic = topic;
+	}
+
+	private ByteBuffer currentPayload() {
+		if (payload == null) {
+			throw new IllegalStateException("A message payload must only be used while it is being handled!");
+		}
+
+		return payload;
+	}
+}
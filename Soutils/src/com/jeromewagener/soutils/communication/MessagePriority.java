@@ -0,0 +1,50 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** An enumeration of the priority classes of sent messages. Every class is queued separately, and the queued 
+ * messages are written in weighted turns, so that urgent messages overtake bulk data sent beforehand. Messages 
+ * of the same priority are always received in the order in which they have been sent.
+ * @see Communication#sendMessage(String, MessagePriority) */
+public enum MessagePriority {
+	/** Small control messages (E.g. shutdown or membership updates). They are neither delayed by lingering nor 
+	 * by the overflow policy, and are also used for heartbeats. */
+	HIGH(Parameters.COMMUNICATION_HIGH_PRIORITY_WEIGHT),
+	/** Regular messages, requests and responses. (The default) */
+	NORMAL(Parameters.COMMUNICATION_NORMAL_PRIORITY_WEIGHT),
+	/** Bulk data which may be delayed in favour of all other messages */
+	LOW(Parameters.COMMUNICATION_LOW_PRIORITY_WEIGHT);
+
+	private final int weight;
+
+	private MessagePriority(int weight) {
+		this.weight = weight;
+	}
+
+	/** Returns the maximum number of messages of this priority written per scheduling round
+	 * @return the weight of this priority */
+	public int getWeight() {
+		return weight;
+	}
+}
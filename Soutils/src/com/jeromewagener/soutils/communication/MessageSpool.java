@@ -0,0 +1,329 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** A durable store-and-forward spool for messages sent to peers which are currently not connected. The messages
+ * of every peer are appended to a log of memory-mapped segment files within a subdirectory of the spool directory,
+ * and replayed in order as soon as the peer reconnects. Messages survive a crash of the process, and every 
+ * segment is forced to the storage device once it is full. 
+ * 
+ * The spool of every peer is limited in size and age: once the segments of a peer exceed the maximum size, the 
+ * oldest segments are deleted, and messages older than the maximum age are never replayed.
+ * @see CommunicationManager#setMessageSpool(MessageSpool) */
+public class MessageSpool {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String SEGMENT_SUFFIX = ".spool";
+	/** The first four bytes of every segment ("SPOL") */
+	private static final int MAGIC = 0x53504F4C;
+	/** The offset of the read offset within a segment, which is updated as messages are replayed */
+	private static final int READ_OFFSET_POSITION = 4;
+	private static final int SEGMENT_HEADER_LENGTH = 8;
+	/** Every record consists of the length of the message plus one, the time it has been spooled at and the message
+	 * itself. The length is written last, so that a record is never read before it has been written completely, and
+	 * is incremented so that empty messages can be told apart from records which have not been written. */
+	private static final int RECORD_HEADER_LENGTH = 4 + 8;
+
+	private final File directory;
+	private final long maximumSizeInBytesPerPeer;
+	private final long maximumAgeInMilliseconds;
+	/** The logs of all peers which have been accessed so far, by peer address */
+	private final Map<String, List<Segment>> logs = new HashMap<String, List<Segment>>();
+
+	/** Opens the spool stored within the given directory. Messages spooled by a previous process are replayed 
+	 * as well.
+	 * @param directory the directory containing the spooled messages, which is created if necessary
+	 * @param maximumSizeInBytesPerPeer the maximum size of the segments of a single peer, beyond which the oldest 
+	 * segments are deleted. The most recent segment is always kept.
+	 * @param maximumAgeInMilliseconds the time after which spooled messages are discarded, or 0 to keep messages
+	 * until the maximum size is exceeded
+	 * @throws IOException if the directory cannot be created */
+	public MessageSpool(File directory, long maximumSizeInBytesPerPeer, long maximumAgeInMilliseconds) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("The spool directory " + directory + " cannot be created!");
+		}
+
+		this.directory = directory;
+		this.maximumSizeInBytesPerPeer = maximumSizeInBytesPerPeer;
+		this.maximumAgeInMilliseconds = maximumAgeInMilliseconds;
+	}
+
+	/** Appends a message to the log of the given peer
+	 * @param peerAddress the IP address of the peer
+	 * @param messageContent the message to be replayed once the peer reconnects
+	 * @throws IOException if the message cannot be written */
+	public synchronized void append(String peerAddress, String messageContent) throws IOException {
+		byte[] message = messageContent.getBytes(UTF_8);
+		int recordLength = RECORD_HEADER_LENGTH + message.length;
+		List<Segment> segments = getLog(peerAddress);
+		Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+
+		if (tail == null || tail.map.capacity() - tail.writePosition < recordLength) {
+			if (tail != null) {
+				tail.map.force();
+			}
+
+			long sequence = tail == null ? 0 : tail.sequence + 1;
+			tail = createSegment(peerAddress, sequence, Math.max(Parameters.COMMUNICATION_SPOOL_SEGMENT_SIZE_IN_BYTES, 
+					SEGMENT_HEADER_LENGTH + recordLength));
+			segments.add(tail);
+		}
+
+		long now = System.currentTimeMillis();
+		tail.map.putLong(tail.writePosition + 4, now);
+		tail.map.position(tail.writePosition + RECORD_HEADER_LENGTH);
+		tail.map.put(message);
+		tail.map.putInt(tail.writePosition, message.length + 1);
+		tail.writePosition += recordLength;
+		tail.newestTimestamp = now;
+
+		applyRetention(segments, now);
+	}
+
+	/** Queues all messages spooled for the given peer which have not yet expired, in the order in which they have 
+	 * been spooled. The messages are queued without waiting for the outbound queue to be drained, and are written
+	 * by the thread serving the communication. Replayed messages are removed from the spool. If a message cannot 
+	 * be queued, the replay stops and the remaining messages are kept.
+	 * @return the number of replayed messages */
+	synchronized int replay(String peerAddress, Communication communication) throws CommunicationException {
+		List<Segment> segments;
+
+		try {
+			segments = getLog(peerAddress);
+		} catch (IOException ioException) {
+			throw new CommunicationException("The spooled messages could not be loaded!", ioException);
+		}
+
+		long oldestTimestamp = maximumAgeInMilliseconds > 0 ? System.currentTimeMillis() - maximumAgeInMilliseconds : Long.MIN_VALUE;
+		int numberOfReplayedMessages = 0;
+
+		while (!segments.isEmpty()) {
+			Segment segment = segments.get(0);
+			int readOffset = segment.map.getInt(READ_OFFSET_POSITION);
+
+			while (readOffset < segment.writePosition) {
+				int messageLength = segment.map.getInt(readOffset) - 1;
+
+				if (segment.map.getLong(readOffset + 4) >= oldestTimestamp) {
+					byte[] message = new byte[messageLength];
+					segment.map.position(readOffset + RECORD_HEADER_LENGTH);
+					segment.map.get(message);
+					communication.queueSpooledMessage(new String(message, UTF_8));
+					numberOfReplayedMessages++;
+				}
+
+				readOffset += RECORD_HEADER_LENGTH + messageLength;
+				segment.map.putInt(READ_OFFSET_POSITION, readOffset);
+			}
+
+			delete(segments.remove(0));
+		}
+
+		logs.remove(peerAddress);
+
+		return numberOfReplayedMessages;
+	}
+
+	/** Returns the number of bytes occupied by the segments of the given peer
+	 * @param peerAddress the IP address of the peer */
+	public synchronized long getNumberOfSpooledBytes(String peerAddress) {
+		long numberOfSpooledBytes = 0;
+
+		try {
+			for (Segment segment : getLog(peerAddress)) {
+				numberOfSpooledBytes += segment.map.capacity();
+			}
+		} catch (IOException ioException) {
+			return 0;
+		}
+
+		return numberOfSpooledBytes;
+	}
+
+	/** Deletes the oldest segments while the log exceeds the maximum size, and all segments containing expired
+	 * messages only */
+	private void applyRetention(List<Segment> segments, long now) {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.map.capacity();
+		}
+
+		while (segments.size() > 1 && size > maximumSizeInBytesPerPeer) {
+			Segment oldestSegment = segments.remove(0);
+			size -= oldestSegment.map.capacity();
+			delete(oldestSegment);
+		}
+
+		while (!segments.isEmpty() && maximumAgeInMilliseconds > 0 
+				&& segments.get(0).newestTimestamp < now - maximumAgeInMilliseconds) {
+			delete(segments.remove(0));
+		}
+	}
+
+	/** Returns the segments of the given peer, which are loaded from the spool directory on first access */
+	private List<Segment> getLog(String peerAddress) throws IOException {
+		List<Segment> segments = logs.get(peerAddress);
+		if (segments != null) {
+			return segments;
+		}
+
+		segments = new ArrayList<Segment>();
+		File[] files = getPeerDirectory(peerAddress).listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File directory, String name) {
+				return name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+
+		if (files != null) {
+			// The zero padded sequence numbers sort the segments in the order in which they have been written
+			Arrays.sort(files);
+
+			for (File file : files) {
+				Segment segment = loadSegment(file);
+
+				if (segment != null) {
+					segments.add(segment);
+				}
+			}
+		}
+
+		logs.put(peerAddress, segments);
+
+		return segments;
+	}
+
+	private File getPeerDirectory(String peerAddress) {
+		// IPv6 addresses contain colons, which are not allowed within file names on every platform
+		return new File(directory, peerAddress.replaceAll("[^A-Za-z0-9.-]", "_"));
+	}
+
+	private Segment createSegment(String peerAddress, long sequence, int size) throws IOException {
+		File peerDirectory = getPeerDirectory(peerAddress);
+		if (!peerDirectory.isDirectory() && !peerDirectory.mkdirs()) {
+			throw new IOException("The spool directory " + peerDirectory + " cannot be created!");
+		}
+
+		Segment segment = new Segment();
+		segment.file = new File(peerDirectory, String.format("%020d", sequence) + SEGMENT_SUFFIX);
+		segment.sequence = sequence;
+		segment.map = map(segment.file, size);
+		segment.map.putInt(READ_OFFSET_POSITION, SEGMENT_HEADER_LENGTH);
+		segment.map.putInt(0, MAGIC);
+		segment.writePosition = SEGMENT_HEADER_LENGTH;
+
+		return segment;
+	}
+
+	/** Maps an existing segment and finds the end of its records. Invalid and completely replayed segments are 
+	 * deleted, and null is returned. */
+	private Segment loadSegment(File file) throws IOException {
+		String name = file.getName();
+		long sequence;
+
+		try {
+			sequence = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException numberFormatException) {
+			return null;
+		}
+
+		if (file.length() < SEGMENT_HEADER_LENGTH || file.length() > Integer.MAX_VALUE) {
+			file.delete();
+			return null;
+		}
+
+		Segment segment = new Segment();
+		segment.file = file;
+		segment.sequence = sequence;
+		segment.map = map(file, (int) file.length());
+
+		int readOffset = segment.map.getInt(READ_OFFSET_POSITION);
+		if (segment.map.getInt(0) != MAGIC || readOffset < SEGMENT_HEADER_LENGTH || readOffset > segment.map.capacity()) {
+			delete(segment);
+			return null;
+		}
+
+		int position = SEGMENT_HEADER_LENGTH;
+		while (segment.map.capacity() - position >= RECORD_HEADER_LENGTH) {
+			int messageLength = segment.map.getInt(position) - 1;
+
+			// A record whose length has not been written is incomplete, and marks the end of the segment
+			if (messageLength < 0 || messageLength > segment.map.capacity() - position - RECORD_HEADER_LENGTH) {
+				break;
+			}
+
+			segment.newestTimestamp = segment.map.getLong(position + 4);
+			position += RECORD_HEADER_LENGTH + messageLength;
+		}
+
+		segment.writePosition = position;
+
+		if (readOffset >= segment.writePosition) {
+			delete(segment);
+			return null;
+		}
+
+		return segment;
+	}
+
+	private static MappedByteBuffer map(File file, int size) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+		try {
+			// The mapping remains valid after the file has been closed
+			return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+
+	/** Deletes a segment file. Platforms which do not allow deleting mapped files keep the file until it is 
+	 * loaded again, which is harmless as its read offset marks all of its messages as replayed. */
+	private static void delete(Segment segment) {
+		segment.map.putInt(READ_OFFSET_POSITION, segment.writePosition);
+		segment.file.delete();
+	}
+
+	/** A memory-mapped segment file containing the records between the segment header and the write position */
+	private static final class Segment {
+		private File file;
+		private long sequence;
+		private MappedByteBuffer map;
+		private int writePosition;
+		/** The time at which the newest record has been spooled */
+		private long newestTimestamp;
+	}
+}
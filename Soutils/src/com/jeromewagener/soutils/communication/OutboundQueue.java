@@ -0,0 +1,333 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** The encoded frames of a communication which are waiting to be written. Frames are queued in one lane per
+ * {@link MessagePriority}, in the order in which they have been sent. The lanes are drained by a weighted round 
+ * robin scheduler which takes up to {@link MessagePriority#getWeight()} frames from every lane per round, starting
+ * with the most urgent lane, so that urgent frames are never stuck behind bulk data while bulk data still makes 
+ * progress. A frame which has been written partially is always finished first. Queued frames are written using 
+ * gathering writes, so that many small frames only require a single system call. The queue is not thread-safe 
+ * and must be guarded by its communication. */
+class OutboundQueue {
+	/** The maximum number of queue entries kept for reuse */
+	private static final int MAXIMUM_NUMBER_OF_UNUSED_ENTRIES = 64;
+	private static final MessagePriority[] PRIORITIES = MessagePriority.values();
+
+	private final Lane[] lanes = new Lane[PRIORITIES.length];
+	/** The number of frames every lane may still contribute within the current scheduling round */
+	private final int[] credits = new int[PRIORITIES.length];
+	private int numberOfEntries = 0;
+	private final Queue<Entry> unusedEntries = new ArrayDeque<Entry>();
+	private final ByteBuffer[] gatheredFrames = new ByteBuffer[Parameters.COMMUNICATION_MAXIMUM_FRAMES_PER_WRITE];
+	/** The entries of the gathered frames, in the order in which they are written */
+	private final Entry[] gatheredEntries = new Entry[Parameters.COMMUNICATION_MAXIMUM_FRAMES_PER_WRITE];
+	private long numberOfQueuedBytes = 0;
+	private int numberOfGatheredFrames = 0;
+	private long numberOfGatheredBytes = 0;
+	/** The lane whose first frame has been written partially, or -1 */
+	private int partiallyWrittenLane = -1;
+	/** The futures of frames which have been written completely, but whose senders have not yet been notified */
+	private final Queue<SendFuture> completedSendFutures = new ArrayDeque<SendFuture>();
+	/** The futures of frames which have been discarded along with the causes with which they fail */
+	private final Queue<SendFuture> discardedSendFutures = new ArrayDeque<SendFuture>();
+	private final Queue<CommunicationException> discardCauses = new ArrayDeque<CommunicationException>();
+
+	OutboundQueue() {
+		for (int i=0; i<lanes.length; i++) {
+			lanes[i] = new Lane();
+		}
+
+		refillCredits();
+	}
+
+	/** Appends a frame with normal priority. The frame must have been acquired from the default buffer pool. 
+	 * @param sendFuture the future to be completed once the frame has been written, or null */
+	void add(ByteBuffer frame, SendFuture sendFuture) {
+		add(frame, null, sendFuture, MessagePriority.NORMAL);
+	}
+
+	/** Appends a frame to the lane of the given priority. The frame must have been acquired from the default buffer pool. 
+	 * @param sendFuture the future to be completed once the frame has been written, or null */
+	void add(ByteBuffer frame, SendFuture sendFuture, MessagePriority messagePriority) {
+		add(frame, null, sendFuture, messagePriority);
+	}
+
+	/** Appends a view of a shared frame. The view is released as soon as it has been written. */
+	void add(SharedFrame sharedFrame, MessagePriority messagePriority) {
+		add(sharedFrame.retain(), sharedFrame, null, messagePriority);
+	}
+
+	private void add(ByteBuffer frame, SharedFrame sharedFrame, SendFuture sendFuture, MessagePriority messagePriority) {
+		Entry entry = unusedEntries.poll();
+		if (entry == null) {
+			entry = new Entry();
+		}
+
+		entry.frame = frame;
+		entry.sharedFrame = sharedFrame;
+		entry.sendFuture = sendFuture;
+		entry.lane = messagePriority.ordinal();
+		entry.length = frame.remaining();
+
+		lanes[entry.lane].add(entry);
+		numberOfEntries++;
+		numberOfQueuedBytes += entry.length;
+	}
+
+	/** Writes as many frames as the transport currently accepts without blocking. Up to 
+	 * {@link Parameters#COMMUNICATION_MAXIMUM_FRAMES_PER_WRITE} frames are written at once. Frames which have been
+	 * written completely are released and their futures can be obtained using {@link #takeSendFutures(List, List, List)}. */
+	void writeTo(Transport transport) throws IOException {
+		while (numberOfEntries > 0) {
+			ByteBuffer[] frames = gatherFrames();
+			long numberOfBytesToWrite = numberOfGatheredBytes;
+			long numberOfWrittenBytes = transport.write(frames, 0, numberOfGatheredFrames);
+			completeWrite(numberOfWrittenBytes);
+
+			if (numberOfWrittenBytes < numberOfBytesToWrite) {
+				// The socket send buffer is full
+				return;
+			}
+		}
+	}
+
+	/** Collects the frames to be written next for a single gathering write. The frames must not be modified
+	 * until the write has been completed using {@link #completeWrite(long)}.
+	 * @return an array containing {@link #getNumberOfGatheredFrames()} frames, starting at index 0 */
+	ByteBuffer[] gatherFrames() {
+		// A failed write is never completed, so the frames gathered for it must be forgotten
+		for (Lane lane : lanes) {
+			lane.numberOfGatheredEntries = 0;
+		}
+
+		numberOfGatheredFrames = 0;
+		numberOfGatheredBytes = 0;
+
+		if (partiallyWrittenLane >= 0) {
+			// The remaining bytes of a partially written frame must be written before any other frame
+			gather(lanes[partiallyWrittenLane].get(0));
+		}
+
+		while (numberOfGatheredFrames < gatheredFrames.length && numberOfGatheredFrames < numberOfEntries) {
+			if (!gatherScheduledFrames()) {
+				refillCredits();
+			}
+		}
+
+		return gatheredFrames;
+	}
+
+	/** Gathers the frames of every lane in priority order, as long as the lane has credits left
+	 * @return false if no frame could be gathered as all non-empty lanes have used up their credits */
+	private boolean gatherScheduledFrames() {
+		boolean gathered = false;
+
+		for (int i=0; i<lanes.length; i++) {
+			Lane lane = lanes[i];
+
+			while (credits[i] > 0 && lane.numberOfGatheredEntries < lane.numberOfEntries 
+					&& numberOfGatheredFrames < gatheredFrames.length) {
+				gather(lane.get(lane.numberOfGatheredEntries));
+				credits[i]--;
+				gathered = true;
+			}
+		}
+
+		return gathered;
+	}
+
+	private void gather(Entry entry) {
+		gatheredEntries[numberOfGatheredFrames] = entry;
+		gatheredFrames[numberOfGatheredFrames] = entry.frame;
+		numberOfGatheredFrames++;
+		numberOfGatheredBytes += entry.frame.remaining();
+		lanes[entry.lane].numberOfGatheredEntries++;
+	}
+
+	private void refillCredits() {
+		for (int i=0; i<credits.length; i++) {
+			credits[i] = PRIORITIES[i].getWeight();
+		}
+	}
+
+	int getNumberOfGatheredFrames() {
+		return numberOfGatheredFrames;
+	}
+
+	/** Completes a write of the gathered frames, and releases all frames which have been written completely */
+	void completeWrite(long numberOfWrittenBytes) {
+		numberOfQueuedBytes -= numberOfWrittenBytes;
+		partiallyWrittenLane = -1;
+
+		for (int i=0; i<numberOfGatheredFrames; i++) {
+			Entry entry = gatheredEntries[i];
+			Lane lane = lanes[entry.lane];
+
+			if (!entry.frame.hasRemaining()) {
+				// The gathered frames of a lane are always its first frames
+				lane.removeFirst();
+				numberOfEntries--;
+
+				if (entry.sendFuture != null) {
+					completedSendFutures.add(entry.sendFuture);
+				}
+
+				release(entry);
+			} else if (entry.frame.remaining() < entry.length) {
+				partiallyWrittenLane = entry.lane;
+			}
+
+			gatheredEntries[i] = null;
+			gatheredFrames[i] = null;
+		}
+
+		for (Lane lane : lanes) {
+			lane.numberOfGatheredEntries = 0;
+		}
+
+		numberOfGatheredFrames = 0;
+	}
+
+	/** Returns true if frames with futures have been written or discarded since the futures have last been taken */
+	boolean hasSendFutures() {
+		return !completedSendFutures.isEmpty() || !discardedSendFutures.isEmpty();
+	}
+
+	/** Moves the futures of all completely written frames into the first list, and those of all discarded frames
+	 * into the second list along with their causes. The futures are not completed by the queue itself, as the 
+	 * listeners of a future may send further messages and must therefore not be informed while holding the lock
+	 * of the communication. */
+	void takeSendFutures(List<SendFuture> writtenSendFutures, List<SendFuture> failedSendFutures, List<CommunicationException> causes) {
+		writtenSendFutures.addAll(completedSendFutures);
+		completedSendFutures.clear();
+		failedSendFutures.addAll(discardedSendFutures);
+		discardedSendFutures.clear();
+		causes.addAll(discardCauses);
+		discardCauses.clear();
+	}
+
+	boolean isEmpty() {
+		return numberOfEntries == 0;
+	}
+
+	/** Returns the number of bytes which have not yet been written */
+	long getNumberOfQueuedBytes() {
+		return numberOfQueuedBytes;
+	}
+
+	/** Discards all frames which have not yet been written. Their futures fail with the given cause once they 
+	 * have been taken. */
+	void clear(CommunicationException cause) {
+		for (Lane lane : lanes) {
+			while (lane.numberOfEntries > 0) {
+				Entry entry = lane.removeFirst();
+
+				if (entry.sendFuture != null) {
+					discardedSendFutures.add(entry.sendFuture);
+					discardCauses.add(cause);
+				}
+
+				release(entry);
+			}
+
+			lane.numberOfGatheredEntries = 0;
+		}
+
+		numberOfEntries = 0;
+		numberOfQueuedBytes = 0;
+		partiallyWrittenLane = -1;
+		refillCredits();
+	}
+
+	private void release(Entry entry) {
+		if (entry.sharedFrame == null) {
+			BufferPool.getDefault().release(entry.frame);
+		} else {
+			entry.sharedFrame.release();
+		}
+
+		entry.frame = null;
+		entry.sharedFrame = null;
+		entry.sendFuture = null;
+
+		if (unusedEntries.size() < MAXIMUM_NUMBER_OF_UNUSED_ENTRIES) {
+			unusedEntries.add(entry);
+		}
+	}
+
+	/** The queued entries of a single priority, stored within a ring buffer starting at index head */
+	private static final class Lane {
+		private Entry[] entries = new Entry[16];
+		private int head = 0;
+		private int numberOfEntries = 0;
+		/** The number of entries at the beginning of the lane which are part of the current gathering write */
+		private int numberOfGatheredEntries = 0;
+
+		private void add(Entry entry) {
+			if (numberOfEntries == entries.length) {
+				Entry[] largerEntries = new Entry[entries.length * 2];
+				for (int i=0; i<numberOfEntries; i++) {
+					largerEntries[i] = entries[(head + i) % entries.length];
+				}
+
+				entries = largerEntries;
+				head = 0;
+			}
+
+			entries[(head + numberOfEntries) % entries.length] = entry;
+			numberOfEntries++;
+		}
+
+		private Entry get(int index) {
+			return entries[(head + index) % entries.length];
+		}
+
+		private Entry removeFirst() {
+			Entry entry = entries[head];
+			entries[head] = null;
+			head = (head + 1) % entries.length;
+			numberOfEntries--;
+
+			return entry;
+		}
+	}
+
+	/** A queued frame along with the shared frame it is a view of and the future of its sender (if any) */
+	private static final class Entry {
+		private ByteBuffer frame;
+		private SharedFrame sharedFrame;
+		private SendFuture sendFuture;
+		/** The index of the lane containing the entry */
+		private int lane;
+		/** The number of bytes of the frame before it has been written */
+		private int length;
+	}
+}
@@ -0,0 +1,35 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** An enumeration of the actions a communication can take if a message is sent while its outbound queue 
+ * exceeds the high watermark, i.e. while the remote device does not read the sent messages fast enough.
+ * @see Communication#setOverflowPolicy(OverflowPolicy)
+ * @see Communication#setOutboundQueueWatermarks(int, int) */
+public enum OverflowPolicy {
+	/** The sending thread waits until the outbound queue has been drained below the low watermark. (The default) */
+	BLOCK,
+	/** The message is discarded */
+	DROP,
+	/** The communication is closed and the sending thread receives a CommunicationException */
+	DISCONNECT
+}
@@ -0,0 +1,35 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** A PayloadObserver receives the raw bytes of the messages received by a communication instead of decoded
+ * strings. Nodes which only relay messages can thereby forward them without decoding them. As soon as a payload 
+ * observer has been registered, received messages are no longer forwarded to the SoutilsObservers of the 
+ * communication, which are still informed about errors.
+ * @see Communication#registerPayloadObserver(PayloadObserver)
+ * @see MessagePayload */
+public interface PayloadObserver {
+	/** Called by the thread receiving the message. The payload and its buffers are only valid until this method 
+	 * returns, and must therefore be neither stored nor used by other threads.
+	 * @param messagePayload the payload of the received message */
+	void handlePayload(MessagePayload messagePayload);
+}
@@ -0,0 +1,143 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** The requests of a communication which are waiting for their responses, indexed by their request id. The ids
+ * are kept in an open addressing hash table of primitive longs, so that adding and removing a request neither 
+ * boxes the id nor allocates a table entry. */
+final class PendingRequests {
+	private long[] requestIds = new long[16];
+	/** The futures of the pending requests. A null future marks an unused slot. */
+	private ResponseFuture[] responseFutures = new ResponseFuture[16];
+	private int numberOfPendingRequests = 0;
+
+	synchronized void add(long requestId, ResponseFuture responseFuture) {
+		if ((numberOfPendingRequests + 1) * 2 > responseFutures.length) {
+			resize(responseFutures.length * 2);
+		}
+
+		int slot = slotOf(requestId);
+		while (responseFutures[slot] != null) {
+			slot = (slot + 1) & (responseFutures.length - 1);
+		}
+
+		requestIds[slot] = requestId;
+		responseFutures[slot] = responseFuture;
+		numberOfPendingRequests++;
+	}
+
+	/** Removes a pending request
+	 * @return the future of the request, or null if the request is not pending (anymore) */
+	synchronized ResponseFuture remove(long requestId) {
+		int mask = responseFutures.length - 1;
+		int slot = slotOf(requestId);
+
+		while (responseFutures[slot] != null) {
+			if (requestIds[slot] == requestId) {
+				ResponseFuture responseFuture = responseFutures[slot];
+				responseFutures[slot] = null;
+				numberOfPendingRequests--;
+				closeGap(slot);
+
+				return responseFuture;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return null;
+	}
+
+	/** Removes all pending requests
+	 * @return the futures of the removed requests */
+	synchronized List<ResponseFuture> removeAll() {
+		List<ResponseFuture> removedResponseFutures = new ArrayList<ResponseFuture>(numberOfPendingRequests);
+
+		for (int i=0; i<responseFutures.length; i++) {
+			if (responseFutures[i] != null) {
+				removedResponseFutures.add(responseFutures[i]);
+				responseFutures[i] = null;
+			}
+		}
+
+		numberOfPendingRequests = 0;
+
+		return removedResponseFutures;
+	}
+
+	synchronized int size() {
+		return numberOfPendingRequests;
+	}
+
+	/** Moves the following entries of the probe sequence into an emptied slot, so that lookups never stop early */
+	private void closeGap(int emptySlot) {
+		int mask = responseFutures.length - 1;
+		int slot = emptySlot;
+
+		while (true) {
+			slot = (slot + 1) & mask;
+			if (responseFutures[slot] == null) {
+				return;
+			}
+
+			int preferredSlot = slotOf(requestIds[slot]);
+			boolean reachableWithoutGap = emptySlot <= slot 
+					? emptySlot < preferredSlot && preferredSlot <= slot
+					: emptySlot < preferredSlot || preferredSlot <= slot;
+
+			if (!reachableWithoutGap) {
+				requestIds[emptySlot] = requestIds[slot];
+				responseFutures[emptySlot] = responseFutures[slot];
+				responseFutures[slot] = null;
+				emptySlot = slot;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		long[] oldRequestIds = requestIds;
+		ResponseFuture[] oldResponseFutures = responseFutures;
+
+		requestIds = new long[capacity];
+		responseFutures = new ResponseFuture[capacity];
+
+		for (int i=0; i<oldResponseFutures.length; i++) {
+			if (oldResponseFutures[i] != null) {
+				int slot = slotOf(oldRequestIds[i]);
+				while (responseFutures[slot] != null) {
+					slot = (slot + 1) & (capacity - 1);
+				}
+
+				requestIds[slot] = oldRequestIds[i];
+				responseFutures[slot] = oldResponseFutures[i];
+			}
+		}
+	}
+
+	/** Spreads the consecutive request ids across the table using Fibonacci hashing */
+	private int slotOf(long requestId) {
+		return (int) ((requestId * 0x9E3779B97F4A7C15L) >>> 32) & (responseFutures.length - 1);
+	}
+}
@@ -0,0 +1,36 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** An enumeration of the actions a communication can take if a message exceeds one of its rate limits
+ * @see Communication#setInboundRateLimit(RateLimitPolicy, RateLimiter...)
+ * @see Communication#setOutboundRateLimit(RateLimitPolicy, RateLimiter...) */
+public enum RateLimitPolicy {
+	/** The message is discarded */
+	DROP,
+	/** The message is accepted, but reading (or the sending thread) is paused until the rate limit is met again. 
+	 * Paused communications stop reading from their sockets, so that the remote device is slowed down by TCP flow 
+	 * control instead of received messages being buffered. (The default) */
+	DELAY,
+	/** The communication is closed */
+	DISCONNECT
+}
@@ -0,0 +1,110 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** A thread-safe token bucket limiting the rate of messages. The bucket holds up to a given number of permits and 
+ * is refilled continuously at a given rate. A single rate limiter can be shared by several communications to 
+ * limit their total rate, in addition to the rate limiter of every single communication.
+ * @see Communication#setInboundRateLimit(RateLimitPolicy, RateLimiter...)
+ * @see CommunicationManager#setInboundRateLimit(double, double, RateLimitPolicy) */
+public class RateLimiter {
+	private final double permitsPerNanosecond;
+	private final double burst;
+	/** The currently available permits. Negative if more permits have been taken than were available. */
+	private double availablePermits;
+	private long lastRefillTime = System.nanoTime();
+
+	/** Creates a new rate limiter which is initially full
+	 * @param permitsPerSecond the rate at which permits become available (E.g. the number of messages per second)
+	 * @param burst the maximum number of permits which can be accumulated (at least one) */
+	public RateLimiter(double permitsPerSecond, double burst) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("The rate must be positive and the burst at least one!");
+		}
+
+		this.permitsPerNanosecond = permitsPerSecond / 1000000000d;
+		this.burst = burst;
+		this.availablePermits = burst;
+	}
+
+	/** Takes a permit if one is available
+	 * @return true if a permit has been taken, false if the rate limit is exceeded */
+	public synchronized boolean tryAcquire() {
+		refill();
+
+		if (availablePermits < 1) {
+			return false;
+		}
+
+		availablePermits--;
+		return true;
+	}
+
+	/** Takes a permit even if none is available. The permits taken in advance must be paid back before 
+	 * permits become available again.
+	 * @return the time in nanoseconds until the rate limit is met again, or 0 if it is met */
+	public synchronized long acquire() {
+		refill();
+		availablePermits--;
+
+		return availablePermits >= 0 ? 0 : (long) Math.ceil(-availablePermits / permitsPerNanosecond);
+	}
+
+	/** Returns a permit which has been taken but not used */
+	synchronized void release() {
+		availablePermits = Math.min(burst, availablePermits + 1);
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		availablePermits = Math.min(burst, availablePermits + (now - lastRefillTime) * permitsPerNanosecond);
+		lastRefillTime = now;
+	}
+
+	/** Takes a permit from every given rate limiter, or from none of them if one rate limit is exceeded
+	 * @return true if all permits have been taken */
+	static boolean tryAcquireAll(RateLimiter[] rateLimiters) {
+		for (int i=0; i<rateLimiters.length; i++) {
+			if (!rateLimiters[i].tryAcquire()) {
+				for (int j=0; j<i; j++) {
+					rateLimiters[j].release();
+				}
+
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/** Takes a permit from every given rate limiter even if none is available
+	 * @return the time in nanoseconds until all rate limits are met again */
+	static long acquireAll(RateLimiter[] rateLimiters) {
+		long delay = 0;
+
+		for (RateLimiter rateLimiter : rateLimiters) {
+			delay = Math.max(delay, rateLimiter.acquire());
+		}
+
+		return delay;
+	}
+}
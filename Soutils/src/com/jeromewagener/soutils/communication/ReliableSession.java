@@ -0,0 +1,275 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** A session delivering messages at least once, even if the connection carrying them is reset. Every reliable 
+ * message gets a sequence number and is kept until the remote device has acknowledged it. Acknowledgements are
+ * cumulative, batched for a short delay and sent along with reliable messages whenever possible. After every 
+ * (re)connect, both sides exchange the sequence number of the last message they have received, and all messages 
+ * which have not been received are sent again in order. Messages received twice are discarded.
+ * 
+ * Sessions are issued by a CommunicationManager, which chooses a random id and a secret token when a client first
+ * resumes a new session. Only clients presenting the token of a session can resume it later on, and sessions
+ * whose client has not reconnected for {@link Parameters#COMMUNICATION_RELIABLE_SESSION_TIMEOUT_IN_MILLISECONDS}
+ * cannot be resumed any more. The CommunicationManager answers the attempt to resume such a session (or any session
+ * after the manager has been restarted), whereupon the client starts a new session and sends its kept messages 
+ * again. As the messages the manager has kept for the forgotten session may have been lost, this is reported to
+ * the observers as an error. A manager keeps at most 
+ * {@link Parameters#COMMUNICATION_MAXIMUM_RELIABLE_SESSIONS_PER_PEER} sessions for the same client IP address.
+ * 
+ * A session outlives the communications carrying it: messages sent while the session is not connected are kept
+ * and sent as soon as it has been resumed using a new communication. Reliable messages require 
+ * {@link MessageFraming#LENGTH_PREFIXED}, are received like any other message, and are neither subject to the 
+ * overflow policy nor to rate limits.
+ * @see Communication#setReliableSession(ReliableSession)
+ * @see CommunicationConnector#setReliableDelivery(boolean)
+ * @see CommunicationManager#setReliableDelivery(boolean) */
+public class ReliableSession {
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	/** The id of the session, or 0 until it has been issued */
+	private long id;
+	/** The secret token proving that a client resuming the session is the one it has been issued to */
+	private byte[] token;
+	/** The IP address of the client to which a CommunicationManager has issued the session, or null on the client */
+	private final String clientAddress;
+	private final Queue<UnacknowledgedMessage> unacknowledgedMessages = new ArrayDeque<UnacknowledgedMessage>();
+	private long nextSequenceNumber = 1;
+	private long lastReceivedSequenceNumber = 0;
+	private long numberOfDiscardedDuplicates = 0;
+	/** The communication transmitting the messages of the session, or null while the session is not resumed */
+	private Communication communication = null;
+	/** The time at which the session has last been detached from a communication, as returned by System.nanoTime() */
+	private long detachTime = System.nanoTime();
+
+	/** Creates a new client session, whose id is issued by the CommunicationManager once the session has first
+	 * been resumed */
+	public ReliableSession() {
+		this(0, new byte[FrameType.SESSION_TOKEN_LENGTH], null);
+	}
+
+	private ReliableSession(long id, byte[] token, String clientAddress) {
+		this.id = id;
+		this.token = token;
+		this.clientAddress = clientAddress;
+	}
+
+	/** Issues a new session with a random id and token
+	 * @param clientAddress the IP address of the client to which the session is issued */
+	static ReliableSession issue(String clientAddress) {
+		long id;
+		do {
+			id = RANDOM.nextLong();
+		} while (id == 0);
+
+		byte[] token = new byte[FrameType.SESSION_TOKEN_LENGTH];
+		RANDOM.nextBytes(token);
+
+		return new ReliableSession(id, token, clientAddress);
+	}
+
+	/** Returns the id identifying the session on both devices, or 0 if the session has not yet been issued */
+	public synchronized long getId() {
+		return id;
+	}
+
+	synchronized byte[] getToken() {
+		return token;
+	}
+
+	/** Adopts the id and token issued by the CommunicationManager when the session is first resumed, and 
+	 * verifies them whenever the session is resumed again
+	 * @return false if the session has been issued another id or token */
+	synchronized boolean confirm(long issuedId, byte[] issuedToken) {
+		if (id == 0) {
+			id = issuedId;
+			token = issuedToken;
+		}
+
+		return id == issuedId && MessageDigest.isEqual(token, issuedToken);
+	}
+
+	/** Forgets the id and token of a session which the CommunicationManager does not know any more, as it has
+	 * expired or the manager has been restarted, so that a new session is issued once it is resumed again. The
+	 * kept messages are numbered anew and sent again. The messages the CommunicationManager has sent to the 
+	 * forgotten session but which have not been received are lost.
+	 * @return false if the session has been issued another id or is attached to a communication */
+	synchronized boolean restart(long unknownId) {
+		if (id == 0 || id != unknownId || communication != null) {
+			return false;
+		}
+
+		id = 0;
+		token = new byte[FrameType.SESSION_TOKEN_LENGTH];
+		lastReceivedSequenceNumber = 0;
+		nextSequenceNumber = 1;
+
+		List<UnacknowledgedMessage> keptMessages = new ArrayList<UnacknowledgedMessage>(unacknowledgedMessages);
+		unacknowledgedMessages.clear();
+		for (UnacknowledgedMessage keptMessage : keptMessages) {
+			unacknowledgedMessages.add(new UnacknowledgedMessage(nextSequenceNumber++, keptMessage.content));
+		}
+
+		return true;
+	}
+
+	String getClientAddress() {
+		return clientAddress;
+	}
+
+	/** Returns true if the given token is the secret token of this session */
+	synchronized boolean isIssuedTo(byte[] presentedToken) {
+		return MessageDigest.isEqual(token, presentedToken);
+	}
+
+	/** Sends a message which is delivered at least once. If the session is not resumed, the message is kept until
+	 * it has been resumed using a new communication.
+	 * @param messageContent the message to be sent
+	 * @throws CommunicationException if too many messages have not yet been acknowledged
+	 * @see Parameters#COMMUNICATION_MAXIMUM_UNACKNOWLEDGED_MESSAGES */
+	public void sendMessage(String messageContent) throws CommunicationException {
+		while (true) {
+			Communication currentCommunication = getCommunication();
+
+			if (currentCommunication == null) {
+				if (append(messageContent, null) != null) {
+					return;
+				}
+			} else if (currentCommunication.transmitReliably(this, messageContent)) {
+				return;
+			}
+
+			// The session has been resumed or detached in the meantime
+		}
+	}
+
+	/** Returns the number of sent messages which have not yet been acknowledged by the remote device */
+	public synchronized int getNumberOfUnacknowledgedMessages() {
+		return unacknowledgedMessages.size();
+	}
+
+	/** Returns the number of received messages which have been discarded as they had already been received */
+	public synchronized long getNumberOfDiscardedDuplicates() {
+		return numberOfDiscardedDuplicates;
+	}
+
+	synchronized Communication getCommunication() {
+		return communication;
+	}
+
+	/** Assigns the next sequence number to a message and keeps it until it has been acknowledged, provided that 
+	 * the session is still attached to the expected communication
+	 * @param expectedCommunication the communication transmitting the message, or null if the session is detached
+	 * @return the message, or null if the session is attached to another communication */
+	synchronized UnacknowledgedMessage append(String messageContent, Communication expectedCommunication) throws CommunicationException {
+		if (communication != expectedCommunication) {
+			return null;
+		}
+
+		if (unacknowledgedMessages.size() >= Parameters.COMMUNICATION_MAXIMUM_UNACKNOWLEDGED_MESSAGES) {
+			throw new CommunicationException("Too many reliable messages have not yet been acknowledged!");
+		}
+
+		UnacknowledgedMessage unacknowledgedMessage = new UnacknowledgedMessage(nextSequenceNumber++, messageContent);
+		unacknowledgedMessages.add(unacknowledgedMessage);
+
+		return unacknowledgedMessage;
+	}
+
+	/** Forgets all messages up to the given sequence number, which the remote device has received */
+	synchronized void acknowledge(long sequenceNumber) {
+		while (!unacknowledgedMessages.isEmpty() && unacknowledgedMessages.peek().sequenceNumber <= sequenceNumber) {
+			unacknowledgedMessages.poll();
+		}
+	}
+
+	/** Records the receipt of a reliable message
+	 * @return true if the message must be delivered, false if it has already been received
+	 * @throws CommunicationException if preceding messages have been lost, which requires a reconnect */
+	synchronized boolean receive(long sequenceNumber) throws CommunicationException {
+		if (sequenceNumber <= lastReceivedSequenceNumber) {
+			numberOfDiscardedDuplicates++;
+			return false;
+		}
+
+		if (sequenceNumber != lastReceivedSequenceNumber + 1) {
+			throw new CommunicationException("Reliable message " + sequenceNumber + " received before message " 
+					+ (lastReceivedSequenceNumber + 1) + "!");
+		}
+
+		lastReceivedSequenceNumber = sequenceNumber;
+		return true;
+	}
+
+	synchronized long getLastReceivedSequenceNumber() {
+		return lastReceivedSequenceNumber;
+	}
+
+	/** Attaches the session to the communication which transmits its messages from now on
+	 * @return the messages which have to be sent again using the new communication */
+	synchronized List<UnacknowledgedMessage> attach(Communication newCommunication) {
+		communication = newCommunication;
+
+		return new ArrayList<UnacknowledgedMessage>(unacknowledgedMessages);
+	}
+
+	/** Detaches the session from the given communication, unless it has already been attached to another one */
+	synchronized void detach(Communication closedCommunication) {
+		if (communication == closedCommunication) {
+			communication = null;
+			detachTime = System.nanoTime();
+		}
+	}
+
+	/** Returns the time at which the session has last been detached from a communication, as returned by 
+	 * System.nanoTime(), or null if the session is attached to a communication */
+	synchronized Long getDetachTime() {
+		return communication == null ? Long.valueOf(detachTime) : null;
+	}
+
+	/** Returns true if the session has not been attached to any communication for longer than the session timeout */
+	synchronized boolean isExpired() {
+		return communication == null && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - detachTime) 
+				> Parameters.COMMUNICATION_RELIABLE_SESSION_TIMEOUT_IN_MILLISECONDS;
+	}
+
+	/** A sent message which is kept until the remote device has acknowledged it */
+	static final class UnacknowledgedMessage {
+		final long sequenceNumber;
+		final String content;
+
+		private UnacknowledgedMessage(long sequenceNumber, String content) {
+			this.sequenceNumber = sequenceNumber;
+			this.content = content;
+		}
+	}
+}
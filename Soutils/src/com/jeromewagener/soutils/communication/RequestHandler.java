@@ -0,0 +1,38 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** A RequestHandler answers the requests received by a communication. The handler is called by the thread of the
+ * communication, so that long running requests delay all following messages of the communication. Requests 
+ * received by a CommunicationReactor or a channel group are handed over to the request executor instead, so that
+ * they never delay other communications. The requests of a single communication are answered one after the other.
+ * @see Communication#setRequestHandler(RequestHandler)
+ * @see Communication#setRequestExecutor(java.util.concurrent.Executor)
+ * @see Communication#request(String, long) */
+public interface RequestHandler {
+	/** Answers a single request. If an exception is thrown, the request fails on the requesting device with a
+	 * CommunicationException containing the exception message.
+	 * @param communication the communication which has received the request
+	 * @param requestContent the content of the request
+	 * @return the response to be sent to the requesting device */
+	String handleRequest(Communication communication, String requestContent) throws Exception;
+}
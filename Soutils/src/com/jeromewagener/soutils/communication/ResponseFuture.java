@@ -0,0 +1,59 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** The pending response to a request. The future completes with the response as soon as the remote device has 
+ * answered the request, or fails if the request could not be sent, has been rejected by the remote device, or
+ * has not been answered in time (in which case the cause is a {@link java.util.concurrent.TimeoutException}).
+ * @see Communication#request(String, long)
+ * @see ResponseListener */
+public class ResponseFuture extends AbstractFuture<String, ResponseListener> {
+	/** The timer task failing the request once it has timed out */
+	private SharedTimer.Timeout timeout = null;
+
+	ResponseFuture() {
+	}
+
+	/** Adds a listener which is informed as soon as the future completes. If the future has already completed, 
+	 * the listener is called immediately by the calling thread.
+	 * @param responseListener the listener to be informed */
+	public void addResponseListener(ResponseListener responseListener) {
+		addListener(responseListener);
+	}
+
+	@Override
+	void informListener(ResponseListener responseListener) {
+		responseListener.handleResponse(this);
+	}
+
+	synchronized void setTimeout(SharedTimer.Timeout timeout) {
+		this.timeout = timeout;
+	}
+
+	/** Cancels the timeout of a request which has been answered */
+	synchronized void cancelTimeout() {
+		if (timeout != null) {
+			timeout.cancel();
+			timeout = null;
+		}
+	}
+}
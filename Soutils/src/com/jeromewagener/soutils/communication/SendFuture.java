@@ -0,0 +1,57 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+/** The result of an asynchronously sent message. The future completes successfully as soon as all bytes of the
+ * message have been written to the socket, or fails with the cause which prevented the message from being 
+ * sent (e.g. a closed communication). Instead of waiting using {@link #get()}, a SendListener can be added in 
+ * order to be informed about the completion.
+ * @see Communication#sendAsync(String)
+ * @see SendListener */
+public class SendFuture extends AbstractFuture<Void, SendListener> {
+	SendFuture() {
+	}
+
+	/** Returns a future which has already failed with the given cause */
+	static SendFuture failed(Throwable cause) {
+		SendFuture sendFuture = new SendFuture();
+		sendFuture.fail(cause);
+
+		return sendFuture;
+	}
+
+	/** Adds a listener which is informed as soon as the future completes. If the future has already completed, 
+	 * the listener is called immediately by the calling thread.
+	 * @param sendListener the listener to be informed */
+	public void addSendListener(SendListener sendListener) {
+		addListener(sendListener);
+	}
+
+	@Override
+	void informListener(SendListener sendListener) {
+		sendListener.handleSendCompletion(this);
+	}
+
+	void succeed() {
+		succeed(null);
+	}
+}
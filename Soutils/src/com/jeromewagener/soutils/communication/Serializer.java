@@ -0,0 +1,47 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** Converts objects of a certain type into bytes and vice versa, so that they can be sent using 
+ * {@link Communication#sendObject(Object)} without being converted into text first. Serializers are registered
+ * together with a type id, which is transmitted in front of every serialized object. The methods of 
+ * {@link BinaryEncoding} can be used to write numbers, strings and byte arrays compactly.
+ * @param <T> the type of the serialized objects
+ * @see CodecRegistry#register(int, Class, Serializer) */
+public interface Serializer<T> {
+	/** Writes the given object. Called by the sending thread.
+	 * @param object the object to be serialized
+	 * @param output the output to which the object is written
+	 * @throws IOException if the object cannot be serialized */
+	void serialize(T object, DataOutput output) throws IOException;
+
+	/** Reads an object which has been written by {@link #serialize(Object, DataOutput)}. Called by the thread 
+	 * receiving the object.
+	 * @param input the input containing the serialized object, and nothing else
+	 * @return the deserialized object
+	 * @throws IOException if the bytes do not represent a valid object */
+	T deserialize(DataInput input) throws IOException;
+}
@@ -0,0 +1,54 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** An encoded frame which is written to several communications at once. The frame is encoded only once, and 
+ * every communication writes from its own read-only view of the frame. The frame is released to the buffer pool
+ * as soon as the creator and all communications have released their references. */
+final class SharedFrame {
+	private final ByteBuffer frame;
+	private final ByteBuffer readOnlyFrame;
+	/** The creator holds the first reference */
+	private final AtomicInteger numberOfReferences = new AtomicInteger(1);
+
+	/** @param frame a pooled buffer containing the encoded frame between its position and its limit */
+	SharedFrame(ByteBuffer frame) {
+		this.frame = frame;
+		this.readOnlyFrame = frame.asReadOnlyBuffer();
+	}
+
+	/** Acquires an additional reference and returns a new read-only view of the frame, which has its own position */
+	ByteBuffer retain() {
+		numberOfReferences.incrementAndGet();
+		return readOnlyFrame.duplicate();
+	}
+
+	/** Releases a reference. The frame is returned to the buffer pool once the last reference has been released. */
+	void release() {
+		if (numberOfReferences.decrementAndGet() == 0) {
+			BufferPool.getDefault().release(frame);
+		}
+	}
+}
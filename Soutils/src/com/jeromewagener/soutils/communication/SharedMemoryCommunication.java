@@ -0,0 +1,362 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.CharacterCodingException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.jeromewagener.soutils.Parameters;
+import com.jeromewagener.soutils.messaging.MessageType;
+import com.jeromewagener.soutils.messaging.SoutilsMessage;
+import com.jeromewagener.soutils.messaging.SoutilsObservable;
+import com.jeromewagener.soutils.messaging.SoutilsObserver;
+
+/** A SoutilsObservable thread which exchanges messages with another process on the same host using a memory-mapped
+ * file instead of a socket. The file contains one single-producer/single-consumer ring buffer per direction, so that
+ * sending a message only copies its bytes into the ring and receiving it never requires a system call. The receiving
+ * thread spins for a short while before it yields and finally parks, so that messages arriving in quick succession 
+ * are received within well below a microsecond. As for a Communication, all received messages are forwarded to the 
+ * registered SoutilsObservers.
+ * 
+ * One of the processes opens the first side of the file, which writes into the first ring, and the other one opens
+ * the second side. Each side holds a lock on the file, which is released once it has been stopped (or its process
+ * has died), so that a restarted process takes over its side and continues with the messages which have not yet 
+ * been received.
+ * 
+ * The counters of the rings are written after and read before an atomic update of a sequence, which acts as a full
+ * memory fence, so that the records are never read before they have been written completely on any processor.
+ * @see Communication */
+public class SharedMemoryCommunication extends SoutilsObservable {
+	/** The first four bytes of the file ("SHMR") */
+	private static final int MAGIC = 0x53484D52;
+	private static final int CAPACITY_POSITION = 4;
+	/** The positions of single bytes which are locked to serialize the initialization of the file and to claim a side */
+	private static final long INITIALIZATION_LOCK_POSITION = 8;
+	private static final long FIRST_SIDE_LOCK_POSITION = 9;
+	private static final long SECOND_SIDE_LOCK_POSITION = 10;
+	/** The tail and the head of every ring have a cache line of their own, as they are written by different sides */
+	private static final int CACHE_LINE_LENGTH = 64;
+	private static final int HEADER_LENGTH = 5 * CACHE_LINE_LENGTH;
+	/** Every record starts with the number of bytes of its message, and is aligned to four bytes */
+	private static final int RECORD_HEADER_LENGTH = 4;
+	/** The record length marking the unused bytes at the end of the ring, which are skipped */
+	private static final int PADDING = -1;
+	private static final int MINIMUM_CAPACITY = 4096;
+	/** Spinning only delays the other side if both sides have to share a single processor */
+	private static final int NUMBER_OF_IDLE_SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 
+			Parameters.SHARED_MEMORY_NUMBER_OF_IDLE_SPINS : 0;
+	private final String name;
+	private final RandomAccessFile randomAccessFile;
+	private final FileLock sideLock;
+	private final MappedByteBuffer map;
+	/** Views of the mapped file used by the sending and the receiving thread respectively */
+	private final ByteBuffer outboundView;
+	private final ByteBuffer inboundView;
+	private final int capacity;
+	private final int outboundTailPosition;
+	private final int outboundHeadPosition;
+	private final int outboundDataPosition;
+	private final int inboundTailPosition;
+	private final int inboundHeadPosition;
+	private final int inboundDataPosition;
+	/** The total number of bytes written into the outbound ring, and the last known number of bytes read from it */
+	private long outboundTail;
+	private long outboundHead;
+	/** The total number of bytes read from the inbound ring, only accessed by the receiving thread */
+	private long inboundHead;
+	/** Updated between the accesses to the records and the counters of the outbound and the inbound ring. The mapped
+	 * memory cannot be accessed with ordering guarantees, whereas an atomic update is neither reordered with the 
+	 * preceding nor with the following memory accesses. Each sequence is only updated by a single thread. */
+	private final AtomicLong outboundSequence = new AtomicLong();
+	private final AtomicLong inboundSequence = new AtomicLong();
+	private volatile boolean done = false;
+	private boolean closed = false;
+
+	/** Opens a shared memory communication using rings of the default capacity
+	 * @see #SharedMemoryCommunication(File, boolean, int, SoutilsObserver)
+	 * @see Parameters#SHARED_MEMORY_RING_CAPACITY_IN_BYTES */
+	public SharedMemoryCommunication(File file, boolean firstSide, SoutilsObserver soutilsObserver) throws IOException {
+		this(file, firstSide, Parameters.SHARED_MEMORY_RING_CAPACITY_IN_BYTES, soutilsObserver);
+	}
+
+	/** Opens a shared memory communication with the process which opens the same file. The file is created if it 
+	 * does not exist yet. As for any Java thread, this thread needs to be started using the {@link #start()} method
+	 * in order to receive messages.
+	 * @param file the file shared by both processes, which should be located on a memory based file system 
+	 * (e.g. /dev/shm) so that its pages are never written to disk
+	 * @param firstSide true within one of the processes and false within the other one
+	 * @param capacityInBytes the capacity of each ring if the file is created, which is rounded up to a power of two.
+	 * Messages may occupy up to half of the capacity.
+	 * @param soutilsObserver the observer to which all received messages are forwarded
+	 * @throws IOException if the file cannot be mapped or the side is already in use */
+	public SharedMemoryCommunication(File file, boolean firstSide, int capacityInBytes, SoutilsObserver soutilsObserver) throws IOException {
+		this.registerSoutilsObserver(soutilsObserver);
+		this.name = file.getPath();
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			int ringCapacity = Math.max(MINIMUM_CAPACITY, Integer.highestOneBit(Math.max(capacityInBytes - 1, 1)) << 1);
+
+			// File locks of the same process do not wait for each other
+			synchronized (SharedMemoryCommunication.class) {
+				FileLock initializationLock = channel.lock(INITIALIZATION_LOCK_POSITION, 1, false);
+
+				try {
+					if (randomAccessFile.length() < HEADER_LENGTH) {
+						randomAccessFile.setLength(HEADER_LENGTH + 2L * ringCapacity);
+						map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + 2L * ringCapacity);
+						map.putInt(CAPACITY_POSITION, ringCapacity);
+						map.putInt(0, MAGIC);
+					} else {
+						map = channel.map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+						ringCapacity = map.getInt(CAPACITY_POSITION);
+
+						if (map.getInt(0) != MAGIC || map.capacity() != HEADER_LENGTH + 2L * ringCapacity) {
+							throw new IOException(file + " is not a shared memory communication file!");
+						}
+					}
+
+					sideLock = tryLock(channel, firstSide ? FIRST_SIDE_LOCK_POSITION : SECOND_SIDE_LOCK_POSITION);
+
+					if (sideLock == null) {
+						throw new IOException("The " + (firstSide ? "first" : "second") + " side of " + file + " is already in use!");
+					}
+				} finally {
+					initializationLock.release();
+				}
+			}
+
+			capacity = ringCapacity;
+			int outboundRing = firstSide ? 0 : 1;
+			int inboundRing = 1 - outboundRing;
+			outboundTailPosition = (1 + 2 * outboundRing) * CACHE_LINE_LENGTH;
+			outboundHeadPosition = (2 + 2 * outboundRing) * CACHE_LINE_LENGTH;
+			outboundDataPosition = HEADER_LENGTH + outboundRing * capacity;
+			inboundTailPosition = (1 + 2 * inboundRing) * CACHE_LINE_LENGTH;
+			inboundHeadPosition = (2 + 2 * inboundRing) * CACHE_LINE_LENGTH;
+			inboundDataPosition = HEADER_LENGTH + inboundRing * capacity;
+		} catch (IOException ioException) {
+			randomAccessFile.close();
+			throw ioException;
+		}
+
+		outboundView = map.duplicate();
+		inboundView = map.duplicate();
+		outboundTail = readCounter(outboundTailPosition, outboundSequence);
+		outboundHead = readCounter(outboundHeadPosition, outboundSequence);
+		inboundHead = readCounter(inboundHeadPosition, inboundSequence);
+	}
+
+	/** Returns the lock of the given byte, or null if it is held by another process or by this process */
+	private static FileLock tryLock(FileChannel channel, long position) throws IOException {
+		try {
+			return channel.tryLock(position, 1, false);
+		} catch (OverlappingFileLockException overlappingFileLockException) {
+			return null;
+		}
+	}
+
+	/** Call this method to stop the thread from receiving and forwarding future messages, and to release the side
+	 * of the file. Messages which have not yet been received remain within the file. */
+	public void done() {
+		done = true;
+
+		if (!isAlive()) {
+			close();
+		}
+	}
+
+	/** Starts receiving messages until the communication is stopped. Received messages are forwarded to all 
+	 * registered SoutilsObservers.
+	 * @see #done() */
+	@Override
+	public void run() {
+		long numberOfIdleIterations = 0;
+
+		while (!done) {
+			if (receiveMessages() > 0) {
+				numberOfIdleIterations = 0;
+			} else {
+				idle(numberOfIdleIterations++);
+			}
+		}
+
+		close();
+	}
+
+	/** Copies a message into the outbound ring. If the ring is full, the calling thread waits until the other side
+	 * has received enough messages. Messages sent before the other side has opened the file are received as soon
+	 * as it has been started.
+	 * @param messageContent the message to be sent
+	 * @throws CommunicationException if the message exceeds half of the ring capacity or the communication has been stopped */
+	public synchronized void sendMessage(String messageContent) throws CommunicationException {
+		if (done || closed) {
+			// The side may already have been taken over by another process
+			throw new CommunicationException("Communication not connected!");
+		}
+
+		int maximumRecordLength = align(RECORD_HEADER_LENGTH + Utf8Coders.maximumEncodedLength(messageContent));
+		if (maximumRecordLength > capacity / 2) {
+			throw new CommunicationException("The message exceeds half of the ring capacity!");
+		}
+
+		int offset = (int) (outboundTail & (capacity - 1));
+		// A record is never split, so the bytes at the end of the ring are skipped if the record does not fit
+		int paddingLength = capacity - offset < maximumRecordLength ? capacity - offset : 0;
+		awaitSpace(paddingLength + maximumRecordLength);
+
+		if (paddingLength > 0) {
+			map.putInt(outboundDataPosition + offset, PADDING);
+			outboundTail += paddingLength;
+			offset = 0;
+		}
+
+		int recordPosition = outboundDataPosition + offset;
+		outboundView.limit(recordPosition + maximumRecordLength);
+		outboundView.position(recordPosition + RECORD_HEADER_LENGTH);
+
+		try {
+			Utf8Coders.encode(messageContent, outboundView);
+		} catch (CharacterCodingException characterCodingException) {
+			throw new CommunicationException("The message cannot be encoded!", characterCodingException);
+		}
+
+		int messageLength = outboundView.position() - recordPosition - RECORD_HEADER_LENGTH;
+		map.putInt(recordPosition, messageLength);
+		outboundTail += align(RECORD_HEADER_LENGTH + messageLength);
+		writeCounter(outboundTailPosition, outboundTail, outboundSequence);
+	}
+
+	/** Waits until the outbound ring has the given number of free bytes */
+	private void awaitSpace(int length) throws CommunicationException {
+		long numberOfIdleIterations = 0;
+
+		while (capacity - (outboundTail - outboundHead) < length) {
+			if (done) {
+				throw new CommunicationException("Communication not connected!");
+			}
+
+			outboundHead = readCounter(outboundHeadPosition, outboundSequence);
+
+			if (capacity - (outboundTail - outboundHead) < length) {
+				idle(numberOfIdleIterations++);
+			}
+		}
+	}
+
+	/** Forwards all messages within the inbound ring to the SoutilsObservers, and releases their bytes afterwards.
+	 * A record exceeding the written bytes means that the file has been corrupted, which stops the communication.
+	 * @return the number of received messages */
+	private int receiveMessages() {
+		long inboundTail = readCounter(inboundTailPosition, inboundSequence);
+		int numberOfReceivedMessages = 0;
+
+		while (inboundHead < inboundTail) {
+			int offset = (int) (inboundHead & (capacity - 1));
+			int messageLength = map.getInt(inboundDataPosition + offset);
+
+			if (messageLength == PADDING) {
+				inboundHead += capacity - offset;
+				continue;
+			}
+
+			if (messageLength < 0 || RECORD_HEADER_LENGTH + messageLength > Math.min(capacity - offset, inboundTail - inboundHead)) {
+				notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, 
+						new CommunicationException("Invalid record of " + messageLength + " bytes received from " + name + "!")));
+				done = true;
+				break;
+			}
+
+			int messagePosition = inboundDataPosition + offset + RECORD_HEADER_LENGTH;
+			inboundView.limit(messagePosition + messageLength);
+			inboundView.position(messagePosition);
+			String messageContent = Utf8Coders.decode(inboundView);
+			inboundHead += align(RECORD_HEADER_LENGTH + messageLength);
+			numberOfReceivedMessages++;
+
+			notifyAllObservers(new SoutilsMessage(MessageType.COMMUNICATION, name, messageContent));
+		}
+
+		if (numberOfReceivedMessages > 0) {
+			writeCounter(inboundHeadPosition, inboundHead, inboundSequence);
+		}
+
+		return numberOfReceivedMessages;
+	}
+
+	/** Reads a counter with acquire semantics, so that no record is read before the counter. The counters are
+	 * aligned to a cache line, so that they are read and written at once. */
+	private long readCounter(int position, AtomicLong sequence) {
+		long counter = map.getLong(position);
+		sequence.incrementAndGet();
+
+		return counter;
+	}
+
+	/** Writes a counter with release semantics, so that the counter is never written before the records */
+	private void writeCounter(int position, long counter, AtomicLong sequence) {
+		sequence.incrementAndGet();
+		map.putLong(position, counter);
+	}
+
+	/** Spins, yields or parks the calling thread depending on how long it has been waiting already */
+	private static void idle(long numberOfIdleIterations) {
+		if (numberOfIdleIterations < NUMBER_OF_IDLE_SPINS) {
+			return;
+		} else if (numberOfIdleIterations < NUMBER_OF_IDLE_SPINS + Parameters.SHARED_MEMORY_NUMBER_OF_IDLE_YIELDS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(Parameters.SHARED_MEMORY_IDLE_PARK_DURATION_IN_MICROSECONDS));
+		}
+	}
+
+	private static int align(int length) {
+		return (length + RECORD_HEADER_LENGTH - 1) & ~(RECORD_HEADER_LENGTH - 1);
+	}
+
+	/** Releases the side of the file. The mapping itself is released once it has been garbage collected. */
+	private synchronized void close() {
+		if (closed) {
+			return;
+		}
+
+		closed = true;
+
+		try {
+			sideLock.release();
+			randomAccessFile.close();
+		} catch (IOException ioException) {
+			notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, ioException));
+		}
+	}
+}
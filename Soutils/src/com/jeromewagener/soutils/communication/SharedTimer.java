@@ -0,0 +1,273 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.jeromewagener.soutils.Parameters;
+import com.jeromewagener.soutils.messaging.MessageType;
+import com.jeromewagener.soutils.messaging.SoutilsMessage;
+import com.jeromewagener.soutils.messaging.SoutilsObservable;
+
+/** A hashed wheel timer executing the delayed tasks of all communications (e.g. heartbeats, request timeouts
+ * and linger flushes) using a single daemon thread. Scheduling and cancelling a task takes constant time, no 
+ * matter how many tasks are pending, as each task is put into the bucket of the wheel which corresponds to its 
+ * deadline. The timer thread advances the wheel by one bucket per tick and only looks at the tasks of the 
+ * current bucket. Tasks are therefore executed up to one tick late, and they must be short and must never block.
+ * Tasks which need to lock a communication hand their work over to the thread serving it, or to a worker thread.
+ * @see Parameters#TIMER_TICK_DURATION_IN_MILLISECONDS */
+final class SharedTimer {
+	private static final long TICK_DURATION_IN_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(Parameters.TIMER_TICK_DURATION_IN_MILLISECONDS);
+	private static final Bucket[] WHEEL = new Bucket[Parameters.TIMER_NUMBER_OF_WHEEL_BUCKETS];
+	/** Scheduled timeouts which have not yet been put into their buckets by the timer thread */
+	private static final Queue<Timeout> NEW_TIMEOUTS = new ConcurrentLinkedQueue<Timeout>();
+	/** Cancelled timeouts which have not yet been removed from their buckets by the timer thread */
+	private static final Queue<Timeout> CANCELLED_TIMEOUTS = new ConcurrentLinkedQueue<Timeout>();
+	private static final long START_TIME = System.nanoTime();
+
+	static {
+		if (Integer.bitCount(WHEEL.length) != 1) {
+			throw new IllegalStateException("The number of wheel buckets must be a power of two!");
+		}
+
+		for (int i=0; i<WHEEL.length; i++) {
+			WHEEL[i] = new Bucket();
+		}
+
+		Thread timerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runWheel();
+			}
+		}, "Soutils Timer");
+		timerThread.setDaemon(true);
+		timerThread.start();
+	}
+
+	private SharedTimer() {
+	}
+
+	/** Executes the given task once after the given delay
+	 * @param soutilsObservable the observable whose observers are informed if the task fails
+	 * @return a timeout which can be used to cancel the task */
+	static Timeout schedule(Runnable task, long delayInMilliseconds, SoutilsObservable soutilsObservable) {
+		Timeout timeout = new Timeout(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayInMilliseconds)), 
+				soutilsObservable);
+		NEW_TIMEOUTS.add(timeout);
+
+		return timeout;
+	}
+
+	/** Executes the given task on a worker thread. Used for the work of timer tasks which may have to wait for a
+	 * lock, and which cannot be handed over to a thread serving the communication. */
+	static void execute(Runnable task) {
+		Workers.EXECUTOR.execute(task);
+	}
+
+	private static void runWheel() {
+		long tick = 0;
+
+		while (true) {
+			long sleepTimeInNanoseconds = START_TIME + (tick + 1) * TICK_DURATION_IN_NANOSECONDS - System.nanoTime();
+
+			if (sleepTimeInNanoseconds > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepTimeInNanoseconds);
+				} catch (InterruptedException interruptedException) {
+					// The timer thread is never interrupted intentionally, so simply continue with the next tick
+				}
+
+				continue;
+			}
+
+			Timeout timeout;
+			while ((timeout = CANCELLED_TIMEOUTS.poll()) != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+
+			while ((timeout = NEW_TIMEOUTS.poll()) != null) {
+				if (timeout.state == Timeout.PENDING) {
+					long deadlineTick = Math.max(tickOf(timeout.deadline - START_TIME), tick);
+					timeout.remainingRounds = remainingRounds(deadlineTick, tick);
+					WHEEL[bucketOf(deadlineTick)].add(timeout);
+				}
+			}
+
+			WHEEL[bucketOf(tick)].expireTimeouts();
+			tick++;
+		}
+	}
+
+	/** Returns the tick containing the given point in time. The timer thread handles a tick once it has ended, so
+	 * a timeout is never expired before its deadline.
+	 * @param nanosecondsSinceStart the point in time relative to the start of the timer */
+	static long tickOf(long nanosecondsSinceStart) {
+		return nanosecondsSinceStart / TICK_DURATION_IN_NANOSECONDS;
+	}
+
+	/** Returns the index of the bucket handled during the given tick */
+	static int bucketOf(long tick) {
+		return (int) (tick & (WHEEL.length - 1));
+	}
+
+	/** Returns the number of times the bucket of a timeout has to be passed before the timeout expires
+	 * @param deadlineTick the tick during which the timeout expires, which must not precede the current tick */
+	static long remainingRounds(long deadlineTick, long currentTick) {
+		return (deadlineTick - currentTick) / WHEEL.length;
+	}
+
+	/** A scheduled task which can be cancelled until it has been executed */
+	static final class Timeout {
+		private static final int PENDING = 0;
+		private static final int CANCELLED = 1;
+		private static final int EXPIRED = 2;
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final Runnable task;
+		private final long deadline;
+		private final SoutilsObservable soutilsObservable;
+		private volatile int state = PENDING;
+		/** The number of wheel rotations left before the timeout expires. Only accessed by the timer thread. */
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout previous;
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadline, SoutilsObservable soutilsObservable) {
+			this.task = task;
+			this.deadline = deadline;
+			this.soutilsObservable = soutilsObservable;
+		}
+
+		/** Prevents the task from being executed, unless it has already been executed */
+		void cancel() {
+			if (STATE.compareAndSet(this, PENDING, CANCELLED)) {
+				CANCELLED_TIMEOUTS.add(this);
+			}
+		}
+
+		private void expire() {
+			if (STATE.compareAndSet(this, PENDING, EXPIRED)) {
+				try {
+					task.run();
+				} catch (Throwable throwable) {
+					// A failing task must neither stop the timer nor delay the other tasks
+					report(throwable);
+				}
+			}
+		}
+
+		/** Informs the observers of the task's owner about its failure, or the timer thread's uncaught exception 
+		 * handler if an observer fails as well */
+		private void report(Throwable throwable) {
+			try {
+				soutilsObservable.notifyAllObservers(new SoutilsMessage(MessageType.ERROR, SoutilsMessage.INTERNAL, throwable));
+			} catch (Throwable observerThrowable) {
+				Thread currentThread = Thread.currentThread();
+				currentThread.getUncaughtExceptionHandler().uncaughtException(currentThread, throwable);
+			}
+		}
+	}
+
+	/** The worker threads, which are only created once the first task is handed over to a worker. Their number is
+	 * bounded, so that many tasks expiring at once are queued instead of starting a thread each. */
+	private static final class Workers {
+		private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(Parameters.TIMER_NUMBER_OF_WORKER_THREADS, 
+				Parameters.TIMER_NUMBER_OF_WORKER_THREADS, Parameters.TIMER_WORKER_KEEP_ALIVE_IN_MILLISECONDS, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread workerThread = new Thread(runnable, "Soutils Timer Worker");
+						workerThread.setDaemon(true);
+						return workerThread;
+					}
+				});
+
+		static {
+			// Idle workers terminate, as they are only needed while timer work is waiting for a lock
+			EXECUTOR.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	/** A doubly linked list of the timeouts expiring within the same tick of any wheel rotation. Buckets are only 
+	 * accessed by the timer thread. */
+	private static final class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+
+			if (head == null) {
+				head = timeout;
+				tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.previous = tail;
+				tail = timeout;
+			}
+		}
+
+		private void expireTimeouts() {
+			Timeout timeout = head;
+
+			while (timeout != null) {
+				Timeout next = timeout.next;
+
+				if (timeout.remainingRounds <= 0) {
+					remove(timeout);
+					timeout.expire();
+				} else {
+					timeout.remainingRounds--;
+				}
+
+				timeout = next;
+			}
+		}
+
+		private void remove(Timeout timeout) {
+			if (timeout.previous == null) {
+				head = timeout.next;
+			} else {
+				timeout.previous.next = timeout.next;
+			}
+
+			if (timeout.next == null) {
+				tail = timeout.previous;
+			} else {
+				timeout.next.previous = timeout.previous;
+			}
+
+			timeout.previous = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+	}
+}
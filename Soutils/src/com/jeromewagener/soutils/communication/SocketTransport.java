@@ -0,0 +1,84 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/** A transport using a TCP socket channel, whose readiness is reported by the selector of the reactor serving it */
+final class SocketTransport implements Transport {
+	private final SocketChannel socketChannel;
+	/** The key of the channel within the selector of its reactor, or null if no reactor serves the channel */
+	private SelectionKey selectionKey = null;
+
+	SocketTransport(SocketChannel socketChannel) {
+		this.socketChannel = socketChannel;
+	}
+
+	@Override
+	public InetSocketAddress getRemoteSocketAddress() {
+		return (InetSocketAddress) socketChannel.socket().getRemoteSocketAddress();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return socketChannel.isConnected();
+	}
+
+	@Override
+	public void configureBlocking(boolean blocking) throws IOException {
+		socketChannel.configureBlocking(blocking);
+	}
+
+	@Override
+	public int read(ByteBuffer buffer) throws IOException {
+		return socketChannel.read(buffer);
+	}
+
+	@Override
+	public long write(ByteBuffer[] buffers, int offset, int length) throws IOException {
+		return socketChannel.write(buffers, offset, length);
+	}
+
+	@Override
+	public void register(CommunicationReactor reactor, Communication communication) throws IOException {
+		selectionKey = reactor.registerChannel(socketChannel, SelectionKey.OP_READ, communication);
+	}
+
+	@Override
+	public void setInterestOps(int interestOps) {
+		if (selectionKey.isValid()) {
+			selectionKey.interestOps(interestOps);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		// Closing the channel cancels its selection key as well
+		socketChannel.socket().close();
+		socketChannel.close();
+	}
+}
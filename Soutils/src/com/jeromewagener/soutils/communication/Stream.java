@@ -0,0 +1,219 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** A logical, ordered byte stream multiplexed with many other streams over a single communication. Every stream has
+ * its own flow control window: the sender may only send as many bytes as the receiver has not yet read, so 
+ * that a bulk stream whose receiver falls behind stops sending instead of delaying all other streams of the 
+ * communication. Streams are opened by either side using {@link Communication#openStream()}. Received bytes are
+ * buffered by the stream until they are read, while the {@link StreamHandler} of the receiving communication is
+ * informed about their arrival. The receiving thread therefore never waits for the reader of a stream.
+ * 
+ * Closing a stream only ends the sending direction. A stream is forgotten once both sides have closed it.
+ * @see Communication#openStream(MessagePriority)
+ * @see StreamHandler */
+public final class Stream {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final Communication communication;
+	private final int id;
+	private final MessagePriority messagePriority;
+	/** The number of bytes which may still be sent, guarded by the communication */
+	int sendWindow = Parameters.COMMUNICATION_STREAM_WINDOW_IN_BYTES;
+	/** The number of received bytes which have not yet been acknowledged, guarded by the communication */
+	int numberOfUnacknowledgedBytes = 0;
+	boolean closedLocally = false;
+	boolean closedRemotely = false;
+	/** True once the remote device knows about the stream, as it has opened it or bytes have been sent */
+	boolean announced = false;
+	/** Bytes which exceed the send window and are sent once it is replenished, guarded by the communication */
+	final Queue<ByteBuffer> pendingData = new ArrayDeque<ByteBuffer>();
+	/** True if the stream has been closed while bytes were pending, guarded by the communication */
+	boolean closeFramePending = false;
+	/** Received bytes which have not yet been read, guarded by the stream */
+	private final Queue<ByteBuffer> receivedChunks = new ArrayDeque<ByteBuffer>();
+	private int numberOfReceivedBytes = 0;
+	private boolean endOfStream = false;
+
+	Stream(Communication communication, int id, MessagePriority messagePriority) {
+		this.communication = communication;
+		this.id = id;
+		this.messagePriority = messagePriority;
+	}
+
+	/** Returns the id identifying the stream on both sides of the communication */
+	public int getId() {
+		return id;
+	}
+
+	/** Returns the communication over which the stream is sent */
+	public Communication getCommunication() {
+		return communication;
+	}
+
+	/** Returns the priority with which the bytes of the stream are sent. The bytes of streams opened by the remote
+	 * device are sent with {@link MessagePriority#NORMAL} priority. */
+	public MessagePriority getMessagePriority() {
+		return messagePriority;
+	}
+
+	/** Sends the bytes between the position and the limit of the given buffer, in chunks of at most 
+	 * {@link Parameters#COMMUNICATION_STREAM_MAXIMUM_CHUNK_SIZE_IN_BYTES}. The calling thread waits while the flow
+	 * control window of the stream is exhausted, unless it is the thread of a reactor or channel group. The buffer
+	 * itself is not modified.
+	 * @param data the bytes to be sent
+	 * @throws CommunicationException if the stream or the communication has been closed */
+	public void send(ByteBuffer data) throws CommunicationException {
+		communication.sendStreamData(this, data.duplicate());
+	}
+
+	/** Sends the UTF-8 encoded bytes of the given string
+	 * @param content the string to be sent
+	 * @throws CommunicationException if the stream or the communication has been closed
+	 * @see #send(ByteBuffer) */
+	public void send(String content) throws CommunicationException {
+		communication.sendStreamData(this, ByteBuffer.wrap(content.getBytes(UTF_8)));
+	}
+
+	/** Ends the sending direction of the stream. The remote device is informed once all bytes sent beforehand
+	 * have been written. */
+	public void close() {
+		communication.closeStream(this);
+	}
+
+	/** Reads as many received bytes as the given buffer can hold, without waiting for further bytes
+	 * @param destination the buffer the bytes are written to
+	 * @return the number of bytes read, or -1 if all bytes have been read and the remote device has closed the 
+	 * stream (or the communication has been closed) */
+	public int read(ByteBuffer destination) {
+		int numberOfBytesRead = 0;
+
+		synchronized (this) {
+			if (numberOfReceivedBytes == 0) {
+				return endOfStream ? -1 : 0;
+			}
+
+			while (destination.hasRemaining() && !receivedChunks.isEmpty()) {
+				ByteBuffer chunk = receivedChunks.peek();
+				int length = Math.min(chunk.remaining(), destination.remaining());
+				int limit = chunk.limit();
+
+				chunk.limit(chunk.position() + length);
+				destination.put(chunk);
+				chunk.limit(limit);
+
+				if (!chunk.hasRemaining()) {
+					receivedChunks.poll();
+				}
+
+				numberOfBytesRead += length;
+			}
+
+			numberOfReceivedBytes -= numberOfBytesRead;
+		}
+
+		if (numberOfBytesRead > 0) {
+			// The remote device may send as many bytes as have been read
+			communication.acknowledgeStreamData(this, numberOfBytesRead);
+		}
+
+		return numberOfBytesRead;
+	}
+
+	/** Waits until bytes have been received or the stream has been closed by the remote device, and reads as many
+	 * bytes as the given buffer can hold
+	 * @param destination the buffer the bytes are written to
+	 * @param timeoutInMilliseconds the maximum time to wait for received bytes
+	 * @return the number of bytes read (0 if the timeout has elapsed), or -1 if all bytes have been read and the 
+	 * remote device has closed the stream (or the communication has been closed)
+	 * @throws InterruptedException if the calling thread has been interrupted while waiting
+	 * @see #read(ByteBuffer) */
+	public int read(ByteBuffer destination, long timeoutInMilliseconds) throws InterruptedException {
+		synchronized (this) {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutInMilliseconds);
+
+			while (numberOfReceivedBytes == 0 && !endOfStream) {
+				long remainingNanoseconds = deadline - System.nanoTime();
+				if (remainingNanoseconds <= 0) {
+					break;
+				}
+
+				TimeUnit.NANOSECONDS.timedWait(this, remainingNanoseconds);
+			}
+		}
+
+		return read(destination);
+	}
+
+	/** Returns the number of received bytes which can be read without waiting */
+	public synchronized int getNumberOfReceivedBytes() {
+		return numberOfReceivedBytes;
+	}
+
+	/** Buffers a copy of received bytes until they are read. Called by the thread receiving the messages.
+	 * @return true if no received bytes had been left, so that the stream handler has to be informed
+	 * @throws CommunicationException if the remote device has exceeded the flow control window */
+	synchronized boolean receive(ByteBuffer data) throws CommunicationException {
+		if (numberOfReceivedBytes + data.remaining() > Parameters.COMMUNICATION_STREAM_WINDOW_IN_BYTES) {
+			throw new CommunicationException("The remote device has exceeded the flow control window of stream " + id + "!");
+		}
+
+		ByteBuffer chunk = ByteBuffer.allocate(data.remaining());
+		chunk.put(data);
+		chunk.flip();
+
+		boolean drained = numberOfReceivedBytes == 0;
+		receivedChunks.add(chunk);
+		numberOfReceivedBytes += chunk.remaining();
+		notifyAll();
+
+		return drained;
+	}
+
+	/** Called once the remote device will not send any further bytes, so that readers stop waiting */
+	synchronized void receiveEndOfStream() {
+		endOfStream = true;
+		notifyAll();
+	}
+
+	/** Returns true if the stream has been closed by this side or the communication has been closed */
+	public boolean isClosed() {
+		synchronized (communication) {
+			return closedLocally;
+		}
+	}
+
+	/** Returns the number of bytes which can currently be sent without waiting */
+	public int getSendWindow() {
+		synchronized (communication) {
+			return Math.max(0, sendWindow);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+
+/** A StreamHandler is informed about the streams opened by the remote device and about the bytes received by all
+ * streams of a communication. All methods are called by the thread receiving the messages of the communication, 
+ * and must therefore never wait. Received bytes are buffered by their stream and read using 
+ * {@link Stream#read(ByteBuffer)}, possibly by another thread.
+ * @see Communication#setStreamHandler(StreamHandler)
+ * @see Stream */
+public interface StreamHandler {
+	/** Called as soon as the first bytes of a stream opened by the remote device have been received. Streams
+	 * opened by the remote device count towards 
+	 * {@link com.jeromewagener.soutils.Parameters#COMMUNICATION_MAXIMUM_REMOTE_STREAMS_PER_COMMUNICATION} until 
+	 * they have been closed by both sides, and must therefore be closed once they are no longer needed.
+	 * @param stream the newly opened stream */
+	void handleStreamOpened(Stream stream);
+
+	/** Called once bytes have been received by a stream none of whose bytes were left unread. The flow control 
+	 * window of the stream is replenished as its bytes are read, so that a slow reader slows down the sender of
+	 * this stream only. Bytes should be read until {@link Stream#read(ByteBuffer)} returns 0, as this method is 
+	 * not called again before.
+	 * @param stream the stream which has received bytes */
+	void handleStreamData(Stream stream);
+
+	/** Called once the remote device has closed the stream, or the communication has been closed
+	 * @param stream the closed stream */
+	void handleStreamClosed(Stream stream);
+}
@@ -0,0 +1,204 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** The topic subscriptions of the communications of a CommunicationManager. Exact subscriptions are kept in a hash
+ * map, whereas wildcard subscriptions are kept in a trie of their prefixes. Finding the subscribers of a topic 
+ * therefore takes a single lookup plus one step per character of the topic, regardless of the number of 
+ * subscriptions. A topic pattern ending with {@link #WILDCARD} matches all topics starting with the characters
+ * in front of the wildcard, so that "*" matches all topics.
+ * @see CommunicationManager#publish(String, String) */
+final class TopicIndex {
+	static final char WILDCARD = '*';
+
+	private final Map<String, Set<Communication>> exactSubscribers = new HashMap<String, Set<Communication>>();
+	private final Node prefixRoot = new Node();
+	/** The topic patterns subscribed by every communication, so that they can be removed once it is closed */
+	private final Map<Communication, Set<String>> subscriptions = new HashMap<Communication, Set<String>>();
+
+	/** Subscribes a communication to all topics matching the given pattern
+	 * @return false if the communication has already subscribed to the pattern
+	 * @throws CommunicationException if the communication has reached the maximum number of subscriptions */
+	synchronized boolean subscribe(Communication communication, String topicPattern) throws CommunicationException {
+		Set<String> topicPatterns = subscriptions.get(communication);
+
+		if (topicPatterns == null) {
+			topicPatterns = new HashSet<String>();
+			subscriptions.put(communication, topicPatterns);
+		} else if (topicPatterns.contains(topicPattern)) {
+			return false;
+		} else if (topicPatterns.size() >= Parameters.COMMUNICATION_MAXIMUM_SUBSCRIPTIONS_PER_COMMUNICATION) {
+			throw new CommunicationException("The maximum number of subscriptions has been reached!");
+		}
+
+		topicPatterns.add(topicPattern);
+
+		if (isWildcard(topicPattern)) {
+			Node node = prefixRoot;
+			for (int i=0; i<topicPattern.length()-1; i++) {
+				node = node.getOrAddChild(topicPattern.charAt(i));
+			}
+
+			if (node.subscribers == null) {
+				node.subscribers = new HashSet<Communication>();
+			}
+
+			node.subscribers.add(communication);
+		} else {
+			Set<Communication> communications = exactSubscribers.get(topicPattern);
+			if (communications == null) {
+				communications = new HashSet<Communication>();
+				exactSubscribers.put(topicPattern, communications);
+			}
+
+			communications.add(communication);
+		}
+
+		return true;
+	}
+
+	/** Removes the subscription of a communication to the given topic pattern
+	 * @return false if the communication has not subscribed to the pattern */
+	synchronized boolean unsubscribe(Communication communication, String topicPattern) {
+		Set<String> topicPatterns = subscriptions.get(communication);
+
+		if (topicPatterns == null || !topicPatterns.remove(topicPattern)) {
+			return false;
+		}
+
+		if (topicPatterns.isEmpty()) {
+			subscriptions.remove(communication);
+		}
+
+		if (isWildcard(topicPattern)) {
+			removePrefixSubscriber(communication, topicPattern);
+		} else {
+			Set<Communication> communications = exactSubscribers.get(topicPattern);
+			communications.remove(communication);
+
+			if (communications.isEmpty()) {
+				exactSubscribers.remove(topicPattern);
+			}
+		}
+
+		return true;
+	}
+
+	/** Removes all subscriptions of a communication */
+	synchronized void unsubscribeAll(Communication communication) {
+		Set<String> topicPatterns = subscriptions.get(communication);
+
+		if (topicPatterns != null) {
+			for (String topicPattern : new ArrayList<String>(topicPatterns)) {
+				unsubscribe(communication, topicPattern);
+			}
+		}
+	}
+
+	/** Returns every communication which has subscribed to a pattern matching the given topic, each only once */
+	synchronized Set<Communication> getSubscribers(String topic) {
+		Set<Communication> communications = exactSubscribers.get(topic);
+		Set<Communication> subscribers = communications == null 
+				? new LinkedHashSet<Communication>() : new LinkedHashSet<Communication>(communications);
+
+		Node node = prefixRoot;
+		for (int i=0; node != null; i++) {
+			if (node.subscribers != null) {
+				subscribers.addAll(node.subscribers);
+			}
+
+			node = i < topic.length() ? node.getChild(topic.charAt(i)) : null;
+		}
+
+		return subscribers;
+	}
+
+	/** Returns the topic patterns subscribed by the given communication */
+	synchronized Set<String> getSubscriptions(Communication communication) {
+		Set<String> topicPatterns = subscriptions.get(communication);
+		return topicPatterns == null ? Collections.<String>emptySet() : new HashSet<String>(topicPatterns);
+	}
+
+	private void removePrefixSubscriber(Communication communication, String topicPattern) {
+		// The path is remembered so that nodes which are no longer needed can be removed
+		List<Node> path = new ArrayList<Node>(topicPattern.length());
+		Node node = prefixRoot;
+		path.add(node);
+
+		for (int i=0; i<topicPattern.length()-1; i++) {
+			node = node.getChild(topicPattern.charAt(i));
+			path.add(node);
+		}
+
+		node.subscribers.remove(communication);
+		if (node.subscribers.isEmpty()) {
+			node.subscribers = null;
+		}
+
+		for (int i=path.size()-1; i>0 && path.get(i).isEmpty(); i--) {
+			path.get(i - 1).children.remove(topicPattern.charAt(i - 1));
+		}
+	}
+
+	private static boolean isWildcard(String topicPattern) {
+		return topicPattern.length() > 0 && topicPattern.charAt(topicPattern.length() - 1) == WILDCARD;
+	}
+
+	/** A node of the prefix trie, holding the subscribers of the prefix leading to it */
+	private static final class Node {
+		private Map<Character, Node> children = null;
+		private Set<Communication> subscribers = null;
+
+		private Node getChild(char c) {
+			return children == null ? null : children.get(c);
+		}
+
+		private Node getOrAddChild(char c) {
+			if (children == null) {
+				children = new HashMap<Character, Node>();
+			}
+
+			Node child = children.get(c);
+			if (child == null) {
+				child = new Node();
+				children.put(c, child);
+			}
+
+			return child;
+		}
+
+		private boolean isEmpty() {
+			return subscribers == null && (children == null || children.isEmpty());
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/** The connection over which a communication exchanges bytes, unless it uses asynchronous I/O. A transport is read
+ * and written by the thread serving its communication: the communication thread, which either polls or blocks, 
+ * or a reactor to which the transport reports its readiness. Reads and writes never wait unless the transport
+ * has been configured to block.
+ * @see SocketTransport
+ * @see LoopbackTransport
+ * @see AsynchronousTransport */
+interface Transport {
+	/** Returns the IP address and port of the remote device */
+	InetSocketAddress getRemoteSocketAddress();
+
+	/** Returns true until the transport has been closed */
+	boolean isConnected();
+
+	/** Lets reads wait for bytes and writes wait until all bytes have been written. Transports served by a reactor
+	 * must not block. */
+	void configureBlocking(boolean blocking) throws IOException;
+
+	/** Reads as many available bytes as the given buffer has space for
+	 * @return the number of bytes read, or -1 once the remote device has closed the connection */
+	int read(ByteBuffer buffer) throws IOException;
+
+	/** Writes as many bytes of the given buffers as the transport currently accepts
+	 * @return the number of bytes written */
+	long write(ByteBuffer[] buffers, int offset, int length) throws IOException;
+
+	/** Lets the given reactor serve the communication as soon as the transport is readable. Called by the reactor thread. */
+	void register(CommunicationReactor reactor, Communication communication) throws IOException;
+
+	/** Sets the readiness (SelectionKey.OP_READ and SelectionKey.OP_WRITE) reported to the reactor serving the 
+	 * communication. Called by the reactor thread. */
+	void setInterestOps(int interestOps);
+
+	/** Closes the transport, which wakes up all threads waiting for it. Reads and writes fail from now on. */
+	void close() throws IOException;
+}
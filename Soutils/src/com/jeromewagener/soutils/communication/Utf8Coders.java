@@ -0,0 +1,106 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** UTF-8 encoding and decoding using encoders, decoders and character buffers which are cached per thread */
+final class Utf8Coders {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final ThreadLocal<CharsetEncoder> ENCODER = new ThreadLocal<CharsetEncoder>() {
+		@Override
+		protected CharsetEncoder initialValue() {
+			return UTF_8.newEncoder();
+		}
+	};
+
+	private static final ThreadLocal<CharsetDecoder> DECODER = new ThreadLocal<CharsetDecoder>() {
+		@Override
+		protected CharsetDecoder initialValue() {
+			return UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+	};
+
+	private static final ThreadLocal<CharBuffer> CHARACTERS = new ThreadLocal<CharBuffer>() {
+		@Override
+		protected CharBuffer initialValue() {
+			return CharBuffer.allocate(Parameters.COMMUNICATION_BUFFER_SIZE_IN_BYTES);
+		}
+	};
+
+	private Utf8Coders() {
+	}
+
+	/** Returns the maximum number of bytes required to encode the given string */
+	static int maximumEncodedLength(String string) {
+		return (int) (string.length() * ENCODER.get().maxBytesPerChar());
+	}
+
+	/** Encodes the given string into the given buffer, starting at the position of the buffer
+	 * @throws CharacterCodingException if the string is not a valid UTF-16 character sequence */
+	static void encode(String string, ByteBuffer buffer) throws CharacterCodingException {
+		CharsetEncoder encoder = ENCODER.get();
+		encoder.reset();
+
+		CoderResult coderResult = encoder.encode(CharBuffer.wrap(string), buffer, true);
+		if (!coderResult.isUnderflow()) {
+			coderResult.throwException();
+		}
+
+		encoder.flush(buffer);
+	}
+
+	/** Decodes all remaining bytes of the given buffer. Malformed input is replaced as done by {@link String#String(byte[], String)} */
+	static String decode(ByteBuffer buffer) {
+		CharsetDecoder decoder = DECODER.get();
+		CharBuffer characters = CHARACTERS.get();
+
+		if (characters.capacity() < buffer.remaining()) {
+			characters = CharBuffer.allocate(buffer.remaining());
+
+			// Very large messages are rare, their buffers are therefore not cached
+			if (characters.capacity() <= Parameters.COMMUNICATION_BUFFER_SIZE_IN_BYTES * 16) {
+				CHARACTERS.set(characters);
+			}
+		}
+
+		characters.clear();
+		decoder.reset();
+		decoder.decode(buffer, characters, true);
+		decoder.flush(characters);
+		characters.flip();
+
+		return characters.toString();
+	}
+}
@@ -32,5 +32,7 @@ public enum MessageType {
 	/** An internal information message that contains status information. E.g the current file transfer percentage */
 	INFO,
 	/** An internal error message */
-	ERROR
+	ERROR,
+	/** A typed object retrieved from a communication. The object is attached to the message instead of a content. */
+	OBJECT
 }
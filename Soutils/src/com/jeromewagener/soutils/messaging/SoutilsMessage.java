@@ -34,6 +34,10 @@ public class SoutilsMessage {
 	private String content = null;
 	/** A throwable in case an error occurred */
 	private Throwable throwable;
+	/** The received object in case of an {@link MessageType#OBJECT} message */
+	private Object object = null;
+	/** The topic to which the message or object has been published, or null */
+	private String topic = null;
 	
 	/** Creates a message instance based on the supplied parameters
 	 * @param type the type of the message
@@ -57,6 +61,37 @@ public class SoutilsMessage {
 		this.throwable = throwable;
 	}
 	
+	/** Creates a message carrying an object instead of a content
+	 * @param senderAddress the IP address of the object sender
+	 * @param object the object attached to the message
+	 * @return a message of the type {@link MessageType#OBJECT} */
+	public static SoutilsMessage object(String senderAddress, Object object) {
+		return object(senderAddress, null, object);
+	}
+
+	/** Creates a message carrying an object which has been published to a topic
+	 * @param senderAddress the IP address of the object sender
+	 * @param topic the topic to which the object has been published, or null if it has been sent directly
+	 * @param object the object attached to the message
+	 * @return a message of the type {@link MessageType#OBJECT} */
+	public static SoutilsMessage object(String senderAddress, String topic, Object object) {
+		SoutilsMessage soutilsMessage = new SoutilsMessage(MessageType.OBJECT, senderAddress, (String) null);
+		soutilsMessage.topic = topic;
+		soutilsMessage.object = object;
+		return soutilsMessage;
+	}
+
+	/** Creates a communication message which has been published to a topic
+	 * @param senderAddress the IP address of the message sender
+	 * @param topic the topic to which the message has been published
+	 * @param content the actual content of the message
+	 * @return a message of the type {@link MessageType#COMMUNICATION} */
+	public static SoutilsMessage publication(String senderAddress, String topic, String content) {
+		SoutilsMessage soutilsMessage = new SoutilsMessage(MessageType.COMMUNICATION, senderAddress, content);
+		soutilsMessage.topic = topic;
+		return soutilsMessage;
+	}
+	
 	/** Returns the sender address */
 	public String getSenderAddress() {
 		return senderAddress;
@@ -76,4 +111,14 @@ public class SoutilsMessage {
 	public Throwable getThrowable() {
 		return throwable;
 	}
+
+	/** Returns the object attached to the message, or null if no object has been attached */
+	public Object getObject() {
+		return object;
+	}
+
+	/** Returns the topic to which the message or object has been published, or null if it has been sent directly */
+	public String getTopic() {
+		return topic;
+	}
 }
@@ -0,0 +1,108 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/** Tests the size classes of the buffer pool and the detection of buffers which are released twice */
+public class BufferPoolTest extends TestCase {
+	private final BufferPool bufferPool = new BufferPool(64, 3, 2);
+
+	public void testBuffersAreTakenFromTheSmallestFittingSizeClass() {
+		ByteBuffer smallBuffer = bufferPool.acquire(1);
+		ByteBuffer mediumBuffer = bufferPool.acquire(65);
+		ByteBuffer largeBuffer = bufferPool.acquire(1024);
+
+		assertEquals(64, smallBuffer.capacity());
+		assertEquals(256, mediumBuffer.capacity());
+		assertEquals(1024, largeBuffer.capacity());
+		assertTrue(largeBuffer.isDirect());
+		assertEquals(3, bufferPool.getNumberOfAcquiredBuffers());
+
+		bufferPool.release(smallBuffer);
+		bufferPool.release(mediumBuffer);
+		bufferPool.release(largeBuffer);
+		assertEquals(0, bufferPool.getNumberOfAcquiredBuffers());
+	}
+
+	public void testReleasedBuffersAreReusedCleared() {
+		ByteBuffer buffer = bufferPool.acquire(10);
+		buffer.putInt(42);
+		bufferPool.release(buffer);
+
+		ByteBuffer reusedBuffer = bufferPool.acquire(20);
+		assertSame(buffer, reusedBuffer);
+		assertEquals(0, reusedBuffer.position());
+		assertEquals(reusedBuffer.capacity(), reusedBuffer.limit());
+
+		bufferPool.release(reusedBuffer);
+	}
+
+	public void testReleasingTwiceIsRejected() {
+		ByteBuffer buffer = bufferPool.acquire(10);
+		bufferPool.release(buffer);
+
+		try {
+			bufferPool.release(buffer);
+			fail("Releasing a buffer twice must be rejected");
+		} catch (IllegalArgumentException illegalArgumentException) {
+			assertEquals(0, bufferPool.getNumberOfAcquiredBuffers());
+		}
+
+		// The buffer must not have been put into the free list twice, and would otherwise be handed out twice
+		ByteBuffer firstBuffer = bufferPool.acquire(10);
+		ByteBuffer secondBuffer = bufferPool.acquire(10);
+		assertNotSame(firstBuffer, secondBuffer);
+
+		bufferPool.release(firstBuffer);
+		bufferPool.release(secondBuffer);
+	}
+
+	public void testOversizedAndForeignBuffersAreNotPooled() {
+		ByteBuffer oversizedBuffer = bufferPool.acquire(4096);
+		assertFalse(oversizedBuffer.isDirect());
+		assertEquals(4096, oversizedBuffer.capacity());
+		assertEquals(0, bufferPool.getNumberOfAcquiredBuffers());
+
+		bufferPool.release(oversizedBuffer);
+		bufferPool.release(ByteBuffer.allocateDirect(64));
+		bufferPool.release(ByteBuffer.allocateDirect(64));
+
+		assertEquals(0, bufferPool.getNumberOfAcquiredBuffers());
+	}
+
+	public void testLeakDetectionRecordsUnreleasedBuffers() {
+		bufferPool.setLeakDetectionEnabled(true);
+
+		ByteBuffer leakedBuffer = bufferPool.acquire(10);
+		ByteBuffer releasedBuffer = bufferPool.acquire(10);
+		bufferPool.release(releasedBuffer);
+
+		assertEquals(1, bufferPool.getUnreleasedBufferTraces().size());
+
+		bufferPool.release(leakedBuffer);
+		assertTrue(bufferPool.getUnreleasedBufferTraces().isEmpty());
+	}
+}
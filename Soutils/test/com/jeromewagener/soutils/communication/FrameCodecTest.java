@@ -0,0 +1,185 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/** Tests the decoding of frames which are split across several reads or coalesced within a single read */
+public class FrameCodecTest extends TestCase {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final List<Byte> frameTypes = new ArrayList<Byte>();
+	private final List<String> payloads = new ArrayList<String>();
+	private final FrameHandler frameHandler = new FrameHandler() {
+		@Override
+		public void handleFrame(byte frameType, ByteBuffer payload) {
+			byte[] bytes = new byte[payload.remaining()];
+			payload.get(bytes);
+
+			frameTypes.add(frameType);
+			payloads.add(new String(bytes, UTF_8));
+		}
+	};
+
+	public void testLengthPrefixedCodecDecodesCoalescedFrames() throws Exception {
+		LengthPrefixedFrameCodec codec = new LengthPrefixedFrameCodec();
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		buffer.put(encode(codec, FrameType.MESSAGE, "first"));
+		buffer.put(encode(codec, FrameType.REQUEST, ""));
+		buffer.put(encode(codec, FrameType.PING, "third"));
+		buffer.flip();
+
+		codec.decode(buffer, frameHandler);
+
+		assertEquals(3, payloads.size());
+		assertEquals(FrameType.MESSAGE, frameTypes.get(0).byteValue());
+		assertEquals("first", payloads.get(0));
+		assertEquals(FrameType.REQUEST, frameTypes.get(1).byteValue());
+		assertEquals("", payloads.get(1));
+		assertEquals(FrameType.PING, frameTypes.get(2).byteValue());
+		assertEquals("third", payloads.get(2));
+		assertFalse(buffer.hasRemaining());
+	}
+
+	public void testLengthPrefixedCodecKeepsSplitFramesUntilComplete() throws Exception {
+		LengthPrefixedFrameCodec codec = new LengthPrefixedFrameCodec();
+		ByteBuffer frames = ByteBuffer.allocate(256);
+		frames.put(encode(codec, FrameType.MESSAGE, "first"));
+		frames.put(encode(codec, FrameType.MESSAGE, "second"));
+		frames.flip();
+
+		// Feed the frames one byte at a time, compacting the buffer between two reads as a communication does
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		while (frames.hasRemaining()) {
+			buffer.put(frames.get());
+			buffer.flip();
+			codec.decode(buffer, frameHandler);
+			buffer.compact();
+
+			if (frames.position() < LengthPrefixedFrameCodec.HEADER_LENGTH + "first".length()) {
+				assertTrue(payloads.isEmpty());
+			}
+		}
+
+		assertEquals(2, payloads.size());
+		assertEquals("first", payloads.get(0));
+		assertEquals("second", payloads.get(1));
+		assertEquals(0, buffer.position());
+	}
+
+	public void testLengthPrefixedCodecLeavesIncompleteFrameAtItsStart() throws Exception {
+		LengthPrefixedFrameCodec codec = new LengthPrefixedFrameCodec();
+		ByteBuffer second = encode(codec, FrameType.MESSAGE, "second");
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		buffer.put(encode(codec, FrameType.MESSAGE, "first"));
+		int startOfSecondFrame = buffer.position();
+		second.limit(second.limit() - 2);
+		buffer.put(second);
+		buffer.flip();
+
+		codec.decode(buffer, frameHandler);
+
+		assertEquals(1, payloads.size());
+		assertEquals(startOfSecondFrame, buffer.position());
+	}
+
+	public void testLengthPrefixedCodecRejectsInvalidLength() {
+		LengthPrefixedFrameCodec codec = new LengthPrefixedFrameCodec();
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putInt(0);
+		buffer.flip();
+
+		try {
+			codec.decode(buffer, frameHandler);
+			fail("A frame without frame type must be rejected");
+		} catch (CommunicationException communicationException) {
+			assertTrue(payloads.isEmpty());
+		}
+	}
+
+	public void testDelimitedCodecSplitsCoalescedMessages() throws Exception {
+		DelimitedFrameCodec codec = new DelimitedFrameCodec("<s>");
+		ByteBuffer buffer = ByteBuffer.wrap("  <s>first<s>second<s>  <s>third\n".getBytes(UTF_8));
+
+		codec.decode(buffer, frameHandler);
+
+		assertEquals(3, payloads.size());
+		assertEquals("<s>first", payloads.get(0));
+		assertEquals("<s>second", payloads.get(1));
+		assertEquals("<s>third", payloads.get(2));
+		assertEquals(FrameType.MESSAGE, frameTypes.get(0).byteValue());
+		assertFalse(buffer.hasRemaining());
+	}
+
+	public void testDelimitedCodecKeepsSplitCharacterUntilComplete() throws Exception {
+		DelimitedFrameCodec codec = new DelimitedFrameCodec("<s>");
+		byte[] message = "<s>gr\u00fc\u20ac".getBytes(UTF_8);
+
+		// Cut the three byte encoding of the last character after its first byte
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.put(message, 0, message.length - 2);
+		buffer.flip();
+		codec.decode(buffer, frameHandler);
+
+		assertEquals(1, payloads.size());
+		assertEquals("<s>gr\u00fc", payloads.get(0));
+		assertEquals(1, buffer.remaining());
+
+		buffer.compact();
+		buffer.put(message, message.length - 2, 2);
+		buffer.flip();
+		codec.decode(buffer, frameHandler);
+
+		assertEquals(2, payloads.size());
+		assertEquals("\u20ac", payloads.get(1));
+		assertFalse(buffer.hasRemaining());
+	}
+
+	public void testDelimitedCodecOnlyEncodesMessages() throws Exception {
+		DelimitedFrameCodec codec = new DelimitedFrameCodec("<s>");
+		assertEquals(0, codec.getHeaderLength());
+
+		try {
+			codec.writeHeader(ByteBuffer.allocate(8), FrameType.REQUEST, 8);
+			fail("Requests cannot be represented using delimited message framing");
+		} catch (CommunicationException communicationException) {
+			// Expected
+		}
+	}
+
+	private static ByteBuffer encode(FrameCodec codec, byte frameType, String payload) throws CommunicationException {
+		byte[] bytes = payload.getBytes(UTF_8);
+		ByteBuffer frame = ByteBuffer.allocate(codec.getHeaderLength() + bytes.length);
+		codec.writeHeader(frame, frameType, bytes.length);
+		frame.position(codec.getHeaderLength());
+		frame.put(bytes);
+		frame.flip();
+
+		return frame;
+	}
+}
@@ -0,0 +1,237 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.jeromewagener.soutils.Parameters;
+import com.jeromewagener.soutils.messaging.MessageType;
+import com.jeromewagener.soutils.messaging.SoutilsMessage;
+import com.jeromewagener.soutils.messaging.SoutilsObserver;
+
+/** Tests the exchange of bytes between the two ends of a loopback pair, and of messages and requests between 
+ * communications connected through a loopback pair */
+public class LoopbackTransportTest extends TestCase {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final InetSocketAddress SERVER_ADDRESS = new InetSocketAddress(InetAddress.getLoopbackAddress(), 4242);
+
+	public void testBytesAreExchangedInBothDirections() throws Exception {
+		LoopbackTransport[] transports = LoopbackTransport.openPair(SERVER_ADDRESS);
+		LoopbackTransport client = transports[0];
+		LoopbackTransport server = transports[1];
+
+		assertEquals(SERVER_ADDRESS, client.getRemoteSocketAddress());
+		assertTrue(server.getRemoteSocketAddress().getAddress().isLoopbackAddress());
+
+		assertEquals(11, write(client, "hello", " world"));
+		assertEquals("hello world", read(server, 64));
+
+		assertEquals(4, write(server, "pong"));
+		assertEquals("", read(server, 64));
+
+		// The bytes of a chunk which did not fit into the buffer are kept for the next read
+		assertEquals("po", read(client, 2));
+		assertEquals("ng", read(client, 64));
+		assertEquals("", read(client, 64));
+
+		client.close();
+		server.close();
+	}
+
+	public void testWritesStopOnceThePeerBufferIsFull() throws Exception {
+		LoopbackTransport[] transports = LoopbackTransport.openPair(SERVER_ADDRESS);
+		LoopbackTransport client = transports[0];
+		LoopbackTransport server = transports[1];
+
+		ByteBuffer bytes = ByteBuffer.allocate(Parameters.COMMUNICATION_LOOPBACK_BUFFER_SIZE_IN_BYTES + 100);
+		assertEquals(Parameters.COMMUNICATION_LOOPBACK_BUFFER_SIZE_IN_BYTES, client.write(new ByteBuffer[] { bytes }, 0, 1));
+		assertEquals(100, bytes.remaining());
+		assertEquals(0, client.write(new ByteBuffer[] { bytes }, 0, 1));
+
+		// Reading makes space for the remaining bytes
+		ByteBuffer buffer = ByteBuffer.allocate(1000);
+		assertEquals(1000, server.read(buffer));
+		assertEquals(100, client.write(new ByteBuffer[] { bytes }, 0, 1));
+
+		client.close();
+		server.close();
+	}
+
+	public void testClosingAnEndIsSeenByItsPeer() throws Exception {
+		LoopbackTransport[] transports = LoopbackTransport.openPair(SERVER_ADDRESS);
+		LoopbackTransport client = transports[0];
+		LoopbackTransport server = transports[1];
+
+		write(client, "last words");
+		client.close();
+
+		assertFalse(client.isConnected());
+		assertTrue(server.isConnected());
+
+		// The bytes written before closing are read before the end of the stream
+		assertEquals("last words", read(server, 64));
+		assertEquals(-1, server.read(ByteBuffer.allocate(64)));
+
+		try {
+			write(server, "too late");
+			fail("Writing to a closed peer must fail");
+		} catch (IOException ioException) {
+			// Expected
+		}
+
+		server.close();
+	}
+
+	public void testBlockingReadWaitsForThePeer() throws Exception {
+		LoopbackTransport[] transports = LoopbackTransport.openPair(SERVER_ADDRESS);
+		final LoopbackTransport client = transports[0];
+		LoopbackTransport server = transports[1];
+		server.configureBlocking(true);
+
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+					write(client, "wake up");
+				} catch (Exception exception) {
+					// The blocking read fails the test by timing out
+				}
+			}
+		});
+		writer.start();
+
+		assertEquals("wake up", read(server, 64));
+		writer.join();
+
+		client.close();
+		server.close();
+	}
+
+	public void testMessagesAndRequestsRoundTripThroughAManager() throws Exception {
+		final BlockingQueue<String> serverMessages = new LinkedBlockingQueue<String>();
+		final BlockingQueue<String> clientMessages = new LinkedBlockingQueue<String>();
+
+		CommunicationManager manager = new CommunicationManager(SERVER_ADDRESS.getPort(), collect(serverMessages), 
+				CommunicationMode.BLOCKING);
+		manager.setMessageFraming(MessageFraming.LENGTH_PREFIXED);
+		manager.setRequestHandler(new RequestHandler() {
+			@Override
+			public String handleRequest(Communication communication, String requestContent) {
+				return requestContent.toUpperCase();
+			}
+		});
+
+		Communication client = manager.connectLoopback(collect(clientMessages));
+		client.start(Executors.defaultThreadFactory());
+
+		try {
+			assertEquals(SERVER_ADDRESS, client.getRemoteSocketAddress());
+			assertEquals("HELLO", client.request("hello").get(5, TimeUnit.SECONDS));
+
+			for (int i=0; i<1000; i++) {
+				client.sendMessage("message " + i);
+			}
+
+			for (int i=0; i<1000; i++) {
+				assertEquals("message " + i, serverMessages.poll(5, TimeUnit.SECONDS));
+			}
+
+			manager.sendMessageToAllConnectedPeers("to all");
+			assertEquals("to all", clientMessages.poll(5, TimeUnit.SECONDS));
+		} finally {
+			client.done();
+			manager.done();
+		}
+	}
+
+	public void testCommunicationServedByAReactorRoundTrips() throws Exception {
+		CommunicationManager manager = new CommunicationManager(SERVER_ADDRESS.getPort(), collect(new LinkedBlockingQueue<String>()), 
+				CommunicationMode.BLOCKING);
+		manager.setMessageFraming(MessageFraming.LENGTH_PREFIXED);
+		manager.setRequestHandler(new RequestHandler() {
+			@Override
+			public String handleRequest(Communication communication, String requestContent) {
+				return new StringBuilder(requestContent).reverse().toString();
+			}
+		});
+
+		CommunicationReactor reactor = new CommunicationReactor(null);
+		reactor.start();
+		Communication client = manager.connectLoopback(collect(new LinkedBlockingQueue<String>()));
+		reactor.register(client);
+
+		try {
+			// Larger than the loopback buffer, so that the writes of both ends wait for the other end to read
+			StringBuilder requestContent = new StringBuilder();
+			while (requestContent.length() <= Parameters.COMMUNICATION_LOOPBACK_BUFFER_SIZE_IN_BYTES) {
+				requestContent.append("0123456789");
+			}
+
+			String response = client.request(requestContent.toString()).get(5, TimeUnit.SECONDS);
+			assertEquals(requestContent.reverse().toString(), response);
+		} finally {
+			client.done();
+			manager.done();
+			reactor.done();
+		}
+	}
+
+	/** Returns an observer which collects the contents of the received messages */
+	private static SoutilsObserver collect(final BlockingQueue<String> messages) {
+		return new SoutilsObserver() {
+			@Override
+			public void handleSoutilsMessage(SoutilsMessage soutilsMessage) {
+				if (soutilsMessage.getMessageType() == MessageType.COMMUNICATION) {
+					messages.add(soutilsMessage.getContent());
+				}
+			}
+		};
+	}
+
+	private static long write(LoopbackTransport transport, String... contents) throws IOException {
+		ByteBuffer[] buffers = new ByteBuffer[contents.length];
+		for (int i=0; i<contents.length; i++) {
+			buffers[i] = ByteBuffer.wrap(contents[i].getBytes(UTF_8));
+		}
+
+		return transport.write(buffers, 0, buffers.length);
+	}
+
+	private static String read(LoopbackTransport transport, int maximumNumberOfBytes) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(maximumNumberOfBytes);
+		int numberOfBytesRead = transport.read(buffer);
+
+		return new String(buffer.array(), 0, Math.max(numberOfBytesRead, 0), UTF_8);
+	}
+}
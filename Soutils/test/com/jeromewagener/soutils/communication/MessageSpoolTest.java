@@ -0,0 +1,201 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.jeromewagener.soutils.Parameters;
+import com.jeromewagener.soutils.messaging.MessageType;
+import com.jeromewagener.soutils.messaging.SoutilsMessage;
+import com.jeromewagener.soutils.messaging.SoutilsObserver;
+
+/** Tests that spooled messages are replayed in order and only once, survive a restart of the process, and are 
+ * discarded once the spool of a peer exceeds its maximum size or age */
+public class MessageSpoolTest extends TestCase {
+	private static final String PEER = "192.168.1.10";
+	private static final String OTHER_PEER = "fe80::1";
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("soutils-spool").toFile();
+	}
+
+	@Override
+	protected void tearDown() {
+		delete(directory);
+	}
+
+	public void testMessagesAreReplayedInOrderAndOnlyOnce() throws Exception {
+		MessageSpool messageSpool = new MessageSpool(directory, Long.MAX_VALUE, 0);
+		messageSpool.append(PEER, "first");
+		messageSpool.append(OTHER_PEER, "other");
+		messageSpool.append(PEER, "");
+		messageSpool.append(PEER, "third");
+
+		assertEquals(Arrays.asList("first", "", "third"), replay(messageSpool, PEER));
+		assertEquals(Arrays.asList("other"), replay(messageSpool, OTHER_PEER));
+		assertTrue(replay(messageSpool, PEER).isEmpty());
+	}
+
+	public void testMessagesSurviveARestart() throws Exception {
+		MessageSpool crashedMessageSpool = new MessageSpool(directory, Long.MAX_VALUE, 0);
+		crashedMessageSpool.append(PEER, "first");
+		crashedMessageSpool.append(PEER, "second");
+
+		// The spool is never closed, as if the process had crashed
+		MessageSpool restartedMessageSpool = new MessageSpool(directory, Long.MAX_VALUE, 0);
+		restartedMessageSpool.append(PEER, "third");
+		assertEquals(Arrays.asList("first", "second", "third"), replay(restartedMessageSpool, PEER));
+
+		// Replayed messages are not replayed again after another restart
+		assertTrue(replay(new MessageSpool(directory, Long.MAX_VALUE, 0), PEER).isEmpty());
+	}
+
+	public void testIncompleteRecordIsIgnoredAfterACrash() throws Exception {
+		MessageSpool crashedMessageSpool = new MessageSpool(directory, Long.MAX_VALUE, 0);
+		crashedMessageSpool.append(PEER, "complete");
+
+		// A crash while appending leaves a record whose length has not yet been written
+		File segmentFile = findSegmentFile();
+		RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFile, "rw");
+		try {
+			int endOfFirstRecord = 8 + 12 + "complete".length();
+			randomAccessFile.seek(endOfFirstRecord + 4);
+			randomAccessFile.writeLong(System.currentTimeMillis());
+			randomAccessFile.write("incomplete".getBytes("UTF-8"));
+		} finally {
+			randomAccessFile.close();
+		}
+
+		MessageSpool restartedMessageSpool = new MessageSpool(directory, Long.MAX_VALUE, 0);
+		restartedMessageSpool.append(PEER, "appended");
+		assertEquals(Arrays.asList("complete", "appended"), replay(restartedMessageSpool, PEER));
+	}
+
+	public void testOldestSegmentsAreDeletedBeyondTheMaximumSize() throws Exception {
+		int segmentSize = Parameters.COMMUNICATION_SPOOL_SEGMENT_SIZE_IN_BYTES;
+		MessageSpool messageSpool = new MessageSpool(directory, segmentSize, 0);
+
+		// Every message takes more than half of a segment, and therefore gets a segment of its own
+		for (char c='a'; c<='c'; c++) {
+			messageSpool.append(PEER, repeat(c, segmentSize / 2 + 1));
+		}
+
+		assertEquals(segmentSize, messageSpool.getNumberOfSpooledBytes(PEER));
+		assertEquals(Arrays.asList(repeat('c', segmentSize / 2 + 1)), replay(messageSpool, PEER));
+		assertEquals(0, messageSpool.getNumberOfSpooledBytes(PEER));
+	}
+
+	public void testExpiredMessagesAreNotReplayed() throws Exception {
+		MessageSpool messageSpool = new MessageSpool(directory, Long.MAX_VALUE, 100);
+		messageSpool.append(PEER, "expired");
+		Thread.sleep(200);
+		messageSpool.append(PEER, "recent");
+
+		assertEquals(Arrays.asList("recent"), replay(messageSpool, PEER));
+	}
+
+	/** Replays the messages spooled for the given peer through a loopback communication, and returns the 
+	 * messages received by the other end */
+	private static List<String> replay(MessageSpool messageSpool, String peerAddress) throws Exception {
+		LoopbackTransport[] transports = LoopbackTransport.openPair(new InetSocketAddress(InetAddress.getLoopbackAddress(), 4242));
+		final BlockingQueue<String> receivedMessages = new LinkedBlockingQueue<String>();
+
+		Communication sender = new Communication(transports[0]);
+		sender.setMessageFraming(MessageFraming.LENGTH_PREFIXED);
+		Communication receiver = new Communication(transports[1]);
+		receiver.setMessageFraming(MessageFraming.LENGTH_PREFIXED);
+		receiver.registerSoutilsObserver(new SoutilsObserver() {
+			@Override
+			public void handleSoutilsMessage(SoutilsMessage soutilsMessage) {
+				if (soutilsMessage.getMessageType() == MessageType.COMMUNICATION) {
+					receivedMessages.add(soutilsMessage.getContent());
+				}
+			}
+		});
+
+		// As for an accepted communication, the messages are replayed before the communication is started
+		int numberOfReplayedMessages = messageSpool.replay(peerAddress, sender);
+		List<String> messages = new ArrayList<String>();
+
+		try {
+			sender.start(Executors.defaultThreadFactory());
+			receiver.start(Executors.defaultThreadFactory());
+
+			for (int i=0; i<numberOfReplayedMessages; i++) {
+				String message = receivedMessages.poll(5, TimeUnit.SECONDS);
+				assertNotNull("The replayed message has not been received", message);
+				messages.add(message);
+			}
+		} finally {
+			sender.done();
+			receiver.done();
+		}
+
+		return messages;
+	}
+
+	private File findSegmentFile() {
+		for (File peerDirectory : directory.listFiles()) {
+			for (File file : peerDirectory.listFiles()) {
+				return file;
+			}
+		}
+
+		throw new AssertionError("No segment has been written");
+	}
+
+	private static String repeat(char character, int times) {
+		char[] characters = new char[times];
+		Arrays.fill(characters, character);
+
+		return new String(characters);
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+
+		file.delete();
+	}
+}
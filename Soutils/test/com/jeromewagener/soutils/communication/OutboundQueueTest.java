@@ -0,0 +1,221 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.jeromewagener.soutils.Parameters;
+
+/** Tests the weighted round robin scheduling of the priority lanes, and the handling of transports which only
+ * accept some of the queued bytes */
+public class OutboundQueueTest extends TestCase {
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+	private final OutboundQueue outboundQueue = new OutboundQueue();
+	private final RecordingTransport transport = new RecordingTransport();
+
+	@Override
+	protected void tearDown() {
+		// Returns the frames which have not been written to the buffer pool
+		outboundQueue.clear(new CommunicationException("The test has ended!"));
+	}
+
+	public void testLanesAreDrainedByWeight() throws Exception {
+		for (int i=0; i<100; i++) {
+			add("L", MessagePriority.LOW);
+			add("N", MessagePriority.NORMAL);
+			add("H", MessagePriority.HIGH);
+		}
+
+		outboundQueue.writeTo(transport);
+
+		String written = transport.getWrittenBytes();
+		String round = repeat("H", MessagePriority.HIGH.getWeight()) + repeat("N", MessagePriority.NORMAL.getWeight()) 
+				+ repeat("L", MessagePriority.LOW.getWeight());
+		assertEquals(300, written.length());
+		assertTrue(outboundQueue.isEmpty());
+		assertEquals(0, outboundQueue.getNumberOfQueuedBytes());
+
+		// Every round takes frames from every lane, so that low priority frames make progress while more urgent 
+		// frames are queued
+		for (int i=0; i<100 / MessagePriority.HIGH.getWeight(); i++) {
+			assertEquals(round, written.substring(i * round.length(), (i + 1) * round.length()));
+		}
+	}
+
+	public void testGatheringIsLimitedPerWrite() {
+		for (int i=0; i<2 * Parameters.COMMUNICATION_MAXIMUM_FRAMES_PER_WRITE; i++) {
+			add("N", MessagePriority.NORMAL);
+		}
+
+		outboundQueue.gatherFrames();
+		assertEquals(Parameters.COMMUNICATION_MAXIMUM_FRAMES_PER_WRITE, outboundQueue.getNumberOfGatheredFrames());
+	}
+
+	public void testUnwrittenBytesRemainQueuedUntilTheTransportAcceptsThem() throws Exception {
+		SendFuture first = add("aaaa", MessagePriority.NORMAL);
+		SendFuture second = add("bbbb", MessagePriority.NORMAL);
+		SendFuture third = add("cccc", MessagePriority.NORMAL);
+
+		transport.numberOfAcceptedBytes = 6;
+		outboundQueue.writeTo(transport);
+
+		assertEquals("aaaabb", transport.getWrittenBytes());
+		assertEquals(6, outboundQueue.getNumberOfQueuedBytes());
+		assertFalse(outboundQueue.isEmpty());
+
+		List<SendFuture> writtenSendFutures = new ArrayList<SendFuture>();
+		List<SendFuture> failedSendFutures = new ArrayList<SendFuture>();
+		List<CommunicationException> causes = new ArrayList<CommunicationException>();
+		outboundQueue.takeSendFutures(writtenSendFutures, failedSendFutures, causes);
+		assertEquals(1, writtenSendFutures.size());
+		assertSame(first, writtenSendFutures.get(0));
+
+		// Urgent frames never interrupt a partially written frame
+		SendFuture urgent = add("HHHH", MessagePriority.HIGH);
+		transport.numberOfAcceptedBytes = Integer.MAX_VALUE;
+		outboundQueue.writeTo(transport);
+
+		assertEquals("aaaabbbbHHHHcccc", transport.getWrittenBytes());
+		assertTrue(outboundQueue.isEmpty());
+
+		writtenSendFutures.clear();
+		outboundQueue.takeSendFutures(writtenSendFutures, failedSendFutures, causes);
+		assertEquals(3, writtenSendFutures.size());
+		assertSame(second, writtenSendFutures.get(0));
+		assertSame(urgent, writtenSendFutures.get(1));
+		assertSame(third, writtenSendFutures.get(2));
+		assertTrue(failedSendFutures.isEmpty());
+	}
+
+	public void testClearedFramesFailTheirFutures() throws Exception {
+		add("aaaa", MessagePriority.LOW);
+		SendFuture second = add("bbbb", MessagePriority.HIGH);
+
+		transport.numberOfAcceptedBytes = 2;
+		outboundQueue.writeTo(transport);
+
+		CommunicationException cause = new CommunicationException("Communication not connected!");
+		outboundQueue.clear(cause);
+
+		assertTrue(outboundQueue.isEmpty());
+		assertEquals(0, outboundQueue.getNumberOfQueuedBytes());
+		assertTrue(outboundQueue.hasSendFutures());
+
+		List<SendFuture> writtenSendFutures = new ArrayList<SendFuture>();
+		List<SendFuture> failedSendFutures = new ArrayList<SendFuture>();
+		List<CommunicationException> causes = new ArrayList<CommunicationException>();
+		outboundQueue.takeSendFutures(writtenSendFutures, failedSendFutures, causes);
+
+		assertTrue(writtenSendFutures.isEmpty());
+		assertEquals(2, failedSendFutures.size());
+		assertSame(second, failedSendFutures.get(0));
+		assertSame(cause, causes.get(0));
+		assertFalse(outboundQueue.hasSendFutures());
+	}
+
+	private SendFuture add(String content, MessagePriority messagePriority) {
+		ByteBuffer frame = BufferPool.getDefault().acquire(content.length());
+		frame.put(content.getBytes(US_ASCII));
+		frame.flip();
+
+		SendFuture sendFuture = new SendFuture();
+		outboundQueue.add(frame, sendFuture, messagePriority);
+
+		return sendFuture;
+	}
+
+	private static String repeat(String string, int times) {
+		StringBuilder stringBuilder = new StringBuilder();
+		for (int i=0; i<times; i++) {
+			stringBuilder.append(string);
+		}
+
+		return stringBuilder.toString();
+	}
+
+	/** A transport which records the written bytes and accepts a limited number of bytes only, as a socket whose
+	 * send buffer fills up */
+	private static final class RecordingTransport implements Transport {
+		private final ByteBuffer writtenBytes = ByteBuffer.allocate(4096);
+		private int numberOfAcceptedBytes = Integer.MAX_VALUE;
+
+		private String getWrittenBytes() {
+			return new String(writtenBytes.array(), 0, writtenBytes.position(), US_ASCII);
+		}
+
+		@Override
+		public long write(ByteBuffer[] buffers, int offset, int length) {
+			long numberOfWrittenBytes = 0;
+
+			for (int i=offset; i<offset+length && numberOfAcceptedBytes > 0; i++) {
+				while (buffers[i].hasRemaining() && numberOfAcceptedBytes > 0) {
+					writtenBytes.put(buffers[i].get());
+					numberOfAcceptedBytes--;
+					numberOfWrittenBytes++;
+				}
+			}
+
+			return numberOfWrittenBytes;
+		}
+
+		@Override
+		public InetSocketAddress getRemoteSocketAddress() {
+			return new InetSocketAddress("localhost", 4242);
+		}
+
+		@Override
+		public boolean isConnected() {
+			return true;
+		}
+
+		@Override
+		public void configureBlocking(boolean blocking) {
+		}
+
+		@Override
+		public int read(ByteBuffer buffer) {
+			return 0;
+		}
+
+		@Override
+		public void register(CommunicationReactor reactor, Communication communication) throws IOException {
+			throw new IOException("Not supported by the recording transport!");
+		}
+
+		@Override
+		public void setInterestOps(int interestOps) {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/* The MIT License (MIT)
+
+Copyright (c) 2012 Jerome Wagener
+
+Permission is hereby granted, free of charge, to any person obtaining a copy of
+this software and associated documentation files (the "Software"), to deal in
+the Software without restriction, including without limitation the rights to
+use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+the Software, and to permit persons to whom the Software is furnished to do so,
+subject to the following conditions:
+
+The above copyright notice and this permission notice shall be included in all
+copies or substantial portions of the Software.
+
+THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.*/
+
+
+package com.jeromewagener.soutils.communication;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import com.jeromewagener.soutils.Parameters;
+import com.jeromewagener.soutils.messaging.MessageType;
+import com.jeromewagener.soutils.messaging.SoutilsMessage;
+import com.jeromewagener.soutils.messaging.SoutilsObservable;
+import com.jeromewagener.soutils.messaging.SoutilsObserver;
+
+/** Tests the placement of timeouts within the wheel, and that tasks are executed after their delay unless they
+ * have been cancelled */
+public class SharedTimerTest extends TestCase {
+	private static final long TICK_DURATION_IN_NANOSECONDS = TimeUnit.MILLISECONDS.toNanos(Parameters.TIMER_TICK_DURATION_IN_MILLISECONDS);
+	private static final int NUMBER_OF_BUCKETS = Parameters.TIMER_NUMBER_OF_WHEEL_BUCKETS;
+
+	private final SoutilsObservable soutilsObservable = new SoutilsObservable() {
+	};
+
+	public void testTickOf() {
+		assertEquals(0, SharedTimer.tickOf(0));
+		assertEquals(0, SharedTimer.tickOf(TICK_DURATION_IN_NANOSECONDS - 1));
+		assertEquals(1, SharedTimer.tickOf(TICK_DURATION_IN_NANOSECONDS));
+		assertEquals(1000, SharedTimer.tickOf(1000 * TICK_DURATION_IN_NANOSECONDS + 1));
+	}
+
+	public void testBucketOfWrapsAround() {
+		assertEquals(0, SharedTimer.bucketOf(0));
+		assertEquals(NUMBER_OF_BUCKETS - 1, SharedTimer.bucketOf(NUMBER_OF_BUCKETS - 1));
+		assertEquals(0, SharedTimer.bucketOf(NUMBER_OF_BUCKETS));
+		assertEquals(5, SharedTimer.bucketOf(3L * NUMBER_OF_BUCKETS + 5));
+		assertEquals(7, SharedTimer.bucketOf(Long.MAX_VALUE - NUMBER_OF_BUCKETS + 8));
+	}
+
+	public void testRemainingRounds() {
+		assertEquals(0, SharedTimer.remainingRounds(10, 10));
+		assertEquals(0, SharedTimer.remainingRounds(10 + NUMBER_OF_BUCKETS - 1, 10));
+		assertEquals(1, SharedTimer.remainingRounds(10 + NUMBER_OF_BUCKETS, 10));
+		assertEquals(2, SharedTimer.remainingRounds(10 + 3 * NUMBER_OF_BUCKETS - 1, 10));
+	}
+
+	/** Simulates the timer thread, which handles the bucket of a tick once the tick has ended, and decrements the
+	 * remaining rounds of a timeout every time its bucket is handled before it expires */
+	public void testTimeoutsExpireWithinTheTickOfTheirDeadline() {
+		long[] currentTicks = { 0, 1, NUMBER_OF_BUCKETS - 1, NUMBER_OF_BUCKETS, 12345 };
+
+		for (long currentTick : currentTicks) {
+			for (long delay = 0; delay < 3 * NUMBER_OF_BUCKETS * TICK_DURATION_IN_NANOSECONDS; delay += TICK_DURATION_IN_NANOSECONDS / 3) {
+				long deadline = currentTick * TICK_DURATION_IN_NANOSECONDS + delay;
+				long deadlineTick = Math.max(SharedTimer.tickOf(deadline), currentTick);
+				long remainingRounds = SharedTimer.remainingRounds(deadlineTick, currentTick);
+				int bucket = SharedTimer.bucketOf(deadlineTick);
+
+				long expirationTick = currentTick;
+				while (SharedTimer.bucketOf(expirationTick) != bucket || remainingRounds-- > 0) {
+					expirationTick++;
+				}
+
+				assertEquals(deadlineTick, expirationTick);
+
+				// The tick is handled once it has ended, which is never before the deadline nor a tick after it
+				long expirationTime = (expirationTick + 1) * TICK_DURATION_IN_NANOSECONDS;
+				assertTrue(expirationTime > deadline);
+				assertTrue(expirationTime <= deadline + TICK_DURATION_IN_NANOSECONDS);
+			}
+		}
+	}
+
+	public void testTaskIsExecutedAfterItsDelay() throws Exception {
+		final CountDownLatch executed = new CountDownLatch(1);
+		final AtomicLong executionTime = new AtomicLong();
+		long scheduleTime = System.nanoTime();
+
+		SharedTimer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				executionTime.set(System.nanoTime());
+				executed.countDown();
+			}
+		}, 50, soutilsObservable);
+
+		assertTrue(executed.await(5, TimeUnit.SECONDS));
+		assertTrue(executionTime.get() - scheduleTime >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	public void testCancelledTaskIsNeverExecuted() throws Exception {
+		final AtomicBoolean cancelledTaskExecuted = new AtomicBoolean();
+		final CountDownLatch executed = new CountDownLatch(1);
+
+		SharedTimer.Timeout timeout = SharedTimer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				cancelledTaskExecuted.set(true);
+			}
+		}, 30, soutilsObservable);
+		timeout.cancel();
+
+		// A task scheduled later expires after the cancelled one would have
+		SharedTimer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				executed.countDown();
+			}
+		}, 60, soutilsObservable);
+
+		assertTrue(executed.await(5, TimeUnit.SECONDS));
+		assertFalse(cancelledTaskExecuted.get());
+	}
+
+	public void testFailingTaskIsReportedToTheObservers() throws Exception {
+		final CountDownLatch reported = new CountDownLatch(1);
+		final RuntimeException failure = new IllegalStateException("The task has failed!");
+
+		soutilsObservable.registerSoutilsObserver(new SoutilsObserver() {
+			@Override
+			public void handleSoutilsMessage(SoutilsMessage soutilsMessage) {
+				if (soutilsMessage.getMessageType() == MessageType.ERROR && soutilsMessage.getThrowable() == failure) {
+					reported.countDown();
+				}
+			}
+		});
+
+		SharedTimer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				throw failure;
+			}
+		}, 0, soutilsObservable);
+
+		assertTrue(reported.await(5, TimeUnit.SECONDS));
+	}
+}